@@ -0,0 +1,158 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Reproducible synthetic data for the benchmarks, modelled on the Edinburgh data served by the REST API.
+ * Everything is generated from a fixed seed, so every run of a benchmark works on exactly the same data.
+ */
+public final class BenchmarkFixtures {
+    public static final LngLat APPLETON_TOWER = new LngLat(-3.186874, 55.944494);
+    public static final LocalDate ORDER_DATE = LocalDate.of(2023, 11, 15);   // A Wednesday.
+    public static final long SEED = 20231115L;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates a region from pairs of longitude and latitude.
+     *
+     * @param name        The name of the region.
+     * @param coordinates The longitude and latitude of each vertex, one after the other.
+     * @return The region.
+     */
+    private static NamedRegion region(String name, double... coordinates) {
+        LngLat[] vertices = new LngLat[coordinates.length / 2];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = new LngLat(coordinates[2 * i], coordinates[2 * i + 1]);
+        }
+        return new NamedRegion(name, vertices);
+    }
+
+    /**
+     * Gets no-fly zones around George Square, like the ones served by the REST API.
+     *
+     * @return An array of the no-fly zones.
+     */
+    public static NamedRegion[] noFlyZones() {
+        return new NamedRegion[]{
+                region("George Square Area",
+                        -3.190578818321228, 55.94402412577528, -3.1899887323379517, 55.94284650540911,
+                        -3.187097311019897, 55.94328811724263, -3.187682032585144, 55.944477740393744,
+                        -3.190578818321228, 55.94402412577528),
+                region("Dr Elsie Inglis Quadrangle",
+                        -3.1907182931900024, 55.94519570234043, -3.1906163692474365, 55.94498241796357,
+                        -3.1900262832641597, 55.94507554227258, -3.190133571624756, 55.94529783810495,
+                        -3.1907182931900024, 55.94519570234043),
+                region("Bristo Square Open Area",
+                        -3.189543485641479, 55.94552313663306, -3.189382553100586, 55.94553214854692,
+                        -3.189259171485901, 55.94544803726933, -3.1892001628875732, 55.94533688994374,
+                        -3.189194798469543, 55.94519570234043, -3.189135789871216, 55.94511759833873,
+                        -3.188138008117676, 55.9452738061846, -3.1885510683059692, 55.946105902745614,
+                        -3.1895381212234497, 55.94555918427592, -3.189543485641479, 55.94552313663306),
+                region("Bayes Central Area",
+                        -3.1876927614212036, 55.94520696732767, -3.187555968761444, 55.9449621408666,
+                        -3.186981976032257, 55.94505676722831, -3.1872327625751495, 55.94536993377657,
+                        -3.1876927614212036, 55.94520696732767)
+        };
+    }
+
+    /**
+     * Gets the central area, like the one served by the REST API.
+     *
+     * @return The central area.
+     */
+    public static NamedRegion centralArea() {
+        return region("central",
+                -3.192473, 55.946233, -3.192473, 55.942617, -3.184319, 55.942617, -3.184319, 55.946233);
+    }
+
+    /**
+     * Gets restaurants both inside and outside the central area, each with a menu of 4 pizzas.
+     *
+     * @return An array of the restaurants.
+     */
+    public static Restaurant[] restaurants() {
+        double[][] locations = {
+                {-3.1912869215011597, 55.945535152517735},
+                {-3.202541470527649, 55.943284737579376},
+                {-3.1838572025299072, 55.94449876875712},
+                {-3.1940174102783203, 55.94390696616939},
+                {-3.1810810679852035, 55.938910643735845},
+                {-3.1798, 55.9415},
+                {-3.1885, 55.9425}
+        };
+        DayOfWeek[] days = DayOfWeek.values();
+        Restaurant[] restaurants = new Restaurant[locations.length];
+
+        for (int i = 0; i < locations.length; i++) {
+            Pizza[] menu = new Pizza[4];
+            for (int j = 0; j < menu.length; j++) {
+                menu[j] = new Pizza("R" + i + ": Pizza " + j, 1000 + 100 * j);
+            }
+            // Every restaurant is closed on one day, only the last restaurant is closed on the order date.
+            int closedOffset = i == locations.length - 1 ? 0 : 1 + i % (days.length - 1);
+            DayOfWeek closed = ORDER_DATE.getDayOfWeek().plus(closedOffset);
+            DayOfWeek[] openingDays = new DayOfWeek[days.length - 1];
+            int day = 0;
+            for (DayOfWeek dayOfWeek : days) {
+                if (dayOfWeek != closed) {
+                    openingDays[day++] = dayOfWeek;
+                }
+            }
+            restaurants[i] = new Restaurant("R" + i, new LngLat(locations[i][0], locations[i][1]), openingDays, menu);
+        }
+        return restaurants;
+    }
+
+    /**
+     * Generates a day of orders, a little over half of which are valid, with the rest spread over every validation code.
+     *
+     * @param count       The number of orders to generate.
+     * @param restaurants The restaurants the orders are made from, see {@link #restaurants()}.
+     * @return An array of the orders.
+     */
+    public static Order[] orders(int count, Restaurant[] restaurants) {
+        Random random = new Random(SEED);
+        Order[] orders = new Order[count];
+
+        for (int i = 0; i < count; i++) {
+            Restaurant restaurant = restaurants[random.nextInt(restaurants.length)];
+            Pizza[] pizzas = new Pizza[1 + random.nextInt(4)];
+            int total = 100;
+            for (int j = 0; j < pizzas.length; j++) {
+                pizzas[j] = restaurant.menu()[random.nextInt(restaurant.menu().length)];
+                total += pizzas[j].priceInPence();
+            }
+            String cardNumber = "4000123412341234";
+            String expiry = "06/27";
+            String cvv = "123";
+
+            // Just over a third of orders get a single error, on top of the orders from the closed restaurant.
+            switch (random.nextInt(25)) {
+                case 0 -> cardNumber = "40001234123412";
+                case 1 -> cardNumber = "400012341234123A";
+                case 2 -> cvv = "12";
+                case 3 -> expiry = "13/27";
+                case 4 -> expiry = "01/20";
+                case 5 -> total += 1;
+                case 6 -> pizzas[0] = new Pizza("Undefined", 1000);
+                case 7 -> pizzas[0] = restaurants[(random.nextInt(restaurants.length))].menu()[0];
+                case 8 -> pizzas = new Pizza[5];
+                default -> {
+                }
+            }
+
+            orders[i] = new Order(String.format("%08X", i), ORDER_DATE, OrderStatus.UNDEFINED,
+                    OrderValidationCode.UNDEFINED, total, pizzas,
+                    new CreditCardInformation(cardNumber, expiry, cvv));
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,46 @@
+package uk.ac.ed.inf.Flight;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.ed.inf.BenchmarkFixtures;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a single search by {@link PathGenerator} from Appleton Tower to each of the fixture restaurants,
+ * which range from a straight flight to routes around the George Square no-fly zones, with each search strategy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathGeneratorBenchmark {
+    @Param({"0", "1", "2", "3", "4", "5", "6"})
+    private int restaurant;
+
+    @Param({"ASTAR", "BIDIRECTIONAL", "VISIBILITY_GRAPH"})
+    private SearchStrategy strategy;
+
+    private NamedRegion[] noFlyZones;
+    private NamedRegion centralArea;
+    private LngLat restaurantLocation;
+
+    @Setup
+    public void setUp() {
+        Restaurant[] restaurants = BenchmarkFixtures.restaurants();
+        noFlyZones = BenchmarkFixtures.noFlyZones();
+        centralArea = BenchmarkFixtures.centralArea();
+        restaurantLocation = restaurants[restaurant].location();
+    }
+
+    @Benchmark
+    public ArrayList<Double> search() {
+        return new PathGenerator(strategy).createFlightAngles(BenchmarkFixtures.APPLETON_TOWER, restaurantLocation,
+                noFlyZones, centralArea);
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ed.inf.Flight.FlightDataHandler;
+import uk.ac.ed.inf.Flight.FlightPathCache;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks processing a full day of orders, validating every order and calculating the flight path of every
+ * valid one, as {@link App} does between retrieving the data and writing the output files. Each invocation
+ * starts with an empty path cache, as the first run of a day would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FullDayBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    private int orderCount;
+
+    private Restaurant[] restaurants;
+    private NamedRegion[] noFlyZones;
+    private NamedRegion centralArea;
+    private Order[] orders;
+
+    @Setup
+    public void setUp() {
+        restaurants = BenchmarkFixtures.restaurants();
+        noFlyZones = BenchmarkFixtures.noFlyZones();
+        centralArea = BenchmarkFixtures.centralArea();
+        orders = BenchmarkFixtures.orders(orderCount, restaurants);
+    }
+
+    @Benchmark
+    public void processDay(Blackhole blackhole) {
+        OrderProcessor processor = new OrderProcessor(new OrderValidator(),
+                new FlightDataHandler(new FlightPathCache()), restaurants, noFlyZones, centralArea,
+                BenchmarkFixtures.APPLETON_TOWER);
+
+        for (Order order : orders) {
+            blackhole.consume(processor.process(order));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmarks of the geometry primitives in {@link LngLatHandler} that the path search calls for every
+ * neighbour. Each invocation works on a batch of points spread around the central area, so the results are
+ * not skewed towards points that are always inside or always outside a region.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    private static final int POINTS = 1024;
+
+    private final LngLatHandler lngLatHandler = new LngLatHandler();
+    private NamedRegion[] noFlyZones;
+    private NamedRegion centralArea;
+    private LngLat[] points;
+
+    @Setup
+    public void setUp() {
+        noFlyZones = BenchmarkFixtures.noFlyZones();
+        centralArea = BenchmarkFixtures.centralArea();
+        points = new LngLat[POINTS];
+
+        Random random = new Random(BenchmarkFixtures.SEED);
+        for (int i = 0; i < POINTS; i++) {
+            points[i] = new LngLat(-3.196 + random.nextDouble() * 0.016, 55.940 + random.nextDouble() * 0.008);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void isInCentralArea(Blackhole blackhole) {
+        for (LngLat point : points) {
+            blackhole.consume(lngLatHandler.isInRegion(point, centralArea));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void isInNoFlyZones(Blackhole blackhole) {
+        for (LngLat point : points) {
+            boolean inNoFlyZone = false;
+            for (NamedRegion noFlyZone : noFlyZones) {
+                inNoFlyZone |= lngLatHandler.isInRegion(point, noFlyZone);
+            }
+            blackhole.consume(inNoFlyZone);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void distanceTo(Blackhole blackhole) {
+        for (LngLat point : points) {
+            blackhole.consume(lngLatHandler.distanceTo(point, BenchmarkFixtures.APPLETON_TOWER));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void isCloseTo(Blackhole blackhole) {
+        for (LngLat point : points) {
+            blackhole.consume(lngLatHandler.isCloseTo(point, BenchmarkFixtures.APPLETON_TOWER));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void nextPosition(Blackhole blackhole) {
+        for (int i = 0; i < POINTS; i++) {
+            blackhole.consume(lngLatHandler.nextPosition(points[i], (i % 16) * 22.5));
+        }
+    }
+}
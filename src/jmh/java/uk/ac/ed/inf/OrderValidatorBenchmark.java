@@ -0,0 +1,40 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link OrderValidator#validateOrder} over a day's worth of orders, reported per order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderValidatorBenchmark {
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    private int orderCount;
+
+    private final OrderValidator validator = new OrderValidator();
+    private Restaurant[] restaurants;
+    private Order[] orders;
+
+    @Setup
+    public void setUp() {
+        restaurants = BenchmarkFixtures.restaurants();
+        orders = BenchmarkFixtures.orders(orderCount, restaurants);
+    }
+
+    @Benchmark
+    public void validateOrders(Blackhole blackhole) {
+        // Validation overwrites the status and code of an order, so the same orders can be validated every time.
+        for (Order order : orders) {
+            blackhole.consume(validator.validateOrder(order, restaurants));
+        }
+    }
+}
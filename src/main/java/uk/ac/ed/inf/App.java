@@ -5,19 +5,43 @@ import uk.ac.ed.inf.ilp.constant.*;
 import uk.ac.ed.inf.OutputClasses.*;
 import uk.ac.ed.inf.Flight.*;
 import uk.ac.ed.inf.IO.*;
+import uk.ac.ed.inf.Metrics.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 /**
  * The main class of the Drone.
- * The program takes in the url of the API and a date to fetch orders for.
- * The program will retrieve the orders, restaurants, no-fly zones and central area from the API.
+ * The program takes in the url of the API and a date, or a range or list of dates, to fetch orders for.
+ * The program will retrieve the restaurants, no-fly zones and central area once, and the orders of each date from the API.
  * The program will validate, then calculate the flight path for each order, and finally will output data to files.
  */
 public class App {
+    private static final File PATH_CACHE_FILE = new File("cache", "flightpaths.json");
+    private static final File REST_SNAPSHOT_DIRECTORY = new File("cache", "rest");
+    private static final File OCCUPANCY_DIRECTORY = new File("cache", "occupancy");
+    private static final String WORKERS_OPTION = "--workers=";
+    private static final String STREAM_OPTION = "--stream";
+    private static final String SERVE_OPTION = "--serve=";
+    private static final String BIND_OPTION = "--bind=";
+    private static final String SEARCH_OPTION = "--search=";
+    private static final String OCCUPANCY_OPTION = "--occupancy";
+    static final LngLat APPLETON_TOWER = new LngLat(-3.186874, 55.944494);
 
     public App() {
     }
@@ -25,31 +49,139 @@ public class App {
     /**
      * The main loop of the Drone.
      *
-     * @param args Only 2 arguments url and date are accepted.
+     * @param args The 2 arguments date and url, optionally followed by --workers=N to process N orders at once,
+     *             and --stream to read each order as it arrives and write its flight path as soon as it is
+     *             calculated, so memory doesn't grow with the number of orders. The date can also
+     *             be a range "YYYY-MM-DD..YYYY-MM-DD" or a list "YYYY-MM-DD,YYYY-MM-DD", to process many dates
+     *             in one run, a date that fails is reported and skipped without stopping the other dates.
+     *             --search=bidirectional or --search=visibility_graph searches for paths from both ends at once,
+     *             or around the corners of the no-fly zones, rather than with A*. --occupancy rasterises the
+     *             regions into a bitmap before the first search, which later runs map from the cache rather
+     *             than rasterising again, see {@link FlightDataHandler#precomputeOccupancy}.
+     *             Alternatively the single argument url followed by --serve=PORT keeps the drone running as a
+     *             server on the port, that processes a date whenever it is asked to, see {@link DroneServer}.
+     *             The server only listens on the loopback address, unless --bind=ADDRESS gives another address.
      */
     public void execute(String[] args) {
-        FlightDataHandler flightDataHandler = new FlightDataHandler();
+        FlightPathCache pathCache = FlightPathCache.load(PATH_CACHE_FILE);
         OrderValidator validator = new OrderValidator();
-        RetrieveRestData retrieve_data = new RetrieveRestData();
+        SnapshotStore snapshots = new SnapshotStore(REST_SNAPSHOT_DIRECTORY);
+        RetrieveRestData retrieve_data = new RetrieveRestData(snapshots);
+
+        // How often the static data sets were unchanged, downloaded, or fell back to a snapshot.
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.gauge("pizzadronz_rest_snapshots", snapshots::getHits, "result", "hit");
+        metrics.gauge("pizzadronz_rest_snapshots", snapshots::getMisses, "result", "miss");
+        metrics.gauge("pizzadronz_rest_snapshots", snapshots::getFallbacks, "result", "fallback");
+
+        // Separate the options from the positional arguments.
+        ArrayList<String> positional = new ArrayList<>();
+        int workers = 1;
+        boolean stream = false;
+        int port = -1;
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        SearchStrategy searchStrategy = SearchStrategy.ASTAR;
+        boolean occupancy = false;
+        for (String arg : args) {
+            if (arg.equals(OCCUPANCY_OPTION)) {
+                occupancy = true;
+                continue;
+            }
+            if (arg.startsWith(SEARCH_OPTION)) {
+                try {
+                    searchStrategy = SearchStrategy.valueOf(
+                            arg.substring(SEARCH_OPTION.length()).toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Search must be one of " + Arrays.toString(SearchStrategy.values())
+                            + ", received " + arg + ", exiting...");
+                    System.exit(1);
+                }
+                continue;
+            }
+            if (arg.equals(STREAM_OPTION)) {
+                stream = true;
+                continue;
+            }
+            if (arg.startsWith(BIND_OPTION)) {
+                try {
+                    bindAddress = InetAddress.getByName(arg.substring(BIND_OPTION.length()));
+                } catch (UnknownHostException e) {
+                    System.err.println("Bind address must be a valid address, received " + arg + ", exiting...");
+                    System.exit(1);
+                }
+                continue;
+            }
+            if (arg.startsWith(SERVE_OPTION)) {
+                try {
+                    port = Integer.parseInt(arg.substring(SERVE_OPTION.length()));
+                } catch (NumberFormatException e) {
+                    port = -1;
+                }
+                if (port < 0 || port > 65535) {
+                    System.err.println("Port must be an integer from 0 to 65535, received " + arg + ", exiting...");
+                    System.exit(1);
+                }
+                continue;
+            }
+            if (!arg.startsWith(WORKERS_OPTION)) {
+                positional.add(arg);
+                continue;
+            }
+            try {
+                workers = Integer.parseInt(arg.substring(WORKERS_OPTION.length()));
+            } catch (NumberFormatException e) {
+                workers = 0;
+            }
+            if (workers < 1) {
+                System.err.println("Number of workers must be a positive integer, received " + arg + ", exiting...");
+                System.exit(1);
+            }
+        }
+
+        FlightDataHandler flightDataHandler = new FlightDataHandler(pathCache, searchStrategy,
+                occupancy ? OCCUPANCY_DIRECTORY : null);
+
+        // The server retrieves and processes each date when it is asked to, rather than once now.
+        if (port >= 0) {
+            if (positional.size() != 1) {
+                System.err.println("Expected 1 argument with " + SERVE_OPTION + "PORT: [API URL], received "
+                        + positional.size() + " arguments: " + positional + ", exiting...");
+                System.exit(1);
+            }
+            String apiUrl = positional.get(0).endsWith("/") ? positional.get(0) : positional.get(0) + "/";
+            try {
+                DroneServer server = new DroneServer(bindAddress, port, apiUrl, retrieve_data, validator,
+                        flightDataHandler, pathCache, new OutputToFile(), workers, stream);
+                server.start();
+                System.err.println("Main: Serving on " + bindAddress.getHostAddress() + " port " + server.getPort()
+                        + ", POST /process?date=YYYY-MM-DD to process a date...");
+            } catch (IOException e) {
+                System.err.println("Main: Failed to start server on port " + port + ": " + e + ", exiting...");
+                System.exit(1);
+            }
+            return;
+        }
 
         // Check if the correct number of arguments is passed
-        if (args.length != 2) {
+        if (positional.size() != 2) {
             StringBuilder argsAsString = new StringBuilder();
             for (String arg : args) {
                 argsAsString.append(arg).append(" ");
             }
-            System.err.println("Expected 2 arguments: [API URL, Date], received " + args.length
-                    + " arguments: " + argsAsString + ", exiting...");
+            System.err.println("Expected 2 arguments: [API URL, Date] and optionally " + WORKERS_OPTION + "N, "
+                    + STREAM_OPTION + ", " + SEARCH_OPTION + "STRATEGY and " + OCCUPANCY_OPTION + ", or 1 argument [API URL] with " + SERVE_OPTION
+                    + "PORT and optionally " + BIND_OPTION + "ADDRESS, received " + args.length + " arguments: " + argsAsString + ", exiting...");
             System.exit(1);
         }
 
         // Define arguments
-        String apiUrl = args[1];
-        LocalDate date = null;
+        String apiUrl = positional.get(1);
+        List<LocalDate> dates = null;
         try {
-            date = LocalDate.parse(args[0]);
-        } catch (DateTimeParseException e) {
-            System.err.println("Date is not in the correct format, needs to be \"YYYY-MM-DD\": " + e + ", exiting...");
+            dates = parseDates(positional.get(0));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            System.err.println("Date is not in the correct format, needs to be \"YYYY-MM-DD\", a range "
+                    + "\"YYYY-MM-DD..YYYY-MM-DD\" or a list \"YYYY-MM-DD,YYYY-MM-DD\": " + e + ", exiting...");
             System.exit(1);
         }
 
@@ -57,96 +189,346 @@ public class App {
             apiUrl += "/";
         }
 
-        // Retrieve data from REST API
-        Order[] orders;
+        // Retrieve the data that is the same for every date from REST API once, at the same time as the first orders.
+        // When streaming, the orders are read as they arrive while being processed, so aren't retrieved ahead of time.
+        CompletableFuture<Restaurant[]> restaurantsData = retrieve_data.retrieveRestaurantsAsync(apiUrl + "restaurants");
+        CompletableFuture<NamedRegion[]> noFlyZonesData = retrieve_data.retrieveNoFlyZonesAsync(apiUrl + "noFlyZones");
+        CompletableFuture<NamedRegion> centralAreaData = retrieve_data.retrieveCentralAreaAsync(apiUrl + "centralArea");
+        CompletableFuture<Order[]> nextOrders = stream ? null
+                : retrieve_data.retrieveOrdersAsync(apiUrl + "orders/" + dates.get(0));
+
         Restaurant[] restaurants;
         NamedRegion[] noFlyZones;
         NamedRegion centralArea;
 
         try {
-            orders = retrieve_data.retrieveOrders(apiUrl + "orders/" + date);
-            restaurants = retrieve_data.retrieveRestaurants(apiUrl + "restaurants");
-            noFlyZones = retrieve_data.retrieveNoFlyZones(apiUrl + "noFlyZones");
-            centralArea = retrieve_data.retrieveCentralArea(apiUrl + "centralArea");
+            restaurants = RetrieveRestData.await(restaurantsData);
+            noFlyZones = RetrieveRestData.await(noFlyZonesData);
+            centralArea = RetrieveRestData.await(centralAreaData);
         } catch (IOException e) {
             System.err.println("Main: Failed to retrieve data from REST API: " + e + ", exiting...");
             System.exit(1);
             return;
         }
 
-        // ArrayLists for flight data.
-        LngLat appletonTower = new LngLat(-3.186874, 55.944494);
-        ArrayList<FlightPath> flightPaths = new ArrayList<>();  // Flight paths in the json output class.
-        ArrayList<LngLat> lngLats = new ArrayList<>();  // Flight path in the LngLat class. (for geo-json)
-        ArrayList<Double> angles;   // The angles the drone takes from move to move.
+        OrderProcessor processor = new OrderProcessor(validator, flightDataHandler, restaurants, noFlyZones,
+                centralArea, APPLETON_TOWER);
+        OutputToFile output = new OutputToFile();
+
+        List<LocalDate> failedDates = processDates(retrieve_data, apiUrl, processor, output, dates, nextOrders,
+                workers, stream);
+
+        // Keeps the paths to each restaurant for later runs, a failure here doesn't affect this run's output.
+        try {
+            pathCache.save();
+        } catch (IOException e) {
+            System.err.println("Main: Failed to save flight path cache: " + e.getMessage());
+        }
+
+        // Reports where the run spent its time, a failure here doesn't affect this run's output either.
+        String run = dates.size() == 1 ? dates.get(0).toString() : dates.get(0) + "_" + dates.get(dates.size() - 1);
+        try {
+            output.outputMetrics(metrics, run);
+        } catch (IOException e) {
+            System.err.println("Main: Failed to output metrics: " + e.getMessage());
+        }
+
+        if (!failedDates.isEmpty()) {
+            System.err.println("Main: Failed to process " + failedDates.size() + " of " + dates.size() + " dates: "
+                    + failedDates + ", exiting...");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Processes the orders of each date in turn. A date that fails is reported and skipped, so it doesn't stop the
+     * rest of the dates.
+     *
+     * @param retrieveData Retrieves the orders of each date.
+     * @param apiUrl       The URL of the REST API, ending with "/".
+     * @param processor    The processor that validates and calculates the flight path of each order.
+     * @param output       Outputs the files of each date.
+     * @param dates        The dates to process, in order.
+     * @param firstOrders  The orders of the first date, already being retrieved, or null when streaming.
+     * @param workers      The number of orders to process at once.
+     * @param stream       Whether to read each order as it arrives and write its flight path as soon as it is
+     *                     calculated.
+     * @return The dates that failed, in order.
+     */
+    List<LocalDate> processDates(RetrieveRestData retrieveData, String apiUrl, OrderProcessor processor,
+                                 OutputToFile output, List<LocalDate> dates, CompletableFuture<Order[]> firstOrders,
+                                 int workers, boolean stream) {
+        Timer dateTimer = MetricsRegistry.global().timer("pizzadronz_date_seconds");
+
+        // The orders of the next date are retrieved in the background while the current date is being processed.
+        CompletableFuture<Order[]> nextOrders = firstOrders;
+        List<LocalDate> failedDates = new ArrayList<>();
+        for (int i = 0; i < dates.size(); i++) {
+            LocalDate date = dates.get(i);
+            long dateStart = System.nanoTime();
+            CompletableFuture<Order[]> orders = nextOrders;
+            if (!stream && i + 1 < dates.size()) {
+                nextOrders = retrieveData.retrieveOrdersAsync(apiUrl + "orders/" + dates.get(i + 1));
+            }
 
-        // Main loop of operation for each order.
-        for (Order order : orders) {
+            // A failed date is reported and skipped, so it doesn't stop the rest of the dates.
+            Iterator<Order> dateOrders;
             try {
-                validator.validateOrder(order, restaurants);
-            } catch (NullPointerException e) {
-                System.err.println("Main: Failed to validate order:" + e.getMessage());
+                dateOrders = stream ? retrieveData.streamOrders(apiUrl + "orders/" + date)
+                        : Arrays.asList(RetrieveRestData.await(orders)).iterator();
+            } catch (IOException e) {
+                System.err.println("Main: Failed to retrieve orders for " + date + " from REST API: " + e
+                        + ", skipping date...");
+                failedDates.add(date);
                 continue;
             }
+            try {
+                processDate(processor, output, dateOrders, date, workers, stream);
+            } catch (IOException e) {
+                System.err.println("Main: Failed to read orders or output deliveries or flight paths for " + date
+                        + ": " + e.getMessage() + ", skipping date...");
+                failedDates.add(date);
+            } catch (RuntimeException e) {
+                System.err.println("Main: Failed to process orders for " + date + ": " + e + ", skipping date...");
+                failedDates.add(date);
+            } finally {
+                if (dateOrders instanceof OrderStream orderStream) {
+                    orderStream.close();
+                }
+                dateTimer.recordSince(dateStart);
+            }
+        }
+        return failedDates;
+    }
+
+    /**
+     * Parses the dates to process, either a single date, an inclusive range of dates separated by "..",
+     * or a list of dates separated by commas.
+     *
+     * @param dates The dates to parse.
+     * @return The dates in the order they should be processed.
+     * @throws DateTimeParseException   If a date is not in the format YYYY-MM-DD.
+     * @throws IllegalArgumentException If a range ends before it starts.
+     */
+    List<LocalDate> parseDates(String dates) {
+        List<LocalDate> parsed = new ArrayList<>();
+        int rangeSeparator = dates.indexOf("..");
+        if (rangeSeparator < 0) {
+            for (String date : dates.split(",")) {
+                parsed.add(LocalDate.parse(date.trim()));
+            }
+            return parsed;
+        }
+
+        LocalDate first = LocalDate.parse(dates.substring(0, rangeSeparator).trim());
+        LocalDate last = LocalDate.parse(dates.substring(rangeSeparator + 2).trim());
+        if (last.isBefore(first)) {
+            throw new IllegalArgumentException("Range ends on " + last + " before it starts on " + first);
+        }
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            parsed.add(date);
+        }
+        return parsed;
+    }
+
+    /**
+     * Processes every order of a single date and outputs the deliveries, flight paths and GEO JSON of the date.
+     *
+     * @param processor The processor that validates and calculates the flight path of each order.
+     * @param output    Outputs the files of the date.
+     * @param orders    The orders of the date, in the order they were made.
+     * @param date      The date the orders were made on.
+     * @param workers   The number of orders to process at once.
+     * @param stream    Whether to write each order's flight path as soon as it is calculated.
+     * @return A summary of the deliveries of the date.
+     * @throws IOException If the orders cannot be read, or any of the JSON files of the date cannot be written.
+     */
+    DeliverySummary processDate(OrderProcessor processor, OutputToFile output, Iterator<Order> orders,
+                                LocalDate date, int workers, boolean stream) throws IOException {
+        long start = System.nanoTime();
 
-            boolean order_status_valid = order.getOrderStatus() == OrderStatus.VALID_BUT_NOT_DELIVERED;
-            boolean order_code_valid = order.getOrderValidationCode() == OrderValidationCode.NO_ERROR;
+        // Only the delivery of each order is kept until the end, rather than the whole order.
+        ArrayList<Delivery> deliveries = new ArrayList<>();
+        Map<OrderValidationCode, Integer> validationCodes = new EnumMap<>(OrderValidationCode.class);
+        int[] delivered = {0};
+        Consumer<OrderProcessor.ProcessedOrder> record = processed -> {
+            Order order = processed.order();
+            deliveries.add(new Delivery(order));
+            // An EnumMap can't hold a null key, an order without a code is counted as undefined.
+            OrderValidationCode code = order.getOrderValidationCode();
+            validationCodes.merge(code == null ? OrderValidationCode.UNDEFINED : code, 1, Integer::sum);
+            if (order.getOrderStatus() == OrderStatus.DELIVERED) {
+                delivered[0]++;
+            }
+        };
 
-            // Only get flight path of valid orders
-            if (order_status_valid && order_code_valid) {
+        // The flight plan of each delivered order is also archived as it is merged, in both modes. The JSON files are
+        // the output other tools read, so an archive that fails is reported and discarded rather than failing the date.
+        FlightArchiveWriter[] archive = {openFlightArchive(output, date)};
+        Consumer<OrderProcessor.ProcessedOrder> recordAndArchive = processed -> {
+            record.accept(processed);
+            if (archive[0] != null && !processed.flightPlan().isEmpty()) {
                 try {
-                    angles = flightDataHandler.calculateAngles(order, restaurants, noFlyZones, centralArea, appletonTower);
-                } catch (IllegalStateException e) {
-                    order.setOrderStatus(OrderStatus.INVALID);
-                    order.setOrderValidationCode(OrderValidationCode.UNDEFINED);
-                    System.err.println("Main: Failed to calculate angles for order " + order.getOrderNo() + ": " +
-                            e.getMessage() + ", skipping order...");
-                    continue;
+                    archive[0].write(processed.order().getOrderNo(), processed.flightPlan());
+                } catch (IOException e) {
+                    System.err.println("Main: Failed to archive flight plans for " + date + ": " + e.getMessage()
+                            + ", discarding archive...");
+                    closeFlightArchive(archive[0], date);
+                    archive[0] = null;
+                }
+            }
+        };
+
+        try {
+            // Main loop of operation for each order, the results are merged in the original order sequence.
+            if (stream) {
+                // Each order's moves are written as soon as it is merged, so only a few orders are ever held in memory.
+                try (StreamingFlightOutput flightOutput = output.openFlightOutput(date)) {
+                    processOrders(processor, orders, workers, processed -> {
+                        recordAndArchive.accept(processed);
+                        try {
+                            flightOutput.write(processed.flightPaths(), processed.lngLats());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+
+                    // Every order has been processed by now, so the deliveries can be output. All three files only
+                    // replace the old ones once every one was written, otherwise they are discarded on close.
+                    output.finishDay(flightOutput, deliveries, date);
                 }
-                // If there is an error with finding a path, continue to next order.
-                if (angles == null || angles.isEmpty()) {
-                    order.setOrderStatus(OrderStatus.INVALID);
-                    order.setOrderValidationCode(OrderValidationCode.UNDEFINED);
-                    System.err.println("Main: No path found for order: " + order.getOrderNo() + ", skipping order...");
-                    continue;
+            } else {
+                // ArrayLists for flight data.
+                ArrayList<FlightPath> flightPaths = new ArrayList<>();  // Flight paths in the json output class.
+                ArrayList<LngLat> lngLats = new ArrayList<>();  // Flight path in the LngLat class. (for geo-json)
+                processOrders(processor, orders, workers, processed -> {
+                    recordAndArchive.accept(processed);
+                    flightPaths.addAll(processed.flightPaths());
+                    lngLats.addAll(processed.lngLats());
+                });
+
+                // Output flight path to file
+                // Create GeoJson
+                Geometry geometry = new Geometry();
+
+                // Adds coordinates to the line string.
+                for (LngLat lngLat : lngLats) {
+                    ArrayList<Double> coordinates = new ArrayList<>();
+                    coordinates.add(lngLat.lng());
+                    coordinates.add(lngLat.lat());
+                    geometry.addCoordinates(coordinates);
                 }
-                order.setOrderStatus(OrderStatus.DELIVERED);
 
-                // Adds data into arraylists for their output type.
-                flightPaths.addAll(flightDataHandler.convertAngleToFlightPath(order.getOrderNo(), angles, appletonTower));
-                lngLats.addAll(flightDataHandler.convertAngleToList(angles, appletonTower));
+                // Creates a feature and feature collection.
+                Feature feature = new Feature(geometry);
+                FeatureCollection featureCollection = new FeatureCollection();
+                featureCollection.addFeature(feature);
+
+                // The three files of the date are written at the same time.
+                output.outputDay(deliveries, flightPaths, featureCollection, date);
             }
 
+            // Only a date whose other files were all written replaces the archive, otherwise it is discarded.
+            if (archive[0] != null) {
+                try {
+                    archive[0].finish();
+                } catch (IOException e) {
+                    System.err.println("Main: Failed to finish flight plan archive for " + date + ": "
+                            + e.getMessage());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (archive[0] != null) {
+                closeFlightArchive(archive[0], date);
+            }
         }
 
-        // Output flight path to file
-        // Create GeoJson
-        Geometry geometry = new Geometry();
+        return new DeliverySummary(date, validationCodes, delivered[0],
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
 
-        // Adds coordinates to the line string.
-        for (LngLat lngLat : lngLats) {
-            ArrayList<Double> coordinates = new ArrayList<>();
-            coordinates.add(lngLat.lng());
-            coordinates.add(lngLat.lat());
-            geometry.addCoordinates(coordinates);
+    /**
+     * Opens the flight plan archive of a date, which is only a companion to the JSON files, so a date is still
+     * processed without it when it can't be opened.
+     *
+     * @param output Outputs the files of the date.
+     * @param date   The date the orders were made on.
+     * @return The open archive, or null if it couldn't be opened.
+     */
+    private static FlightArchiveWriter openFlightArchive(OutputToFile output, LocalDate date) {
+        try {
+            return output.openFlightArchive(date);
+        } catch (IOException e) {
+            System.err.println("Main: Failed to open flight plan archive for " + date + ": " + e.getMessage()
+                    + ", continuing without it...");
+            return null;
         }
+    }
 
-        // Creates a feature and feature collection.
-        Feature feature = new Feature(geometry);
-        FeatureCollection featureCollection = new FeatureCollection();
-        featureCollection.addFeature(feature);
-
-        // Tries to output all the data.
-        OutputToFile output = new OutputToFile();
+    /**
+     * Closes the flight plan archive of a date, discarding it if it wasn't finished.
+     *
+     * @param archive The archive.
+     * @param date    The date the orders were made on.
+     */
+    private static void closeFlightArchive(FlightArchiveWriter archive, LocalDate date) {
         try {
-            output.outputDeliveries(orders, date);
-            output.outputFlightPaths(flightPaths, date);
-            output.outputGeoJson(featureCollection, date);
+            archive.close();
         } catch (IOException e) {
-            System.err.println("Main: Failed to output deliveries or flight paths: " + e.getMessage() + ", exiting...");
-            System.exit(1);
+            System.err.println("Main: Failed to discard flight plan archive for " + date + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Processes every order, either one after another on this thread, or concurrently on a bounded pool of
+     * workers. Either way the results are passed on in the same sequence as the orders, so the output of a
+     * parallel run is identical to a sequential one.
+     *
+     * @param processor The processor that validates and calculates the flight path of each order.
+     * @param orders    The orders to process, each is only read once there is room for it to be processed.
+     * @param workers   The number of orders to process at once.
+     * @param merge     Receives each processed order, in the same sequence as the orders.
+     */
+    private void processOrders(OrderProcessor processor, Iterator<Order> orders, int workers,
+                               Consumer<OrderProcessor.ProcessedOrder> merge) {
+        if (workers == 1) {
+            while (orders.hasNext()) {
+                merge.accept(processor.process(orders.next()));
+            }
+            return;
         }
 
+        // Once the queue is full, the main thread processes orders itself, so orders are never queued unbounded.
+        int window = workers * 4;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(window), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            // Only a window of orders is in flight at once, the oldest is merged before another is submitted.
+            ArrayDeque<Future<OrderProcessor.ProcessedOrder>> pending = new ArrayDeque<>(window + 1);
+            while (orders.hasNext()) {
+                Order order = orders.next();
+                pending.add(executor.submit(() -> processor.process(order)));
+                if (pending.size() > window) {
+                    merge.accept(pending.remove().get());
+                }
+            }
+            while (!pending.isEmpty()) {
+                merge.accept(pending.remove().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Main: Interrupted while processing orders", e);
+        } catch (ExecutionException e) {
+            // Rethrow the failure as if the order had been processed on this thread.
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Main: Failed to process order", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
@@ -0,0 +1,322 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import uk.ac.ed.inf.Flight.FlightDataHandler;
+import uk.ac.ed.inf.Flight.FlightPathCache;
+import uk.ac.ed.inf.IO.OrderStream;
+import uk.ac.ed.inf.IO.OutputToFile;
+import uk.ac.ed.inf.IO.RetrieveRestData;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.OutputClasses.DeliverySummary;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the drone running between dates, processing a date whenever it is asked to over HTTP, rather than
+ * starting a new program for every date. The REST client, indexes of the restaurants and no-fly zones and the
+ * flight path cache stay warm between requests, so a date only costs its orders.
+ * <p>
+ * {@code POST /process?date=YYYY-MM-DD} processes the orders of the date, outputs its files as a normal run would
+ * and responds with a {@link DeliverySummary} as JSON. {@code GET /metrics} responds with the metrics of every
+ * date processed so far in the Prometheus text format. Dates are processed one at a time, in the order they are
+ * asked for, and each is answered by the thread that processes it, so however many dates are waiting, metrics are
+ * still answered straight away. Nothing is authenticated, so by default the server only listens on the loopback
+ * address.
+ */
+public class DroneServer {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int REQUEST_THREADS = 4;
+
+    private final String apiUrl;
+    private final RetrieveRestData retrieveData;
+    private final OrderValidator validator;
+    private final FlightDataHandler flightDataHandler;
+    private final FlightPathCache pathCache;
+    private final OutputToFile output;
+    private final int workers;
+    private final boolean stream;
+    private final HttpServer server;
+
+    private final ExecutorService requestExecutor = Executors.newFixedThreadPool(REQUEST_THREADS);
+    private final ExecutorService processExecutor = Executors.newSingleThreadExecutor();
+    private final App app = new App();
+
+    // Only used on the single thread of the process executor.
+    private Restaurant[] restaurants;
+    private NamedRegion[] noFlyZones;
+    private NamedRegion centralArea;
+    private OrderProcessor processor;
+
+    /**
+     * Creates a server listening on the loopback address, which doesn't accept requests until it is started.
+     *
+     * @param port              The port to listen on, 0 for any free port.
+     * @param apiUrl            The url of the REST API, ending in a slash.
+     * @param retrieveData      Retrieves the data from the REST API.
+     * @param validator         Validates each order.
+     * @param flightDataHandler Calculates the flight path of each order.
+     * @param pathCache         The cache of flight paths used by the flight data handler, saved after every date.
+     * @param output            Outputs the files of each date.
+     * @param workers           The number of orders to process at once.
+     * @param stream            Whether to read each order as it arrives and write its flight path as soon as it is
+     *                          calculated.
+     * @throws IOException If the server cannot listen on the port.
+     */
+    public DroneServer(int port, String apiUrl, RetrieveRestData retrieveData, OrderValidator validator,
+                       FlightDataHandler flightDataHandler, FlightPathCache pathCache, OutputToFile output,
+                       int workers, boolean stream) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, apiUrl, retrieveData, validator, flightDataHandler, pathCache,
+                output, workers, stream);
+    }
+
+    /**
+     * Creates a server, which doesn't accept requests until it is started.
+     *
+     * @param bindAddress       The address to listen on, anyone who can reach it can process dates.
+     * @param port              The port to listen on, 0 for any free port.
+     * @param apiUrl            The url of the REST API, ending in a slash.
+     * @param retrieveData      Retrieves the data from the REST API.
+     * @param validator         Validates each order.
+     * @param flightDataHandler Calculates the flight path of each order.
+     * @param pathCache         The cache of flight paths used by the flight data handler, saved after every date.
+     * @param output            Outputs the files of each date.
+     * @param workers           The number of orders to process at once.
+     * @param stream            Whether to read each order as it arrives and write its flight path as soon as it is
+     *                          calculated.
+     * @throws IOException If the server cannot listen on the port.
+     */
+    public DroneServer(InetAddress bindAddress, int port, String apiUrl, RetrieveRestData retrieveData,
+                       OrderValidator validator, FlightDataHandler flightDataHandler, FlightPathCache pathCache,
+                       OutputToFile output, int workers, boolean stream) throws IOException {
+        this.apiUrl = apiUrl;
+        this.retrieveData = retrieveData;
+        this.validator = validator;
+        this.flightDataHandler = flightDataHandler;
+        this.pathCache = pathCache;
+        this.output = output;
+        this.workers = workers;
+        this.stream = stream;
+
+        server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/process", this::handleProcess);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, letting the dates already asked for finish first. Dates asked for while it is stopping
+     * are refused.
+     *
+     * @throws InterruptedException If interrupted while waiting for the dates to finish, the server is stopped
+     *                              anyway.
+     */
+    public void stop() throws InterruptedException {
+        processExecutor.shutdown();
+        try {
+            processExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            // Gives the responses of the last dates a moment to be sent.
+            server.stop(1);
+            requestExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Queues the date of a request to be processed, the summary is sent once it is processed.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleProcess(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            try (exchange) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respondError(exchange, 405, "Use POST to process a date");
+            }
+            return;
+        }
+
+        LocalDate date;
+        try {
+            date = LocalDate.parse(queryParameter(exchange.getRequestURI(), "date"));
+        } catch (DateTimeParseException | NullPointerException e) {
+            try (exchange) {
+                respondError(exchange, 400, "Expected a date \"YYYY-MM-DD\", e.g. /process?date=2023-11-01");
+            }
+            return;
+        }
+
+        // The request thread doesn't wait for the date, so it is free to answer other requests in the meantime.
+        try {
+            processExecutor.execute(() -> processAndRespond(exchange, date));
+        } catch (RejectedExecutionException e) {
+            try (exchange) {
+                respondError(exchange, 503, "The server is stopping");
+            }
+        }
+    }
+
+    /**
+     * Processes a date on the process executor, after any dates asked for before it, and responds with its
+     * summary.
+     *
+     * @param exchange The request of the date and its response.
+     * @param date     The date.
+     */
+    private void processAndRespond(HttpExchange exchange, LocalDate date) {
+        try (exchange) {
+            DeliverySummary summary;
+            try {
+                summary = process(date);
+            } catch (IOException e) {
+                System.err.println("DroneServer: Failed to process " + date + ": " + e.getMessage());
+                respondError(exchange, 502, "Failed to process " + date + ": " + e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("DroneServer: Failed to process " + date + ": " + e);
+                respondError(exchange, 500, "Failed to process " + date + ": " + e);
+                return;
+            }
+            respond(exchange, 200, "application/json", MAPPER.writeValueAsBytes(summary));
+        } catch (IOException e) {
+            System.err.println("DroneServer: Failed to respond with " + date + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Responds with the metrics of every date processed so far.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If the response cannot be sent.
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            respond(exchange, 200, "text/plain; version=0.0.4",
+                    MetricsRegistry.global().toPrometheus().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Processes the orders of a date, as a normal run would.
+     *
+     * @param date The date.
+     * @return The summary of the date's deliveries.
+     * @throws IOException If the data cannot be retrieved, or the files of the date cannot be written.
+     */
+    private DeliverySummary process(LocalDate date) throws IOException {
+        // The static data is checked every time in case it changed, but an unchanged data set is the same array
+        // as before, so the indexes built from it are reused.
+        CompletableFuture<Restaurant[]> restaurantsData = retrieveData.retrieveRestaurantsAsync(apiUrl + "restaurants");
+        CompletableFuture<NamedRegion[]> noFlyZonesData = retrieveData.retrieveNoFlyZonesAsync(apiUrl + "noFlyZones");
+        CompletableFuture<NamedRegion> centralAreaData = retrieveData.retrieveCentralAreaAsync(apiUrl + "centralArea");
+        CompletableFuture<Order[]> ordersData = stream ? null
+                : retrieveData.retrieveOrdersAsync(apiUrl + "orders/" + date);
+
+        Restaurant[] newRestaurants = RetrieveRestData.await(restaurantsData);
+        NamedRegion[] newNoFlyZones = RetrieveRestData.await(noFlyZonesData);
+        NamedRegion newCentralArea = RetrieveRestData.await(centralAreaData);
+        if (processor == null || newRestaurants != restaurants || newNoFlyZones != noFlyZones
+                || newCentralArea != centralArea) {
+            restaurants = newRestaurants;
+            noFlyZones = newNoFlyZones;
+            centralArea = newCentralArea;
+            processor = new OrderProcessor(validator, flightDataHandler, restaurants, noFlyZones, centralArea,
+                    App.APPLETON_TOWER);
+        }
+
+        Iterator<Order> orders = stream ? retrieveData.streamOrders(apiUrl + "orders/" + date)
+                : Arrays.asList(RetrieveRestData.await(ordersData)).iterator();
+        DeliverySummary summary;
+        try {
+            summary = app.processDate(processor, output, orders, date, workers, stream);
+        } finally {
+            if (orders instanceof OrderStream orderStream) {
+                orderStream.close();
+            }
+        }
+
+        // A failure here doesn't affect the date's output, the paths are saved again after the next date.
+        try {
+            pathCache.save();
+        } catch (IOException e) {
+            System.err.println("DroneServer: Failed to save flight path cache: " + e.getMessage());
+        }
+        return summary;
+    }
+
+    /**
+     * Gets the value of a parameter of the query of a request.
+     *
+     * @param uri  The uri of the request.
+     * @param name The name of the parameter.
+     * @return The value of the parameter, or null if it is missing.
+     */
+    private static String queryParameter(URI uri, String name) {
+        String query = uri.getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && parameter.substring(0, separator).equals(name)) {
+                return parameter.substring(separator + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Responds with an error as JSON.
+     */
+    private static void respondError(HttpExchange exchange, int status, String error) throws IOException {
+        respond(exchange, status, "application/json", MAPPER.writeValueAsBytes(Map.of("error", error)));
+    }
+
+    /**
+     * Responds with a body.
+     */
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.ed.inf.Flight;
+
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+/**
+ * A region compiled for fast containment checks, the vertices are flattened into primitive arrays
+ * and the bounding box is cached so that most points outside the region are rejected straight away.
+ */
+class CompiledRegion {
+    final double[] lngs;
+    final double[] lats;
+    final double minLng;
+    final double minLat;
+    final double maxLng;
+    final double maxLat;
+
+    /**
+     * Compiles a region.
+     *
+     * @param region The region to compile.
+     */
+    CompiledRegion(NamedRegion region) {
+        LngLat[] vertices = region.vertices();
+        lngs = new double[vertices.length];
+        lats = new double[vertices.length];
+
+        double minLng = Double.POSITIVE_INFINITY, minLat = Double.POSITIVE_INFINITY;
+        double maxLng = Double.NEGATIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < vertices.length; i++) {
+            lngs[i] = vertices[i].lng();
+            lats[i] = vertices[i].lat();
+            minLng = Math.min(minLng, lngs[i]);
+            minLat = Math.min(minLat, lats[i]);
+            maxLng = Math.max(maxLng, lngs[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+        }
+        this.minLng = minLng;
+        this.minLat = minLat;
+        this.maxLng = maxLng;
+        this.maxLat = maxLat;
+    }
+
+    /**
+     * Checks if a point is within the bounding box of the region, including its edges.
+     *
+     * @param lng The longitude of the point.
+     * @param lat The latitude of the point.
+     * @return True if the point is in the bounding box, false otherwise.
+     */
+    boolean isInBoundingBox(double lng, double lat) {
+        return lng >= minLng && lng <= maxLng && lat >= minLat && lat <= maxLat;
+    }
+
+    /**
+     * Checks if a point is in the region. This gives exactly the same result as
+     * {@link LngLatHandler#isInRegion}, a point outside the bounding box can never have an odd number of
+     * intersections, so it is rejected before ray casting.
+     *
+     * @param lng The longitude of the point.
+     * @param lat The latitude of the point.
+     * @return True if the point is in the region, false otherwise.
+     */
+    boolean contains(double lng, double lat) {
+        if (!isInBoundingBox(lng, lat)) {
+            return false;
+        }
+
+        // If point is on corner of region, return true.
+        int numVertices = lngs.length;
+        for (int i = 0; i < numVertices; i++) {
+            if (lat == lats[i] && lng == lngs[i]) {
+                return true;
+            }
+        }
+
+        // Ray casting algorithm, one side of the region at a time.
+        int intersections = 0;
+        int j = numVertices - 1;
+        for (int i = 0; i < numVertices; i++) {
+            boolean isPointHigherThanSide = ((lats[i] > lat) != (lats[j] > lat));
+            boolean isPointLeftOfSide = (lng < (lngs[j] - lngs[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lngs[i]);
+
+            if (isPointHigherThanSide && isPointLeftOfSide) {
+                intersections++;
+            }
+            j = i;
+        }
+        return intersections % 2 != 0;
+    }
+}
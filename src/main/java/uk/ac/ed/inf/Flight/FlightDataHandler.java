@@ -1,12 +1,16 @@
 package uk.ac.ed.inf.Flight;
 
 import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.MenuIndex;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.Metrics.Timer;
 import uk.ac.ed.inf.OutputClasses.FlightPath;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
 import uk.ac.ed.inf.ilp.data.*;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 
@@ -14,67 +18,206 @@ import java.util.List;
  * Handles the calculation and formatting of flight data for drones.
  */
 public class FlightDataHandler {
+    private static final Timer PATH_SEARCH_TIMER = MetricsRegistry.global().timer("pizzadronz_path_search_seconds");
+    private static final Timer OCCUPANCY_TIMER = MetricsRegistry.global().timer("pizzadronz_occupancy_seconds");
+    // How far the occupancy bitmap reaches past the restaurants and start position, for paths around no-fly zones.
+    private static final double OCCUPANCY_MARGIN = SystemConstants.DRONE_MOVE_DISTANCE * 100;
+
     private final LngLatHandler lngLatHandler = new LngLatHandler();
+    private final FlightPathCache pathCache;
+    private final SearchStrategy searchStrategy;
+    private final File occupancyDirectory;
+    private volatile RegionIndex regionIndex;   // The regions compiled for the most recent order.
+    private volatile MenuIndex menuIndex;   // The menus indexed for the most recent order.
 
     public FlightDataHandler() {
+        this(new FlightPathCache());
     }
 
     /**
-     * Calculates the angles at which a drone must travel to complete a given order.
-     * The method finds the restaurant associated with the order, calculates the path
-     * to the restaurant, and then calculates the return path.
+     * Creates a flight data handler that shares its paths to restaurants through a cache.
+     *
+     * @param pathCache The cache of paths from the start position to each restaurant.
+     */
+    public FlightDataHandler(FlightPathCache pathCache) {
+        this(pathCache, SearchStrategy.ASTAR);
+    }
+
+    /**
+     * Creates a flight data handler that shares its paths to restaurants through a cache, and searches for
+     * paths that are not cached with the given strategy.
+     *
+     * @param pathCache      The cache of paths from the start position to each restaurant.
+     * @param searchStrategy How paths are searched for.
+     */
+    public FlightDataHandler(FlightPathCache pathCache, SearchStrategy searchStrategy) {
+        this(pathCache, searchStrategy, null);
+    }
+
+    /**
+     * Creates a flight data handler as {@link #FlightDataHandler(FlightPathCache, SearchStrategy)} does, that also
+     * precomputes an occupancy bitmap of the regions, see {@link #precomputeOccupancy}.
+     *
+     * @param pathCache          The cache of paths from the start position to each restaurant.
+     * @param searchStrategy     How paths are searched for.
+     * @param occupancyDirectory The directory the occupancy bitmaps are kept in, or null to not precompute them.
+     */
+    public FlightDataHandler(FlightPathCache pathCache, SearchStrategy searchStrategy, File occupancyDirectory) {
+        this.pathCache = pathCache;
+        this.searchStrategy = searchStrategy;
+        this.occupancyDirectory = occupancyDirectory;
+    }
+
+    /**
+     * Precomputes the occupancy bitmap of the regions over the bounding box of the restaurants and the start
+     * position, with a margin, so most of the checks of the path search are bit lookups, see
+     * {@link OccupancyBitmap}. Nothing is done if this handler has no directory to keep the bitmaps in.
+     *
+     * @param restaurants   An array of available restaurants.
+     * @param noFlyZones    An array of areas where flying is prohibited.
+     * @param centralRegion The designated central region for drone operations.
+     * @param startPosition The position the drone starts and ends each delivery at.
+     */
+    public void precomputeOccupancy(Restaurant[] restaurants, NamedRegion[] noFlyZones, NamedRegion centralRegion,
+                                    LngLat startPosition) {
+        if (occupancyDirectory == null || restaurants == null || noFlyZones == null || centralRegion == null
+                || startPosition == null) {
+            return;
+        }
+
+        double minLng = startPosition.lng(), minLat = startPosition.lat();
+        double maxLng = startPosition.lng(), maxLat = startPosition.lat();
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant == null || restaurant.location() == null) {
+                continue;
+            }
+            minLng = Math.min(minLng, restaurant.location().lng());
+            minLat = Math.min(minLat, restaurant.location().lat());
+            maxLng = Math.max(maxLng, restaurant.location().lng());
+            maxLat = Math.max(maxLat, restaurant.location().lat());
+        }
+
+        RegionIndex regions = getRegionIndex(noFlyZones, centralRegion);
+        long start = System.nanoTime();
+        regions.precomputeOccupancy(occupancyDirectory, minLng - OCCUPANCY_MARGIN, minLat - OCCUPANCY_MARGIN,
+                maxLng + OCCUPANCY_MARGIN, maxLat + OCCUPANCY_MARGIN);
+        OCCUPANCY_TIMER.recordSince(start);
+    }
+
+    /**
+     * Calculates the angles at which a drone must travel to complete a given order, as
+     * {@link #calculateFlightPlan} does, with 999 marking each hover.
      *
      * @param order         The order for which to generate the flight path.
      * @param restaurants   An array of available restaurants.
      * @param noFlyZones    An array of areas where flying is prohibited.
      * @param centralRegion The designated central region for drone operations.
-     * @return A list of angles representing the drone's path. Returns null if no path
+     * @return A list of angles representing the drone's path. Returns an empty list if no path
      * can be found or if the restaurant is not found.
      */
     public ArrayList<Double> calculateAngles(Order order, Restaurant[] restaurants, NamedRegion[] noFlyZones, NamedRegion centralRegion, LngLat startPosition) {
+        return calculateFlightPlan(order, restaurants, noFlyZones, centralRegion, startPosition).toAngles();
+    }
+
+    /**
+     * Calculates the flight plan a drone must follow to complete a given order.
+     * The method finds the restaurant associated with the order, calculates the path
+     * to the restaurant, and then calculates the return path.
+     *
+     * @param order         The order for which to generate the flight plan.
+     * @param restaurants   An array of available restaurants.
+     * @param noFlyZones    An array of areas where flying is prohibited.
+     * @param centralRegion The designated central region for drone operations.
+     * @param startPosition The position the drone starts and ends the delivery at.
+     * @return The drone's flight plan. Returns an empty plan if no path can be found or if
+     * the restaurant is not found.
+     */
+    public FlightPlan calculateFlightPlan(Order order, Restaurant[] restaurants, NamedRegion[] noFlyZones, NamedRegion centralRegion, LngLat startPosition) {
         // Checks if any of the parameters are null.
         if (order == null || restaurants == null || noFlyZones == null || centralRegion == null) {
-            System.err.println("FlightDataHandler - calculateAngles: retrieved null argument in + " + order + ", " +
+            System.err.println("FlightDataHandler - calculateFlightPlan: retrieved null argument in + " + order + ", " +
                     Arrays.toString(restaurants) + ", " + Arrays.toString(noFlyZones) + ", " + centralRegion
                     + "\nreturning empty...");
-            return new ArrayList<>();    // Handled in main class.
+            return FlightPlan.empty(startPosition);    // Handled in main class.
         }
 
-        // Find restaurant position.
-        Pizza targetPizza = order.getPizzasInOrder()[0];   // All pizzas come from the same restaurant.
-        LngLat restaurantLocation = null;
+        return calculateFlightPlan(order, getMenuIndex(restaurants), noFlyZones, centralRegion, startPosition);
+    }
 
-        // Finds the restaurant that the pizza is from.
-        for (Restaurant restaurant : restaurants) {
-            List<Pizza> menu = Arrays.asList(restaurant.menu());
-            if (menu.contains(targetPizza)) {
-                restaurantLocation = restaurant.location();
-                break;
-            }
+    /**
+     * Calculates the flight plan a drone must follow to complete a given order, as {@link #calculateFlightPlan}
+     * does, finding the restaurant through an index of the restaurants' menus.
+     *
+     * @param order         The order for which to generate the flight plan.
+     * @param menuIndex     The index of the menus of the available restaurants.
+     * @param noFlyZones    An array of areas where flying is prohibited.
+     * @param centralRegion The designated central region for drone operations.
+     * @param startPosition The position the drone starts and ends the delivery at.
+     * @return The drone's flight plan. Returns an empty plan if no path can be found or if
+     * the restaurant is not found.
+     */
+    public FlightPlan calculateFlightPlan(Order order, MenuIndex menuIndex, NamedRegion[] noFlyZones, NamedRegion centralRegion, LngLat startPosition) {
+        // Checks if any of the parameters are null.
+        if (order == null || menuIndex == null || noFlyZones == null || centralRegion == null) {
+            System.err.println("FlightDataHandler - calculateFlightPlan: retrieved null argument in + " + order + ", " +
+                    menuIndex + ", " + Arrays.toString(noFlyZones) + ", " + centralRegion + "\nreturning empty...");
+            return FlightPlan.empty(startPosition);    // Handled in main class.
         }
 
-        // If the restaurant is not found, return null such that main function can skip this order.
-        if (restaurantLocation == null) {
-            return new ArrayList<>();
+        // Finds the restaurant that the pizza is from, all pizzas come from the same restaurant.
+        Restaurant restaurant = menuIndex.getRestaurant(order.getPizzasInOrder()[0]);
+
+        // If the restaurant is not found, return an empty plan such that main function can skip this order.
+        if (restaurant == null) {
+            return FlightPlan.empty(startPosition);
         }
 
-        // The anglePath is the list of angles, set it initially as the forward path.
-        ArrayList<Double> anglePath = new PathGenerator().createFlightAngles(startPosition, restaurantLocation, noFlyZones, centralRegion);
+        // The forward path to the restaurant, only searched for once per restaurant.
+        LngLat endPosition = restaurant.location();
+        RegionIndex regions = getRegionIndex(noFlyZones, centralRegion);
+        byte[] outbound = pathCache.getOrComputeDirections(startPosition, endPosition, regions.getFingerprint(),
+                searchStrategy, () -> PATH_SEARCH_TIMER.time(
+                        () -> new PathGenerator(searchStrategy).createFlightDirections(startPosition, endPosition, regions)));
 
-        // If a path is not found, return null such that main function can skip this order.
-        if (anglePath == null || anglePath.isEmpty()) {
-            return new ArrayList<>();
+        // If a path is not found, return an empty plan such that main function can skip this order.
+        if (outbound.length == 0) {
+            return FlightPlan.empty(startPosition);
         }
 
-        // From restaurant to customer, since each move is constant distance, angles can be reversed.
-        ArrayList<Double> returnAngles = reverseAngles(anglePath);
+        // Flies to the restaurant, hovers, flies back along the reversed path and hovers again.
+        return FlightPlan.delivery(startPosition, outbound);
+    }
 
-        // Adds in 999 to indicate hover move and the reversed angles.
-        anglePath.add(999.0);
-        anglePath.addAll(returnAngles);
-        anglePath.add(999.0);
+    /**
+     * Gets the index of the restaurants' menus, the index is only built again when the restaurants change.
+     *
+     * @param restaurants The available restaurants.
+     * @return The index of the menus.
+     */
+    private MenuIndex getMenuIndex(Restaurant[] restaurants) {
+        MenuIndex index = menuIndex;
+        if (index == null || !index.isBuiltFrom(restaurants)) {
+            index = MenuIndex.build(restaurants);
+            menuIndex = index;
+        }
+        return index;
+    }
 
-        return anglePath;
+    /**
+     * Gets the compiled index of the regions, the index is only compiled again when the regions change,
+     * so it is compiled once per run rather than once per order.
+     *
+     * @param noFlyZones    An array of areas where flying is prohibited.
+     * @param centralRegion The designated central region for drone operations.
+     * @return The compiled regions.
+     */
+    private RegionIndex getRegionIndex(NamedRegion[] noFlyZones, NamedRegion centralRegion) {
+        RegionIndex index = regionIndex;
+        if (index == null || !index.isCompiledFrom(noFlyZones, centralRegion)) {
+            index = RegionIndex.compile(noFlyZones, centralRegion);
+            regionIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -86,15 +229,16 @@ public class FlightDataHandler {
      * @return An ArrayList of FlightPath objects, each representing a move of the overall path.
      */
     public ArrayList<FlightPath> convertAngleToFlightPath(String orderNo, ArrayList<Double> angles, LngLat startPosition) {
+        if (isCompassPath(angles)) {
+            return FlightPlan.fromAngles(startPosition, angles).toFlightPaths(orderNo);
+        }
+
+        // Any other angle can't be stored as a direction code, so each move is calculated from its angle.
         ArrayList<FlightPath> flightPath = new ArrayList<>();
         LngLat fromLngLat = startPosition;
-        LngLat toLngLat;
-
-        // For every angle in the list, calculate the next position and create a flight path object.
         for (Double angle : angles) {
-            // A hover move will not move horizontally, so the next position is the same as the current position.
-            toLngLat = angle == 999 ? fromLngLat : lngLatHandler.nextPosition(fromLngLat, angle);
-
+            LngLat toLngLat = angle == FlightPlan.HOVER_ANGLE ? fromLngLat
+                    : lngLatHandler.nextPosition(fromLngLat, angle);
             flightPath.add(new FlightPath(orderNo, fromLngLat, angle, toLngLat));
             fromLngLat = toLngLat;
         }
@@ -109,39 +253,38 @@ public class FlightDataHandler {
      * @return An ArrayList of LngLat objects, each representing a coordinate of the overall path.
      */
     public ArrayList<LngLat> convertAngleToList(ArrayList<Double> angles, LngLat startPosition) {
+        // Even a path with no moves visits the start position.
+        if (angles.isEmpty()) {
+            return new ArrayList<>(List.of(startPosition));
+        }
+        if (isCompassPath(angles)) {
+            return FlightPlan.fromAngles(startPosition, angles).toLngLats();
+        }
+
+        // Any other angle can't be stored as a direction code, so each move is calculated from its angle.
         ArrayList<LngLat> flightList = new ArrayList<>();
         LngLat fromLngLat = startPosition;
-        LngLat toLngLat;
-
         flightList.add(fromLngLat);
-
         for (Double angle : angles) {
-            toLngLat = angle == 999 ? fromLngLat : lngLatHandler.nextPosition(fromLngLat, angle);
-
-            flightList.add(toLngLat);
-            fromLngLat = toLngLat;
+            fromLngLat = angle == FlightPlan.HOVER_ANGLE ? fromLngLat : lngLatHandler.nextPosition(fromLngLat, angle);
+            flightList.add(fromLngLat);
         }
         return flightList;
     }
 
     /**
-     * Reverses a given list of angles, mirroring the path.
-     * This is used by {@link #calculateAngles} to calculate the return journey of a drone.
+     * Checks if every angle of a path is one of the compass directions or a hover, which is always the case for a
+     * path from {@link #calculateAngles}.
      *
-     * @param angles The original list of angles.
-     * @return An ArrayList of angles representing the reversed path.
+     * @param angles The angles of the path.
+     * @return True if the path can be stored as a {@link FlightPlan}.
      */
-    private ArrayList<Double> reverseAngles(ArrayList<Double> angles) {
-        ArrayList<Double> reversed_angles = new ArrayList<>();
-
-        // Does a 180 degree flip for each angle
-        for (double angle : angles) {
-            reversed_angles.add((angle + 180) % 360);
+    private static boolean isCompassPath(List<Double> angles) {
+        for (Double angle : angles) {
+            if (!FlightPlan.isDirection(angle)) {
+                return false;
+            }
         }
-        // Reverses the order.
-        Collections.reverse(reversed_angles);
-        return reversed_angles;
+        return true;
     }
 }
-
-
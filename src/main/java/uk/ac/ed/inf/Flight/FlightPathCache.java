@@ -0,0 +1,285 @@
+package uk.ac.ed.inf.Flight;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Caches the forward flight path (as direction codes, see {@link FlightPlan}) from a start position to a
+ * restaurant, so that a path is only ever searched for once per restaurant rather than once per order. Paths are
+ * keyed by the start position, the restaurant location, the search strategy and a fingerprint of the no-fly zones
+ * and central area, so a path is never reused once the regions it was found with have changed, or by a run with
+ * another strategy. The cache can be persisted to a file so that later runs and later dates reuse it. Each path is
+ * searched for outside the map, so a long search never holds up workers asking for other paths, and workers asking
+ * for the same path wait for the one search.
+ */
+public class FlightPathCache {
+    private static final int FILE_VERSION = 3;    // Bumped whenever the rules for a legal path or the layout change.
+
+    private final File file;
+    private final Map<Key, CompletableFuture<byte[]>> paths = new ConcurrentHashMap<>();
+    private volatile long latestFingerprint;
+
+    /**
+     * A key for a cached path.
+     *
+     * @param start             The position the path starts at.
+     * @param end               The position the path ends close to.
+     * @param strategy          The strategy the path was searched for with.
+     * @param regionFingerprint The fingerprint of the regions the path was found with.
+     */
+    private record Key(LngLat start, LngLat end, SearchStrategy strategy, long regionFingerprint) {
+    }
+
+    /**
+     * A cached path as it is stored in the cache file.
+     */
+    private record CachedPath(double startLng, double startLat, double endLng, double endLat,
+                              SearchStrategy strategy, long regionFingerprint, List<Double> angles) {
+    }
+
+    /**
+     * The layout of the cache file.
+     */
+    private record CacheFile(int version, List<CachedPath> paths) {
+    }
+
+    /**
+     * Creates an in-memory cache which is never persisted.
+     */
+    public FlightPathCache() {
+        this(null);
+    }
+
+    /**
+     * Creates a cache which is persisted to the given file by {@link #save()}.
+     *
+     * @param file The file the cache is saved to, null for an in-memory cache.
+     */
+    private FlightPathCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads a cache from a file, if the file doesn't exist or cannot be read an empty cache is returned,
+     * which will still be saved to the file.
+     *
+     * @param file The file to load the cache from and later save it to.
+     * @return The loaded cache.
+     */
+    public static FlightPathCache load(File file) {
+        FlightPathCache cache = new FlightPathCache(file);
+        if (!file.exists()) {
+            return cache;
+        }
+
+        try {
+            CacheFile cacheFile = new ObjectMapper().readValue(file, CacheFile.class);
+            // Paths from an older layout or older rules are dropped, they will be searched for again.
+            if (cacheFile.version() == FILE_VERSION && cacheFile.paths() != null) {
+                for (CachedPath path : cacheFile.paths()) {
+                    Key key = new Key(new LngLat(path.startLng(), path.startLat()),
+                            new LngLat(path.endLng(), path.endLat()), path.strategy(), path.regionFingerprint());
+                    cache.paths.put(key, CompletableFuture.completedFuture(FlightPlan.directionsOf(path.angles())));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("FlightPathCache - load: Failed to read cache file " + file + ": " + e
+                    + ", starting with an empty cache...");
+        }
+        return cache;
+    }
+
+    /**
+     * Gets the forward path from the start to the end position as direction codes, searching for it only if it is
+     * not cached. Failed searches aren't cached, so a path that couldn't be found is searched for again next time.
+     *
+     * @param startPosition The starting position of the drone.
+     * @param endPosition   The target position to reach.
+     * @param fingerprint   The fingerprint of the regions, see {@link #fingerprint}.
+     * @param strategy      The strategy the search uses, paths found with another strategy aren't used.
+     * @param search        Searches for the direction codes of the path if it is not cached.
+     * @return A copy of the cached direction codes, which the caller is free to modify.
+     */
+    public byte[] getOrComputeDirections(LngLat startPosition, LngLat endPosition, long fingerprint,
+                                         SearchStrategy strategy, Supplier<byte[]> search) {
+        latestFingerprint = fingerprint;
+
+        Key key = new Key(startPosition, endPosition, strategy, fingerprint);
+        CompletableFuture<byte[]> cached = paths.get(key);
+        if (cached == null) {
+            CompletableFuture<byte[]> searching = new CompletableFuture<>();
+            cached = paths.putIfAbsent(key, searching);
+            if (cached == null) {
+                return search(key, searching, search);
+            }
+        }
+
+        // Another worker is searching for the path, or already found it.
+        try {
+            return cached.join().clone();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Searches for a path on behalf of every worker asking for it, and caches it if one is found.
+     *
+     * @param key       The key of the path.
+     * @param searching The future the path is passed to waiting workers through, which is already in the cache.
+     * @param search    Searches for the direction codes of the path.
+     * @return A copy of the direction codes, or an empty array if the search failed.
+     */
+    private byte[] search(Key key, CompletableFuture<byte[]> searching, Supplier<byte[]> search) {
+        byte[] directions;
+        try {
+            directions = search.get();
+        } catch (RuntimeException | Error e) {
+            paths.remove(key, searching);
+            searching.completeExceptionally(e);
+            throw e;
+        }
+
+        if (directions == null || directions.length == 0) {
+            // The workers already waiting get the failure, later ones search again.
+            paths.remove(key, searching);
+            searching.complete(new byte[0]);
+            return new byte[0];
+        }
+        searching.complete(directions.clone());
+        return directions.clone();
+    }
+
+    /**
+     * Gets the number of paths in the cache, including those still being searched for.
+     *
+     * @return The number of cached paths.
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Saves the cache to its file. Only the paths found with the most recently used regions are kept,
+     * paths of any other regions are out of date and are dropped.
+     *
+     * @throws IOException If the file cannot be written to.
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+
+        List<CachedPath> cachedPaths = new ArrayList<>();
+        for (Map.Entry<Key, CompletableFuture<byte[]>> entry : paths.entrySet()) {
+            Key key = entry.getKey();
+            byte[] directions = entry.getValue().getNow(null);
+            // Paths still being searched for are left for the next save.
+            if (key.regionFingerprint() != latestFingerprint || directions == null || directions.length == 0) {
+                continue;
+            }
+            cachedPaths.add(new CachedPath(key.start().lng(), key.start().lat(), key.end().lng(), key.end().lat(),
+                    key.strategy(), key.regionFingerprint(), FlightPlan.anglesOf(directions)));
+        }
+
+        // Written to a temporary file which is then moved over the old one, so a run that is killed part of the
+        // way through saving leaves the old cache rather than a cut short one.
+        Path target = file.toPath();
+        Path temporary = null;
+        try {
+            byte[] contents = new ObjectMapper().writeValueAsBytes(new CacheFile(FILE_VERSION, cachedPaths));
+            Path directory = target.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, file.getName(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(contents);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            throw new IOException("FlightPathCache - save: Failed to write cache file: " + e);
+        } finally {
+            if (temporary != null) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    /**
+     * Calculates a fingerprint of the no-fly zones and central region by hashing every vertex,
+     * so any change to the regions will change the fingerprint.
+     *
+     * @param noFlyZones    The no-fly zones.
+     * @param centralRegion The central region.
+     * @return A 64-bit fingerprint of the regions.
+     */
+    public static long fingerprint(NamedRegion[] noFlyZones, NamedRegion centralRegion) {
+        // FNV-1a over the bits of every coordinate, with the vertex count separating each region.
+        long hash = 0xcbf29ce484222325L;
+        for (NamedRegion noFlyZone : noFlyZones) {
+            hash = hashRegion(hash, noFlyZone);
+        }
+        hash = hashLong(hash, -1);  // Separates the no-fly zones from the central region.
+        return hashRegion(hash, centralRegion);
+    }
+
+    /**
+     * Adds a region's vertices to a fingerprint.
+     *
+     * @param hash   The fingerprint so far.
+     * @param region The region to add.
+     * @return The new fingerprint.
+     */
+    private static long hashRegion(long hash, NamedRegion region) {
+        LngLat[] vertices = region.vertices();
+        hash = hashLong(hash, vertices.length);
+        for (LngLat vertex : vertices) {
+            hash = hashLong(hash, Double.doubleToLongBits(vertex.lng()));
+            hash = hashLong(hash, Double.doubleToLongBits(vertex.lat()));
+        }
+        return hash;
+    }
+
+    /**
+     * Adds each byte of a long to a fingerprint.
+     *
+     * @param hash  The fingerprint so far.
+     * @param value The value to add.
+     * @return The new fingerprint.
+     */
+    private static long hashLong(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
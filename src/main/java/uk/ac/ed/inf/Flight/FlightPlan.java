@@ -0,0 +1,305 @@
+package uk.ac.ed.inf.Flight;
+
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.OutputClasses.FlightPath;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact flight plan of a drone. The drone can only move in 16 directions or hover, so each move is stored
+ * as a single byte direction code rather than a boxed angle. Code d is the angle d * 22.5, and {@link #HOVER}
+ * is a hover. The positions along the plan are only calculated when they are first needed.
+ */
+public final class FlightPlan {
+    public static final byte HOVER = 16;
+    public static final double HOVER_ANGLE = 999.0;  // The angle a hover is output as.
+
+    private static final int DIRECTION_COUNT = 16;
+    private static final double DIRECTION_ANGLE = 360.0 / DIRECTION_COUNT;
+    private static final byte[] NO_MOVES = new byte[0];
+    private static final LngLatHandler LNG_LAT_HANDLER = new LngLatHandler();
+
+    private final LngLat startPosition;
+    private final byte[] directions;
+    private Positions positions;    // Calculated on first use, see positions().
+
+    /**
+     * The positions along the plan, position 0 is the start and position i + 1 is the position after move i.
+     */
+    private record Positions(double[] lngs, double[] lats) {
+    }
+
+    /**
+     * Creates a flight plan.
+     *
+     * @param startPosition The position the drone starts at.
+     * @param directions    The direction code of each move, the array is copied.
+     */
+    public FlightPlan(LngLat startPosition, byte[] directions) {
+        for (byte direction : directions) {
+            if (direction < 0 || direction > HOVER) {
+                throw new IllegalArgumentException("FlightPlan: Invalid direction code " + direction);
+            }
+        }
+        this.startPosition = startPosition;
+        this.directions = directions.clone();
+    }
+
+    /**
+     * Creates a flight plan with no moves, for an order that is not delivered.
+     *
+     * @param startPosition The position the drone starts at.
+     * @return An empty flight plan.
+     */
+    public static FlightPlan empty(LngLat startPosition) {
+        return new FlightPlan(startPosition, NO_MOVES);
+    }
+
+    /**
+     * Creates the flight plan of a delivery, the drone flies to the restaurant, hovers to pick up the order,
+     * flies the same path back in reverse and hovers to drop off the order.
+     *
+     * @param startPosition The position the drone starts and ends at.
+     * @param outbound      The direction codes of the path from the start position to the restaurant.
+     * @return The flight plan of the delivery.
+     */
+    public static FlightPlan delivery(LngLat startPosition, byte[] outbound) {
+        int length = outbound.length;
+        byte[] directions = new byte[2 * length + 2];
+        System.arraycopy(outbound, 0, directions, 0, length);
+        directions[length] = HOVER;
+
+        // Since each move is constant distance, the return path is each move reversed in the opposite order.
+        for (int i = 0; i < length; i++) {
+            directions[length + 1 + i] = reverse(outbound[length - 1 - i]);
+        }
+        directions[directions.length - 1] = HOVER;
+        return new FlightPlan(startPosition, directions);
+    }
+
+    /**
+     * Creates a flight plan from a list of angles, where 999 is a hover.
+     *
+     * @param startPosition The position the drone starts at.
+     * @param angles        The angle of each move.
+     * @return The flight plan.
+     */
+    public static FlightPlan fromAngles(LngLat startPosition, List<Double> angles) {
+        return new FlightPlan(startPosition, directionsOf(angles));
+    }
+
+    /**
+     * Gets the direction code of an angle.
+     *
+     * @param angle One of the 16 angles the drone can move in, or 999 for a hover.
+     * @return The direction code of the angle.
+     * @throws IllegalArgumentException If the drone cannot move at the angle.
+     */
+    public static byte directionOf(double angle) {
+        if (!isDirection(angle)) {
+            throw new IllegalArgumentException("FlightPlan - directionOf: The drone cannot move at angle " + angle);
+        }
+        return angle == HOVER_ANGLE ? HOVER : (byte) (angle / DIRECTION_ANGLE);
+    }
+
+    /**
+     * Checks if an angle is one of the directions a flight plan can store.
+     *
+     * @param angle The angle in degrees, or 999 for a hover.
+     * @return True if the angle is one of the 16 compass directions or a hover.
+     */
+    public static boolean isDirection(double angle) {
+        if (angle == HOVER_ANGLE) {
+            return true;
+        }
+        double direction = angle / DIRECTION_ANGLE;
+        return direction == Math.rint(direction) && direction >= 0 && direction < DIRECTION_COUNT;
+    }
+
+    /**
+     * Gets the direction codes of a list of angles.
+     *
+     * @param angles The angles, where 999 is a hover.
+     * @return The direction code of each angle.
+     */
+    public static byte[] directionsOf(List<Double> angles) {
+        byte[] directions = new byte[angles.size()];
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = directionOf(angles.get(i));
+        }
+        return directions;
+    }
+
+    /**
+     * Gets the angle of a direction code.
+     *
+     * @param direction The direction code.
+     * @return The angle in degrees, or 999 for a hover.
+     */
+    public static double angleOf(byte direction) {
+        return direction == HOVER ? HOVER_ANGLE : direction * DIRECTION_ANGLE;
+    }
+
+    /**
+     * Gets the angles of a list of direction codes.
+     *
+     * @param directions The direction codes.
+     * @return The angle of each direction code, where 999 is a hover.
+     */
+    public static ArrayList<Double> anglesOf(byte[] directions) {
+        ArrayList<Double> angles = new ArrayList<>(directions.length);
+        for (byte direction : directions) {
+            angles.add(angleOf(direction));
+        }
+        return angles;
+    }
+
+    /**
+     * Gets the direction code that undoes a move, a hover is its own reverse.
+     *
+     * @param direction The direction code of the move.
+     * @return The direction code 180 degrees from the move.
+     */
+    public static byte reverse(byte direction) {
+        return direction == HOVER ? HOVER : (byte) ((direction + DIRECTION_COUNT / 2) % DIRECTION_COUNT);
+    }
+
+    /**
+     * Gets the position the drone starts at.
+     *
+     * @return The start position.
+     */
+    public LngLat getStartPosition() {
+        return startPosition;
+    }
+
+    /**
+     * Gets the number of moves in the plan.
+     *
+     * @return The number of moves.
+     */
+    public int size() {
+        return directions.length;
+    }
+
+    /**
+     * Checks if the plan has no moves.
+     *
+     * @return True if there are no moves, false otherwise.
+     */
+    public boolean isEmpty() {
+        return directions.length == 0;
+    }
+
+    /**
+     * Gets the direction code of a move.
+     *
+     * @param move The index of the move.
+     * @return The direction code of the move.
+     */
+    public byte getDirection(int move) {
+        return directions[move];
+    }
+
+    /**
+     * Gets the angle of a move.
+     *
+     * @param move The index of the move.
+     * @return The angle of the move, or 999 for a hover.
+     */
+    public double getAngle(int move) {
+        return angleOf(directions[move]);
+    }
+
+    /**
+     * Gets the position of the drone after a number of moves.
+     *
+     * @param moves The number of moves made, from 0 to {@link #size()}.
+     * @return The position after the moves.
+     */
+    public LngLat getPosition(int moves) {
+        Positions positions = positions();
+        return new LngLat(positions.lngs()[moves], positions.lats()[moves]);
+    }
+
+    /**
+     * Calculates every position along the plan the first time they are needed.
+     *
+     * @return The positions along the plan.
+     */
+    private Positions positions() {
+        Positions calculated = positions;
+        if (calculated != null) {
+            return calculated;
+        }
+
+        double[] lngs = new double[directions.length + 1];
+        double[] lats = new double[directions.length + 1];
+        LngLat position = startPosition;
+        lngs[0] = position.lng();
+        lats[0] = position.lat();
+        for (int i = 0; i < directions.length; i++) {
+            // A hover move will not move horizontally, so the next position is the same as the current position.
+            if (directions[i] != HOVER) {
+                position = LNG_LAT_HANDLER.nextPosition(position, angleOf(directions[i]));
+            }
+            lngs[i + 1] = position.lng();
+            lats[i + 1] = position.lat();
+        }
+
+        calculated = new Positions(lngs, lats);
+        positions = calculated;
+        return calculated;
+    }
+
+    /**
+     * Gets the angle of every move.
+     *
+     * @return A list of angles, where 999 is a hover.
+     */
+    public ArrayList<Double> toAngles() {
+        return anglesOf(directions);
+    }
+
+    /**
+     * Converts the plan into a list of flight path classes for a given order.
+     *
+     * @param orderNo The order number to store within the flight path class.
+     * @return An ArrayList of FlightPath objects, each representing a move of the plan.
+     */
+    public ArrayList<FlightPath> toFlightPaths(String orderNo) {
+        ArrayList<FlightPath> flightPaths = new ArrayList<>(directions.length);
+        if (isEmpty()) {
+            return flightPaths;
+        }
+
+        LngLat from = startPosition;
+        for (int i = 0; i < directions.length; i++) {
+            LngLat to = getPosition(i + 1);
+            flightPaths.add(new FlightPath(orderNo, from, getAngle(i), to));
+            from = to;
+        }
+        return flightPaths;
+    }
+
+    /**
+     * Converts the plan into a list of every position the drone visits, starting with the start position.
+     * An empty plan visits no positions.
+     *
+     * @return An ArrayList of LngLat objects, each representing a coordinate of the plan.
+     */
+    public ArrayList<LngLat> toLngLats() {
+        ArrayList<LngLat> lngLats = new ArrayList<>(directions.length + 1);
+        if (isEmpty()) {
+            return lngLats;
+        }
+
+        lngLats.add(startPosition);
+        for (int i = 1; i <= directions.length; i++) {
+            lngLats.add(getPosition(i));
+        }
+        return lngLats;
+    }
+}
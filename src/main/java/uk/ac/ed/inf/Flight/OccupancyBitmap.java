@@ -0,0 +1,350 @@
+package uk.ac.ed.inf.Flight;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The no-fly zones and central region rasterised onto a grid of cells a move wide over the area the drone flies in,
+ * with a bit per cell for each of: no no-fly zone touches the cell, the cell is entirely inside the central region,
+ * and the cell is entirely outside it. Most points and moves are in cells that are clear of the no-fly zones and
+ * on one side of the central region, so most checks by {@link RegionIndex} are answered by a couple of bit lookups.
+ * <p>
+ * The raster is conservative, a cell is only marked when the cell grown by a small margin is, so any position
+ * within it, wherever it is rounded to, gets exactly the answer the regions would give. Cells crossed by the edge
+ * of a region, and positions outside the grid, are left to the exact checks.
+ * <p>
+ * The bitmap is saved to a file named after the fingerprint of the regions, and later runs with the same regions
+ * and grid map the file and copy its words out rather than rasterising again. The words are copied, as a lookup
+ * in an array is cheaper than one through the mapped buffer, and the bitmap is only a few kilobytes.
+ */
+final class OccupancyBitmap {
+    static final int UNKNOWN = 0;
+    static final int INSIDE = 1;
+    static final int OUTSIDE = 2;
+
+    private static final int MAGIC = 0x50444F42;   // "PDOB"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 48;
+    private static final long MAX_CELLS = 1L << 24;
+    /*
+        How far each cell is grown before it is rasterised. Far more than any rounding of a position or of the
+        region checks, so a position just outside the cell it is looked up in is still covered, and far less
+        than a move, so almost every cell away from the edges of the regions is still marked.
+     */
+    private static final double CELL_MARGIN = 1e-7;
+
+    // The layers of the bitmap.
+    private static final int CLEAR = 0;
+    private static final int INSIDE_CENTRAL = 1;
+    private static final int OUTSIDE_CENTRAL = 2;
+    private static final int LAYERS = 3;
+
+    private final Grid grid;
+    private final long fingerprint;
+    private final double cellsPerDegree;    // Multiplying is cheaper than dividing by the cell size.
+    private final int layerWords;
+    private final long[] words;
+    private final boolean mapped;
+
+    /**
+     * The cells of a bitmap, cell (column, row) covers the longitudes from minLng + column * cellSize.
+     *
+     * @param minLng   The longitude of the west edge of the grid.
+     * @param minLat   The latitude of the south edge of the grid.
+     * @param cellSize The width and height of each cell.
+     * @param columns  The number of cells from west to east.
+     * @param rows     The number of cells from south to north.
+     */
+    private record Grid(double minLng, double minLat, double cellSize, int columns, int rows) {
+        /**
+         * Lays out cells a move wide over an area, or wider if the area would need too many.
+         */
+        static Grid over(double minLng, double minLat, double maxLng, double maxLat) {
+            double width = Math.max(maxLng - minLng, 0);
+            double height = Math.max(maxLat - minLat, 0);
+            double cellSize = Math.max(SystemConstants.DRONE_MOVE_DISTANCE, Math.sqrt(width * height / MAX_CELLS));
+            int columns = Math.max(1, (int) Math.ceil(width / cellSize));
+            int rows = Math.max(1, (int) Math.ceil(height / cellSize));
+            return new Grid(minLng, minLat, cellSize, columns, rows);
+        }
+
+        int cells() {
+            return columns * rows;
+        }
+    }
+
+    private OccupancyBitmap(Grid grid, long fingerprint, long[] words, boolean mapped) {
+        this.grid = grid;
+        this.fingerprint = fingerprint;
+        this.cellsPerDegree = 1 / grid.cellSize();
+        this.layerWords = layerWords(grid);
+        this.words = words;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Gets the bitmap of the regions over an area, mapping it from its file in the directory if it was saved with
+     * the same regions and grid, and rasterising and saving it otherwise. A failure to save it only means later
+     * runs rasterise it again.
+     *
+     * @param directory     The directory the bitmaps are kept in.
+     * @param fingerprint   The fingerprint of the regions, see {@link FlightPathCache#fingerprint}.
+     * @param noFlyZones    The no-fly zones.
+     * @param centralRegion The central region.
+     * @param minLng        The longitude of the west edge of the area.
+     * @param minLat        The latitude of the south edge of the area.
+     * @param maxLng        The longitude of the east edge of the area.
+     * @param maxLat        The latitude of the north edge of the area.
+     * @return The bitmap.
+     */
+    static OccupancyBitmap load(File directory, long fingerprint, NamedRegion[] noFlyZones, NamedRegion centralRegion,
+                                double minLng, double minLat, double maxLng, double maxLat) {
+        Grid grid = Grid.over(minLng, minLat, maxLng, maxLat);
+        File file = new File(directory, String.format("occupancy-%016x.bin", fingerprint));
+        if (file.exists()) {
+            try {
+                OccupancyBitmap bitmap = map(file, grid, fingerprint);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+            } catch (IOException e) {
+                System.err.println("OccupancyBitmap - load: Failed to map " + file + ": " + e + ", rasterising...");
+            }
+        }
+
+        long[] words = rasterise(grid, noFlyZones, centralRegion);
+        try {
+            save(file, grid, fingerprint, words);
+        } catch (IOException e) {
+            System.err.println("OccupancyBitmap - load: Failed to save " + file + ": " + e);
+        }
+        return new OccupancyBitmap(grid, fingerprint, words, false);
+    }
+
+    /**
+     * Maps a saved bitmap.
+     *
+     * @return The bitmap, or null if it was saved with other regions or another grid.
+     * @throws IOException If the file cannot be mapped.
+     */
+    private static OccupancyBitmap map(File file, Grid grid, long fingerprint) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long expectedBytes = HEADER_BYTES + (long) LAYERS * layerWords(grid) * Long.BYTES;
+            if (channel.size() != expectedBytes) {
+                return null;
+            }
+
+            // The mapping stays valid once the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, expectedBytes);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FILE_VERSION || buffer.getLong(8) != fingerprint
+                    || !grid.equals(new Grid(buffer.getDouble(16), buffer.getDouble(24), buffer.getDouble(32),
+                    buffer.getInt(40), buffer.getInt(44)))) {
+                return null;
+            }
+            long[] words = new long[LAYERS * layerWords(grid)];
+            buffer.slice(HEADER_BYTES, (int) (expectedBytes - HEADER_BYTES)).asLongBuffer().get(words);
+            return new OccupancyBitmap(grid, fingerprint, words, true);
+        }
+    }
+
+    /**
+     * Saves a bitmap to a temporary file, then moves it over the old file, so a bitmap that another run has mapped
+     * is never seen half written.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private static void save(File file, Grid grid, long fingerprint, long[] words) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + words.length * Long.BYTES);
+        buffer.putInt(MAGIC).putInt(FILE_VERSION).putLong(fingerprint)
+                .putDouble(grid.minLng()).putDouble(grid.minLat()).putDouble(grid.cellSize())
+                .putInt(grid.columns()).putInt(grid.rows());
+        buffer.asLongBuffer().put(words);
+        buffer.clear();
+
+        Path target = file.toPath();
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Rasterises the regions onto a grid.
+     *
+     * @return The words of each layer of the bitmap, one layer after another.
+     */
+    private static long[] rasterise(Grid grid, NamedRegion[] noFlyZones, NamedRegion centralRegion) {
+        CompiledRegion[] zones = new CompiledRegion[noFlyZones.length];
+        for (int i = 0; i < zones.length; i++) {
+            zones[i] = new CompiledRegion(noFlyZones[i]);
+        }
+        CompiledRegion central = new CompiledRegion(centralRegion);
+
+        int layerWords = layerWords(grid);
+        long[] words = new long[LAYERS * layerWords];
+        for (int row = 0; row < grid.rows(); row++) {
+            double minLat = grid.minLat() + row * grid.cellSize() - CELL_MARGIN;
+            double maxLat = grid.minLat() + (row + 1) * grid.cellSize() + CELL_MARGIN;
+            for (int column = 0; column < grid.columns(); column++) {
+                double minLng = grid.minLng() + column * grid.cellSize() - CELL_MARGIN;
+                double maxLng = grid.minLng() + (column + 1) * grid.cellSize() + CELL_MARGIN;
+                double centreLng = (minLng + maxLng) / 2;
+                double centreLat = (minLat + maxLat) / 2;
+                int cell = row * grid.columns() + column;
+
+                // A cell no side crosses is either entirely inside a region or entirely outside it.
+                boolean clear = true;
+                for (CompiledRegion zone : zones) {
+                    if (sideCrosses(zone, minLng, minLat, maxLng, maxLat) || zone.contains(centreLng, centreLat)) {
+                        clear = false;
+                        break;
+                    }
+                }
+                if (clear) {
+                    words[CLEAR * layerWords + (cell >>> 6)] |= 1L << cell;
+                }
+                if (!sideCrosses(central, minLng, minLat, maxLng, maxLat)) {
+                    int layer = central.contains(centreLng, centreLat) ? INSIDE_CENTRAL : OUTSIDE_CENTRAL;
+                    words[layer * layerWords + (cell >>> 6)] |= 1L << cell;
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Checks if any side of a region crosses or touches a box. A side is only ruled out when its bounding box
+     * misses the box, or every corner of the box is strictly on one side of it, so a side is never missed.
+     */
+    private static boolean sideCrosses(CompiledRegion region, double minLng, double minLat,
+                                       double maxLng, double maxLat) {
+        if (region.maxLng < minLng || region.minLng > maxLng || region.maxLat < minLat || region.minLat > maxLat) {
+            return false;
+        }
+
+        int j = region.lngs.length - 1;
+        for (int i = 0; i < region.lngs.length; i++) {
+            double lng1 = region.lngs[j], lat1 = region.lats[j];
+            double lng2 = region.lngs[i], lat2 = region.lats[i];
+            j = i;
+            if (Math.max(lng1, lng2) < minLng || Math.min(lng1, lng2) > maxLng
+                    || Math.max(lat1, lat2) < minLat || Math.min(lat1, lat2) > maxLat) {
+                continue;
+            }
+
+            int positive = 0;
+            int negative = 0;
+            for (int corner = 0; corner < 4; corner++) {
+                double lng = corner < 2 ? minLng : maxLng;
+                double lat = corner % 2 == 0 ? minLat : maxLat;
+                double side = (lng2 - lng1) * (lat - lat1) - (lat2 - lat1) * (lng - lng1);
+                if (side > 0) {
+                    positive++;
+                } else if (side < 0) {
+                    negative++;
+                }
+            }
+            if (positive < 4 && negative < 4) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int layerWords(Grid grid) {
+        return (grid.cells() + 63) >>> 6;
+    }
+
+    /**
+     * Checks if this bitmap was laid out over an area for regions, so it doesn't need loading again.
+     *
+     * @return True if the bitmap has the same regions and grid, false otherwise.
+     */
+    boolean covers(long fingerprint, double minLng, double minLat, double maxLng, double maxLat) {
+        return this.fingerprint == fingerprint && grid.equals(Grid.over(minLng, minLat, maxLng, maxLat));
+    }
+
+    /**
+     * Checks if this bitmap was mapped from a saved file, rather than rasterised.
+     *
+     * @return True if the bitmap was mapped, false otherwise.
+     */
+    boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Checks if every cell a box overlaps is clear of the no-fly zones, so no point or move within the box can
+     * be in or cross one.
+     *
+     * @return True if the box is known to be clear, false if it may not be or is outside the grid.
+     */
+    boolean isClear(double minLng, double minLat, double maxLng, double maxLat) {
+        double firstColumn = (minLng - grid.minLng()) * cellsPerDegree;
+        double firstRow = (minLat - grid.minLat()) * cellsPerDegree;
+        double lastColumn = (maxLng - grid.minLng()) * cellsPerDegree;
+        double lastRow = (maxLat - grid.minLat()) * cellsPerDegree;
+        if (!(firstColumn >= 0 && firstRow >= 0 && lastColumn < grid.columns() && lastRow < grid.rows())) {
+            return false;
+        }
+
+        for (int row = (int) firstRow; row <= (int) lastRow; row++) {
+            for (int column = (int) firstColumn; column <= (int) lastColumn; column++) {
+                if (!isSet(CLEAR, row * grid.columns() + column)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets whether a point is known to be inside or outside the central region.
+     *
+     * @param lng The longitude of the point.
+     * @param lat The latitude of the point.
+     * @return {@link #INSIDE}, {@link #OUTSIDE}, or {@link #UNKNOWN} if the point's cell is crossed by the edge of
+     * the central region or the point is outside the grid.
+     */
+    int centralState(double lng, double lat) {
+        double column = (lng - grid.minLng()) * cellsPerDegree;
+        double row = (lat - grid.minLat()) * cellsPerDegree;
+        if (!(column >= 0 && row >= 0 && column < grid.columns() && row < grid.rows())) {
+            return UNKNOWN;
+        }
+
+        int cell = (int) row * grid.columns() + (int) column;
+        if (isSet(INSIDE_CENTRAL, cell)) {
+            return INSIDE;
+        }
+        return isSet(OUTSIDE_CENTRAL, cell) ? OUTSIDE : UNKNOWN;
+    }
+
+    private boolean isSet(int layer, int cell) {
+        return (words[layer * layerWords + (cell >>> 6)] & (1L << cell)) != 0;
+    }
+}
@@ -1,6 +1,10 @@
 package uk.ac.ed.inf.Flight;
 
 import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.Metrics.Counter;
+import uk.ac.ed.inf.Metrics.Histogram;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
 import uk.ac.ed.inf.ilp.data.LngLat;
 import uk.ac.ed.inf.ilp.data.NamedRegion;
 
@@ -12,23 +16,29 @@ import java.util.*;
 class Move {
     private final LngLat position;
     private final Move cameFrom;
-    private final double hScore;
-    private final double angle;     // The angle from the previous position to this position.
+    private final long key;
+    private final double gScore;
+    private final double fScore;
+    private final byte direction;   // The direction code from the previous position to this position.
 
 
     /**
      * Constructs a new Move.
      *
-     * @param position The position of this move.
-     * @param cameFrom The previous move in the path.
-     * @param hScore   The heuristic cost estimate from this node to the end node.
-     * @param angle    The angle from the previous position to this position.
+     * @param position  The position of this move.
+     * @param cameFrom  The previous move in the path.
+     * @param key       The quantized lattice key of the position, see {@link PathGenerator#latticeKey}.
+     * @param gScore    The cost of the path from the start node to this node.
+     * @param hScore    The heuristic cost estimate from this node to the end node.
+     * @param direction The direction code from the previous position to this position, see {@link FlightPlan}.
      */
-    Move(LngLat position, Move cameFrom, double hScore, double angle) {
+    Move(LngLat position, Move cameFrom, long key, double gScore, double hScore, byte direction) {
         this.position = position;
         this.cameFrom = cameFrom;
-        this.hScore = hScore;
-        this.angle = angle;
+        this.key = key;
+        this.gScore = gScore;
+        this.fScore = gScore + hScore;
+        this.direction = direction;
     }
 
     /**
@@ -50,22 +60,40 @@ class Move {
         return this.cameFrom;
     }
 
+    /**
+     * Gets the lattice key of this move, two moves with the same key are treated as the same node.
+     *
+     * @return A long lattice key.
+     */
+    long getKey() {
+        return this.key;
+    }
+
+    /**
+     * Gets the G-Score, the cost of the path taken to get to this position.
+     *
+     * @return A double G-Score.
+     */
+    double getGScore() {
+        return this.gScore;
+    }
+
     /**
      * Gets the F-Score to get to this position.
      *
      * @return A double F-Score.
      */
     double getScore() {
-        return this.hScore;
+        return this.fScore;
     }
 
     /**
-     * The angle to get from {@link #cameFrom} to {@link #position}
+     * The direction code to get from {@link #cameFrom} to {@link #position}
      *
-     * @return A double which is an angle.
+     * @return A byte which is a direction code.
      */
-    double getAngle() {
-        return this.angle;
+    byte getDirection() {
+        return this.direction;
     }
 }
 
@@ -74,74 +102,507 @@ class Move {
  * and ensures that it doesn't leave the central region, if it has re-entered it.
  */
 public class PathGenerator {
+    /*
+        The lattice spacing used to quantize positions. A quarter of a move guarantees that the 16 neighbours
+        of any position always land on distinct keys, as adjacent neighbours are 0.39 moves apart.
+     */
+    private static final double LATTICE_SPACING = SystemConstants.DRONE_MOVE_DISTANCE / 4;
+    private static final int MAX_ITERATIONS = 150_000;
+    private static final Histogram SEARCH_ITERATIONS =
+            MetricsRegistry.global().histogram("pizzadronz_path_search_iterations");
+    private static final Counter BIDIRECTIONAL_FALLBACKS =
+            MetricsRegistry.global().counter("pizzadronz_path_search_fallbacks_total", "strategy", "bidirectional");
+    private static final Counter VISIBILITY_GRAPH_FALLBACKS =
+            MetricsRegistry.global().counter("pizzadronz_path_search_fallbacks_total", "strategy", "visibility_graph");
+    // The least a move towards a point gets closer to it, when the point is more than a move away.
+    private static final double MIN_PROGRESS = SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(Math.toRadians(11.25));
+
     private final double[] DIRECTIONS;
     private final LngLatHandler lngLatHandler;
-    private boolean leftCentralRegion;
+    private final SearchStrategy strategy;
+    private SearchStats lastSearchStats;
+
+    // Reused by every expansion, so generating neighbours only creates objects for the legal ones.
+    private final double[] neighbourLngs = new double[16];
+    private final double[] neighbourLats = new double[16];
+    private final ArrayList<Move> neighbours = new ArrayList<>(16);
 
     protected PathGenerator() {
+        this(SearchStrategy.ASTAR);
+    }
+
+    /**
+     * Creates a path generator that searches with the given strategy.
+     *
+     * @param strategy How paths are searched for.
+     */
+    protected PathGenerator(SearchStrategy strategy) {
         DIRECTIONS = new double[]{0.0, 22.5, 45.0, 67.5, 90.0, 112.5, 135.0, 157.5, 180.0, 202.5, 225.0, 247.5, 270.0, 292.5, 315.0, 337.5};
         lngLatHandler = new LngLatHandler();
-        leftCentralRegion = false;
+        lastSearchStats = new SearchStats(0, 0, 0);
+        this.strategy = strategy;
     }
 
+    /**
+     * The open and closed moves of one side of a search. Every move the side reaches is also kept in a grid of
+     * cells a move wide, so the moves of the other side that are close to a position can be found.
+     */
+    private static final class Frontier {
+        // Ties on the F-Score are broken towards the move with the larger G-Score, as it is closer to the end.
+        private final PriorityQueue<Move> openSet = new PriorityQueue<>(Comparator.comparingDouble(Move::getScore)
+                .thenComparing(Comparator.comparingDouble(Move::getGScore).reversed()));
+        private final Map<Long, Move> openMoves = new HashMap<>();   // The best known move for every key in the open set.
+        private final Set<Long> closedSet = new HashSet<>();
+        private final Map<Long, List<Move>> cells = new HashMap<>();
+        private final LngLat anchor;
+
+        /**
+         * Creates one side of a search.
+         *
+         * @param start  The move the side starts from.
+         * @param anchor The position the lattice and grid are anchored at, the same for both sides.
+         */
+        Frontier(Move start, LngLat anchor) {
+            this.anchor = anchor;
+            offer(start);
+        }
+
+        /**
+         * Takes the move with the lowest F-Score off the open set and closes it, skipping moves that were superseded.
+         *
+         * @return The move, or null if the open set is empty.
+         */
+        Move poll() {
+            while (!openSet.isEmpty()) {
+                Move current = openSet.poll();
+                if (openMoves.get(current.getKey()) == current) {
+                    openMoves.remove(current.getKey());
+                    closedSet.add(current.getKey());
+                    return current;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds a move to the open set, unless its key is closed or already has a move that is as cheap.
+         *
+         * @param move The move.
+         * @return True if the move was added, false otherwise.
+         */
+        boolean offer(Move move) {
+            if (closedSet.contains(move.getKey())) {
+                return false;
+            }
+            Move existing = openMoves.get(move.getKey());
+            if (existing != null && existing.getScore() <= move.getScore()) {
+                return false;
+            }
+            openMoves.put(move.getKey(), move);
+            openSet.add(move);
+            cells.computeIfAbsent(cellOf(move.getPosition().lng(), move.getPosition().lat()),
+                    cell -> new ArrayList<>(4)).add(move);
+            return true;
+        }
+
+        /**
+         * Finds a move this side has reached that is close to a position.
+         *
+         * @param position The position.
+         * @return The move, or null if no move close to the position has been reached.
+         */
+        Move closeTo(LngLat position, LngLatHandler lngLatHandler) {
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    List<Move> moves = cells.get(cellOf(position.lng() + dx * SystemConstants.DRONE_MOVE_DISTANCE,
+                            position.lat() + dy * SystemConstants.DRONE_MOVE_DISTANCE));
+                    if (moves == null) {
+                        continue;
+                    }
+                    for (Move move : moves) {
+                        LngLat reached = move.getPosition();
+                        if (lngLatHandler.isCloseTo(position.lng(), position.lat(), reached.lng(), reached.lat())) {
+                            return move;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Gets the grid cell of a position.
+         */
+        private long cellOf(double lng, double lat) {
+            long x = (long) Math.floor((lng - anchor.lng()) / SystemConstants.DRONE_MOVE_DISTANCE);
+            long y = (long) Math.floor((lat - anchor.lat()) / SystemConstants.DRONE_MOVE_DISTANCE);
+            return (x << 32) | (y & 0xFFFFFFFFL);
+        }
+    }
 
     /**
      * Calculates a flight path from a execute position to an end position using
      * the A* pathfinding algorithm. The path avoids no-fly zones and considers
-     * the central region restrictions. The G score has also been dropped as
-     * all moves have the same cost of 1.5e-4.
+     * the central region restrictions. Every move has the same cost of 1.5e-4, positions
+     * are quantized onto a lattice anchored at the start position so that a node
+     * reached twice is only ever expanded once. All the state of a search is local
+     * to the call, so searches never share mutable state.
      *
      * @param startPosition The starting position of the drone.
      * @param endPosition   The target position to reach.
      * @param noFlyZones    An array of regions where flying is not allowed.
      * @param centralRegion The central region where the drone cannot leave once it as re-entered.
-     * @return A list of angles representing the drone's path, or null if no valid path is found.
+     * @return A list of angles representing the drone's path, or an empty list if no valid path is found.
      */
     protected ArrayList<Double> createFlightAngles(LngLat startPosition, LngLat endPosition, NamedRegion[] noFlyZones, NamedRegion centralRegion) {
-        PriorityQueue<Move> openSet = new PriorityQueue<>(Comparator.comparingDouble(Move::getScore));
-        Set<Move> closedSet = new HashSet<>();
+        return createFlightAngles(startPosition, endPosition, RegionIndex.compile(noFlyZones, centralRegion));
+    }
+
+    /**
+     * Calculates a flight path as {@link #createFlightAngles(LngLat, LngLat, NamedRegion[], NamedRegion)} does,
+     * using regions that have already been compiled, so they can be shared between searches.
+     *
+     * @param startPosition The starting position of the drone.
+     * @param endPosition   The target position to reach.
+     * @param regions       The compiled no-fly zones and central region.
+     * @return A list of angles representing the drone's path, or an empty list if no valid path is found.
+     */
+    protected ArrayList<Double> createFlightAngles(LngLat startPosition, LngLat endPosition, RegionIndex regions) {
+        return FlightPlan.anglesOf(createFlightDirections(startPosition, endPosition, regions));
+    }
+
+    /**
+     * Calculates a flight path as {@link #createFlightAngles(LngLat, LngLat, RegionIndex)} does, as the compact
+     * direction codes of a {@link FlightPlan} rather than angles, with the strategy of this generator.
+     *
+     * @param startPosition The starting position of the drone.
+     * @param endPosition   The target position to reach.
+     * @param regions       The compiled no-fly zones and central region.
+     * @return The direction code of each move of the drone's path, or an empty array if no valid path is found.
+     */
+    protected byte[] createFlightDirections(LngLat startPosition, LngLat endPosition, RegionIndex regions) {
+        if (strategy == SearchStrategy.BIDIRECTIONAL) {
+            byte[] path = searchBidirectional(startPosition, endPosition, regions);
+            if (path != null) {
+                return path;
+            }
+            BIDIRECTIONAL_FALLBACKS.increment();
+        } else if (strategy == SearchStrategy.VISIBILITY_GRAPH) {
+            byte[] path = planWithVisibilityGraph(startPosition, endPosition, regions);
+            if (path != null) {
+                return path;
+            }
+            VISIBILITY_GRAPH_FALLBACKS.increment();
+        }
+        return searchForward(startPosition, endPosition, regions);
+    }
+
+    /**
+     * Plans a path by finding the shortest route around the no-fly zones in the visibility graph of the regions,
+     * then flying along it with compass moves, see {@link #snapToMoves}.
+     *
+     * @param startPosition The starting position of the drone.
+     * @param endPosition   The target position to reach.
+     * @param regions       The compiled no-fly zones and central region.
+     * @return The direction code of each move of the drone's path, or null if there is no route or it could not
+     * be flown with legal moves.
+     */
+    private byte[] planWithVisibilityGraph(LngLat startPosition, LngLat endPosition, RegionIndex regions) {
+        lngLatHandler.validatePosition(startPosition);
+        lngLatHandler.validatePosition(endPosition);
+        VisibilityGraph.Route route = regions.getVisibilityGraph().shortestPath(startPosition, endPosition);
+        lastSearchStats = route.stats();
+        return route.waypoints() == null ? null : snapToMoves(startPosition, route.waypoints(), regions);
+    }
 
-        // This also validates execute and end through the LngLatHandler method distanceTo.
-        double startingHScore = hScore(startPosition, endPosition);
-        int maxIterations = 150_000;
+    /**
+     * Flies along a route with compass moves. Each move is the legal move that gets closest to the next waypoint,
+     * and once the drone is within a move of a waypoint it heads for the one after, until it is close to the last.
+     * The moves follow the straight line to the waypoint to within a move, so they keep clear of the no-fly zones
+     * the route goes around, but nothing guarantees it, so snapping fails rather than flying a detour.
+     *
+     * @param startPosition The starting position of the drone.
+     * @param waypoints     The points the route turns at, ending with the end position.
+     * @param regions       The compiled no-fly zones and central region.
+     * @return The direction code of each move, or null if no legal move got closer to a waypoint, or the moves
+     * took longer than the route should.
+     */
+    private byte[] snapToMoves(LngLat startPosition, List<LngLat> waypoints, RegionIndex regions) {
+        LngLat endPosition = waypoints.get(waypoints.size() - 1);
+        double routeLength = 0;
+        LngLat previous = startPosition;
+        for (LngLat waypoint : waypoints) {
+            routeLength += hScore(previous, waypoint);
+            previous = waypoint;
+        }
+        byte[] path = new byte[(int) Math.ceil(routeLength / MIN_PROGRESS) + 2 * waypoints.size() + 2];
+
+        int moves = 0;
+        int target = 0;
+        LngLat position = startPosition;
+        boolean leftCentralRegion = false;
+        while (!lngLatHandler.isCloseTo(position.lng(), position.lat(), endPosition.lng(), endPosition.lat())) {
+            LngLat waypoint = waypoints.get(target);
+            double distance = hScore(position, waypoint);
+            if (target < waypoints.size() - 1 && distance < SystemConstants.DRONE_MOVE_DISTANCE) {
+                target++;
+                continue;
+            }
+            if (moves == path.length) {
+                return null;
+            }
+
+            leftCentralRegion = hasDroneLeftCentral(leftCentralRegion, regions, position);
+            boolean currentlyInCentral = regions.isInCentralRegion(position.lng(), position.lat());
+            int bestDirection = -1;
+            lngLatHandler.compassNeighbours(position.lng(), position.lat(), neighbourLngs, neighbourLats);
+            for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+                double nextDistance = lngLatHandler.distanceTo(neighbourLngs[direction], neighbourLats[direction],
+                        waypoint.lng(), waypoint.lat());
+                if (nextDistance < distance && legalMove(position.lng(), position.lat(), currentlyInCentral,
+                        neighbourLngs[direction], neighbourLats[direction], regions, leftCentralRegion)) {
+                    distance = nextDistance;
+                    bestDirection = direction;
+                }
+            }
+            if (bestDirection < 0) {
+                return null;
+            }
+            path[moves++] = (byte) bestDirection;
+            position = new LngLat(neighbourLngs[bestDirection], neighbourLats[bestDirection]);
+        }
+        return Arrays.copyOf(path, moves);
+    }
+
+    /**
+     * Searches for a path with A* from the start position towards the end position. The nodes, open set and closed
+     * set are kept in the thread's {@link SearchContext}, which is reused by every search on the thread.
+     *
+     * @param startPosition The starting position of the drone.
+     * @param endPosition   The target position to reach.
+     * @param regions       The compiled no-fly zones and central region.
+     * @return The direction code of each move of the drone's path, or an empty array if no valid path is found.
+     */
+    private byte[] searchForward(LngLat startPosition, LngLat endPosition, RegionIndex regions) {
+        SearchContext context = SearchContext.current();
+        context.reset();
+
+        // Only the start and end are validated, later positions are always valid.
+        lngLatHandler.validatePosition(startPosition);
+        lngLatHandler.validatePosition(endPosition);
+        double endLng = endPosition.lng();
+        double endLat = endPosition.lat();
         int noIterations = 0;
+        int nodesExpanded = 0;
+        int nodesGenerated = 1;
+        int openNodes = 1;      // The keys with an open node, stale nodes left in the heap aren't counted.
+        int peakOpenSetSize = 1;
 
-        Move start = new Move(startPosition, null, startingHScore, 0);
-        leftCentralRegion = false;
+        int start = context.addNode(startPosition.lng(), startPosition.lat(), latticeKey(startPosition, startPosition),
+                -1, FlightPlan.HOVER, 0, hScore(startPosition, endPosition));
+        boolean leftCentralRegion = false;
 
-        openSet.add(start);
+        context.push(start);
+        context.setState(context.key(start), start);
         /*
             While the open set is empty and the program has not iterated less than 150k iterations. The drone would've
             moved just about 50 degrees of distance, roughly the distance between appleton and the equator. Therefore,
             if the drone cannot find a path after 150k moves, it is likely that there is no path, so we quit the algorithm.
          */
-        while (!openSet.isEmpty() && noIterations <= maxIterations) {
-            Move current = openSet.poll();  // Gets the move that is "closest" to the end position.
-            canDroneLeaveCentral(centralRegion, current.getPosition());
+        try {
+            while (!context.isHeapEmpty() && noIterations <= MAX_ITERATIONS) {
+                int current = context.pop();    // Gets the node that is "closest" to the end position.
+
+                // Skip nodes that were superseded by a cheaper node with the same key after being queued.
+                long key = context.key(current);
+                if (context.state(key) != current) {
+                    continue;
+                }
+                openNodes--;
+                double lng = context.lng(current);
+                double lat = context.lat(current);
+                leftCentralRegion = leftCentralRegion || !regions.isInCentralRegion(lng, lat);
+
+                // If current location is close to the end position, reconstruct and return the path.
+                if (lngLatHandler.isCloseTo(lng, lat, endLng, endLat)) {
+                    return context.pathTo(current);
+                }
 
-            // If current location is close to the end position, reconstruct and return the path.
-            if (lngLatHandler.isCloseTo(current.getPosition(), endPosition)) {
-                return reconstructPath(current);
+                // Close the current key to avoid checking it again.
+                context.setState(key, SearchContext.CLOSED);
+                nodesExpanded++;
+
+                double gScore = context.gScore(current) + SystemConstants.DRONE_MOVE_DISTANCE;
+                boolean currentlyInCentral = regions.isInCentralRegion(lng, lat);
+                lngLatHandler.compassNeighbours(lng, lat, neighbourLngs, neighbourLats);
+                for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+                    double nextLng = neighbourLngs[direction];
+                    double nextLat = neighbourLats[direction];
+                    if (!legalMove(lng, lat, currentlyInCentral, nextLng, nextLat, regions, leftCentralRegion)) {
+                        continue;
+                    }
+
+                    // Skip if this neighbour has already been evaluated.
+                    long nextKey = latticeKey(nextLng, nextLat, startPosition);
+                    int state = context.state(nextKey);
+                    if (state == SearchContext.CLOSED) {
+                        continue;
+                    }
+                    nodesGenerated++;
+
+                    // Decrease key, only keep the neighbour if it is the cheapest way found to its key so far.
+                    double fScore = gScore + lngLatHandler.distanceTo(nextLng, nextLat, endLng, endLat);
+                    if (state >= 0 && context.fScore(state) <= fScore) {
+                        continue;
+                    }
+                    if (state == SearchContext.ABSENT) {
+                        openNodes++;
+                    }
+
+                    // Add neighbour to open set for next loop.
+                    int neighbour = context.addNode(nextLng, nextLat, nextKey, current, (byte) direction, gScore, fScore);
+                    context.setState(nextKey, neighbour);
+                    context.push(neighbour);
+                }
+                peakOpenSetSize = Math.max(peakOpenSetSize, openNodes);
+                noIterations++;
             }
+        } finally {
+            lastSearchStats = new SearchStats(nodesExpanded, nodesGenerated, peakOpenSetSize);
+            SEARCH_ITERATIONS.record(noIterations);
+        }
 
-            // Add current location to closed set to avoid checking it.
-            closedSet.add(current);
+        // Return an empty path if no path is found.
+        return new byte[0];
+    }
 
-            ArrayList<Move> neighbours = getNeighbours(current, endPosition, noFlyZones, centralRegion);
-            for (Move neighbour : neighbours) {
-                // Skip if this neighbour has already been evaluated.
-                if (closedSet.contains(neighbour)) {
-                    continue;
+    /**
+     * Searches for a path from both ends at once, a forward search from the start position towards the end
+     * position and a backward search from the end position towards the start position, as moves can be reversed.
+     * The sides meet once one reaches a position close to a position the other has reached, and the path is the
+     * forward path to the one followed by the reversed backward path from the other. As the two positions aren't
+     * the same, and the backward side doesn't know when the drone has left the central region, the joined path is
+     * flown to check it is legal and ends close to the end position.
+     *
+     * @param startPosition The starting position of the drone.
+     * @param endPosition   The target position to reach.
+     * @param regions       The compiled no-fly zones and central region.
+     * @return The direction code of each move of the drone's path, or null if no legal path was found.
+     */
+    private byte[] searchBidirectional(LngLat startPosition, LngLat endPosition, RegionIndex regions) {
+        lngLatHandler.validatePosition(startPosition);
+        lngLatHandler.validatePosition(endPosition);
+        Frontier forward = new Frontier(new Move(startPosition, null, latticeKey(startPosition, startPosition), 0,
+                hScore(startPosition, endPosition), FlightPlan.HOVER), startPosition);
+        Frontier backward = new Frontier(new Move(endPosition, null, latticeKey(endPosition, startPosition), 0,
+                hScore(endPosition, startPosition), FlightPlan.HOVER), startPosition);
+        int noIterations = 0;
+        int nodesGenerated = 2;
+        int peakOpenSetSize = 2;
+        boolean leftCentralRegion = false;
+
+        try {
+            while (noIterations <= MAX_ITERATIONS) {
+                // The sides take turns, so a side stuck behind a no-fly zone doesn't hold up the other.
+                boolean forwards = forward.closedSet.size() <= backward.closedSet.size();
+                Frontier side = forwards ? forward : backward;
+                Frontier other = forwards ? backward : forward;
+                Move current = side.poll();
+                if (current == null) {
+                    return null;
+                }
+                noIterations++;
+
+                LngLat currentPosition = current.getPosition();
+                if (forwards) {
+                    leftCentralRegion = hasDroneLeftCentral(leftCentralRegion, regions, currentPosition);
+                    if (lngLatHandler.isCloseTo(currentPosition.lng(), currentPosition.lat(), endPosition.lng(), endPosition.lat())) {
+                        return reconstructPath(current);
+                    }
                 }
 
-                // Add neighbour to open set for next loop.
-                openSet.add(neighbour);
+                // The backward side checks the same moves in reverse, without the central region rule.
+                ArrayList<Move> neighbours = forwards
+                        ? getNeighbours(current, startPosition, endPosition, regions, leftCentralRegion)
+                        : getNeighbours(current, startPosition, startPosition, regions, false);
+                for (Move neighbour : neighbours) {
+                    if (!side.offer(neighbour)) {
+                        continue;
+                    }
+                    nodesGenerated++;
+
+                    Move met = other.closeTo(neighbour.getPosition(), lngLatHandler);
+                    if (met != null) {
+                        byte[] path = forwards ? join(neighbour, met) : join(met, neighbour);
+                        if (isLegalPath(path, startPosition, endPosition, regions)) {
+                            return path;
+                        }
+                    }
+                }
+                peakOpenSetSize = Math.max(peakOpenSetSize, forward.openMoves.size() + backward.openMoves.size());
             }
-            noIterations++;
+        } finally {
+            lastSearchStats = new SearchStats(forward.closedSet.size() + backward.closedSet.size(),
+                    nodesGenerated, peakOpenSetSize);
+            SEARCH_ITERATIONS.record(noIterations);
         }
+        return null;
+    }
 
-        // Return an empty path if no path is found.
-        return new ArrayList<>();
+    /**
+     * Joins the two sides of a bidirectional search where they meet.
+     *
+     * @param forward  The move of the forward side, from the start position.
+     * @param backward The move of the backward side close to it, from the end position.
+     * @return The direction codes of the forward path, followed by the backward path reversed.
+     */
+    private byte[] join(Move forward, Move backward) {
+        byte[] outbound = reconstructPath(forward);
+        int length = outbound.length;
+        for (Move move = backward; move.getCameFrom() != null; move = move.getCameFrom()) {
+            length++;
+        }
+
+        // Walking up the backward side goes from the meeting point towards the end, each move flown the other way.
+        byte[] path = Arrays.copyOf(outbound, length);
+        int i = outbound.length;
+        for (Move move = backward; move.getCameFrom() != null; move = move.getCameFrom()) {
+            path[i++] = (byte) ((move.getDirection() + DIRECTIONS.length / 2) % DIRECTIONS.length);
+        }
+        return path;
+    }
+
+    /**
+     * Flies a path to check that every move of it is legal, and that it ends close to the end position.
+     *
+     * @param path          The direction code of each move.
+     * @param startPosition The starting position of the drone.
+     * @param endPosition   The target position to reach.
+     * @param regions       The compiled no-fly zones and central region.
+     * @return true if the path is legal, false otherwise.
+     */
+    private boolean isLegalPath(byte[] path, LngLat startPosition, LngLat endPosition, RegionIndex regions) {
+        LngLat position = startPosition;
+        boolean leftCentralRegion = false;
+        for (byte direction : path) {
+            leftCentralRegion = hasDroneLeftCentral(leftCentralRegion, regions, position);
+            LngLat next = lngLatHandler.nextPosition(position, DIRECTIONS[direction]);
+            if (!legalMove(position.lng(), position.lat(), regions.isInCentralRegion(position.lng(), position.lat()),
+                    next.lng(), next.lat(), regions, leftCentralRegion)) {
+                return false;
+            }
+            position = next;
+        }
+        return lngLatHandler.isCloseTo(position.lng(), position.lat(), endPosition.lng(), endPosition.lat());
+    }
+
+    /**
+     * Gets the statistics of the last search made by {@link #createFlightAngles}.
+     *
+     * @return The statistics of the last search.
+     */
+    public SearchStats getLastSearchStats() {
+        return lastSearchStats;
     }
 
 
@@ -153,7 +614,33 @@ public class PathGenerator {
      * @return The heuristic score based on the distance.
      */
     private double hScore(LngLat position, LngLat endPosition) {
-        return lngLatHandler.distanceTo(position, endPosition);
+        return lngLatHandler.distanceTo(position.lng(), position.lat(), endPosition.lng(), endPosition.lat());
+    }
+
+    /**
+     * Quantizes a position onto the lattice anchored at the start position, and packs the two
+     * lattice coordinates into a single long so that it can be used as a primitive key.
+     *
+     * @param position      The position to quantize.
+     * @param startPosition The position the lattice is anchored at.
+     * @return The lattice key of the position.
+     */
+    private static long latticeKey(LngLat position, LngLat startPosition) {
+        return latticeKey(position.lng(), position.lat(), startPosition);
+    }
+
+    /**
+     * Quantizes a position onto the lattice as {@link #latticeKey(LngLat, LngLat)} does.
+     *
+     * @param lng           The longitude of the position to quantize.
+     * @param lat           The latitude of the position to quantize.
+     * @param startPosition The position the lattice is anchored at.
+     * @return The lattice key of the position.
+     */
+    private static long latticeKey(double lng, double lat, LngLat startPosition) {
+        long x = Math.round((lng - startPosition.lng()) / LATTICE_SPACING);
+        long y = Math.round((lat - startPosition.lat()) / LATTICE_SPACING);
+        return (x << 32) | (y & 0xFFFFFFFFL);
     }
 
 
@@ -162,91 +649,110 @@ public class PathGenerator {
      * no-fly zones, and central region rules. Disregard neighbours that are not legal moves, defined
      * in {@link #legalMove}.
      *
-     * @param position      The current move.
-     * @param endPosition   The target end move.
-     * @param noFlyZones    An array of no-fly zones to avoid.
-     * @param centralRegion The central region.
-     * @return A list of possible neighboring moves.
+     * @param position          The current move.
+     * @param startPosition     The start position the lattice is anchored at.
+     * @param endPosition       The target end move.
+     * @param regions           The compiled no-fly zones and central region.
+     * @param leftCentralRegion Whether the drone has left the central region during this search.
+     * @return A list of possible neighboring moves, which is reused by the next call.
      */
-    private ArrayList<Move> getNeighbours(Move position, LngLat endPosition, NamedRegion[] noFlyZones, NamedRegion centralRegion) {
-        ArrayList<Move> neighbours = new ArrayList<>();
-
-        // Get a neighbour for all directions
-        for (double direction : DIRECTIONS) {
-            LngLat currentPosition = position.getPosition();
-            LngLat potentialNextPosition = lngLatHandler.nextPosition(currentPosition, direction);
+    private ArrayList<Move> getNeighbours(Move position, LngLat startPosition, LngLat endPosition, RegionIndex regions,
+                                          boolean leftCentralRegion) {
+        neighbours.clear();
+        double gScore = position.getGScore() + SystemConstants.DRONE_MOVE_DISTANCE;
+        LngLat currentPosition = position.getPosition();
+        double lng = currentPosition.lng();
+        double lat = currentPosition.lat();
+        boolean currentlyInCentral = regions.isInCentralRegion(lng, lat);
+
+        // Get a neighbour for all directions, the index of each direction is its direction code.
+        lngLatHandler.compassNeighbours(lng, lat, neighbourLngs, neighbourLats);
+        for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+            double nextLng = neighbourLngs[direction];
+            double nextLat = neighbourLats[direction];
 
             // Don't add the neighbour if it is not a legal move.
-            if (!legalMove(currentPosition, potentialNextPosition, noFlyZones, centralRegion)) {
+            if (!legalMove(lng, lat, currentlyInCentral, nextLng, nextLat, regions, leftCentralRegion)) {
                 continue;
             }
 
-            double hScore = hScore(potentialNextPosition, endPosition);
+            double hScore = lngLatHandler.distanceTo(nextLng, nextLat, endPosition.lng(), endPosition.lat());
+            long key = latticeKey(nextLng, nextLat, startPosition);
 
-            neighbours.add(new Move(potentialNextPosition, position, hScore, direction));
+            neighbours.add(new Move(new LngLat(nextLng, nextLat), position, key, gScore, hScore, (byte) direction));
         }
         return neighbours;
     }
 
     /**
      * Determines whether a move from the current position to a potential position is legal,
-     * considering no-fly zones and central region rules.
+     * considering no-fly zones and central region rules. A move is not legal if it ends in a no-fly zone,
+     * or if its straight line clips the corner of one on the way.
      *
-     * @param currentPosition   The current position of the drone.
-     * @param potentialPosition The potential next position of the drone.
-     * @param noFlyZones        An array of no-fly zones.
-     * @param centralRegion     The central region.
+     * @param currentLng         The longitude of the current position of the drone.
+     * @param currentLat         The latitude of the current position of the drone.
+     * @param currentlyInCentral Whether the current position of the drone is in the central region.
+     * @param potentialLng       The longitude of the potential next position of the drone.
+     * @param potentialLat       The latitude of the potential next position of the drone.
+     * @param regions            The compiled no-fly zones and central region.
+     * @param leftCentralRegion  Whether the drone has left the central region during this search.
      * @return true if the move is legal, false otherwise.
      */
-    private boolean legalMove(LngLat currentPosition, LngLat potentialPosition, NamedRegion[] noFlyZones, NamedRegion centralRegion) {
+    private boolean legalMove(double currentLng, double currentLat, boolean currentlyInCentral, double potentialLng,
+                              double potentialLat, RegionIndex regions, boolean leftCentralRegion) {
 
-        // Check if the move may be in a no-fly zone.
-        for (NamedRegion noFlyZone : noFlyZones) {
-            if (lngLatHandler.isInRegion(potentialPosition, noFlyZone)) {
+        // A move the occupancy bitmap knows is clear of the no-fly zones needn't be checked against them.
+        if (!regions.isKnownClear(currentLng, currentLat, potentialLng, potentialLat)) {
+            // Check if the move may be in a no-fly zone.
+            if (regions.isInNoFlyZone(potentialLng, potentialLat)) {
+                return false;
+            }
+
+            // Check if the move crosses a no-fly zone between the two positions.
+            if (regions.crossesNoFlyZone(currentLng, currentLat, potentialLng, potentialLat)) {
                 return false;
             }
         }
         /*
             Return false if the move is currently in central,
             will not be in central, and has already left the central zone,
-            true otherwise.
+            true otherwise. Where the move ends only matters if both of the others hold.
          */
-        boolean currentlyInCentral = lngLatHandler.isInRegion(currentPosition, centralRegion);
-        boolean potentiallyInCentral = lngLatHandler.isInRegion(potentialPosition, centralRegion);
-        return !currentlyInCentral || potentiallyInCentral || !leftCentralRegion;
+        return !currentlyInCentral || !leftCentralRegion || regions.isInCentralRegion(potentialLng, potentialLat);
     }
 
     /**
-     * Creates the angle path by recursively going up the Move came from variable until it hits
+     * Creates the path by going up the Move came from variable until it hits
      * the null at the starting move.
      *
      * @param current The end position move from which to execute reconstructing the path.
-     * @return A list of angles representing the reconstructed path.
+     * @return The direction code of each move of the reconstructed path.
      */
-    private ArrayList<Double> reconstructPath(Move current) {
-        ArrayList<Double> path = new ArrayList<>();
+    private byte[] reconstructPath(Move current) {
+        int length = 0;
+        for (Move move = current; move.getCameFrom() != null; move = move.getCameFrom()) {
+            length++;
+        }
 
-        // Add the angle of the current Move until it reaches the starting move which was defined as null.
-        while (current.getCameFrom() != null) {
-            path.add(current.getAngle());
+        // Fill the path from the back, as the loop starts from the end position.
+        byte[] path = new byte[length];
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = current.getDirection();
             current = current.getCameFrom();
         }
-        // Reverse the path as the loop starts from the end position.
-        Collections.reverse(path);
         return path;
     }
 
     /**
-     * Updates the leftCentralRegion variable if the drone leaves the central region.
-     * Once it leaves it never updates it again.
+     * Checks if the drone has left the central region, once it has left it stays left.
      *
-     * @param centralRegion The central region.
-     * @param dronePosition The current position of the drone.
+     * @param leftCentralRegion Whether the drone had already left the central region.
+     * @param regions           The compiled no-fly zones and central region.
+     * @param dronePosition     The current position of the drone.
+     * @return true if the drone has now left the central region, false otherwise.
      */
-    private void canDroneLeaveCentral(NamedRegion centralRegion, LngLat dronePosition) {
+    private boolean hasDroneLeftCentral(boolean leftCentralRegion, RegionIndex regions, LngLat dronePosition) {
         // No need to check if the drone has left central.
-        if (!leftCentralRegion && !lngLatHandler.isInRegion(dronePosition, centralRegion)) {
-            leftCentralRegion = true;
-        }
+        return leftCentralRegion || !regions.isInCentralRegion(dronePosition.lng(), dronePosition.lat());
     }
 }
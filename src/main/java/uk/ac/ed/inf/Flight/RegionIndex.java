@@ -0,0 +1,386 @@
+package uk.ac.ed.inf.Flight;
+
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The no-fly zones and central region compiled once per run for the path search. Each region is compiled into
+ * primitive arrays with a cached bounding box, and a uniform grid over the no-fly zones lists which zones can
+ * contain a point, and which zone sides a move can cross, in each cell. Most points and moves are either outside
+ * the grid or in a cell with no zones, so most checks finish after a couple of comparisons. An
+ * {@link OccupancyBitmap} of the area the drone flies in can be precomputed, which answers most checks before
+ * the regions are looked at.
+ */
+public class RegionIndex {
+    private static final int GRID_SIZE = 16;    // The number of cells along each side of the grid.
+    private static final int[] NO_ZONES = new int[0];
+
+    private final NamedRegion[] sourceNoFlyZones;
+    private final NamedRegion sourceCentralRegion;
+    private final long fingerprint;
+
+    private final CompiledRegion[] noFlyZones;
+    private final CompiledRegion centralRegion;
+
+    private final double gridMinLng;
+    private final double gridMinLat;
+    private final double gridMaxLng;
+    private final double gridMaxLat;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int[][] cells;    // The indices of the no-fly zones that overlap each cell.
+
+    // The sides of every no-fly zone, side i goes from (sideLng1[i], sideLat1[i]) to (sideLng2[i], sideLat2[i]).
+    private final double[] sideLng1;
+    private final double[] sideLat1;
+    private final double[] sideLng2;
+    private final double[] sideLat2;
+    private final int[][] sideCells;    // The indices of the sides that overlap each cell.
+
+    private volatile VisibilityGraph visibilityGraph;   // Built the first time it is needed.
+    private volatile OccupancyBitmap occupancy;         // Null until precomputed.
+
+    /**
+     * Compiles the regions into an index.
+     *
+     * @param noFlyZones    An array of regions where flying is not allowed.
+     * @param centralRegion The central region.
+     */
+    private RegionIndex(NamedRegion[] noFlyZones, NamedRegion centralRegion) {
+        this.sourceNoFlyZones = noFlyZones;
+        this.sourceCentralRegion = centralRegion;
+        this.fingerprint = FlightPathCache.fingerprint(noFlyZones, centralRegion);
+        this.centralRegion = new CompiledRegion(centralRegion);
+        this.noFlyZones = new CompiledRegion[noFlyZones.length];
+
+        double minLng = Double.POSITIVE_INFINITY, minLat = Double.POSITIVE_INFINITY;
+        double maxLng = Double.NEGATIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < noFlyZones.length; i++) {
+            CompiledRegion zone = new CompiledRegion(noFlyZones[i]);
+            this.noFlyZones[i] = zone;
+            minLng = Math.min(minLng, zone.minLng);
+            minLat = Math.min(minLat, zone.minLat);
+            maxLng = Math.max(maxLng, zone.maxLng);
+            maxLat = Math.max(maxLat, zone.maxLat);
+        }
+        gridMinLng = minLng;
+        gridMinLat = minLat;
+        gridMaxLng = maxLng;
+        gridMaxLat = maxLat;
+        cellWidth = (maxLng - minLng) / GRID_SIZE;
+        cellHeight = (maxLat - minLat) / GRID_SIZE;
+
+        // Lists each zone in every cell its bounding box overlaps.
+        List<List<Integer>> cellZones = new ArrayList<>();
+        for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
+            cellZones.add(new ArrayList<>());
+        }
+        for (int i = 0; i < this.noFlyZones.length; i++) {
+            CompiledRegion zone = this.noFlyZones[i];
+            for (int column = column(zone.minLng); column <= column(zone.maxLng); column++) {
+                for (int row = row(zone.minLat); row <= row(zone.maxLat); row++) {
+                    cellZones.get(row * GRID_SIZE + column).add(i);
+                }
+            }
+        }
+        cells = toCellArrays(cellZones);
+
+        // Flattens the sides of every zone, and lists each side in every cell its bounding box overlaps.
+        int sides = 0;
+        for (CompiledRegion zone : this.noFlyZones) {
+            sides += zone.lngs.length;
+        }
+        sideLng1 = new double[sides];
+        sideLat1 = new double[sides];
+        sideLng2 = new double[sides];
+        sideLat2 = new double[sides];
+        List<List<Integer>> cellSides = new ArrayList<>();
+        for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
+            cellSides.add(new ArrayList<>());
+        }
+
+        int side = 0;
+        for (CompiledRegion zone : this.noFlyZones) {
+            int j = zone.lngs.length - 1;
+            for (int i = 0; i < zone.lngs.length; i++) {
+                sideLng1[side] = zone.lngs[j];
+                sideLat1[side] = zone.lats[j];
+                sideLng2[side] = zone.lngs[i];
+                sideLat2[side] = zone.lats[i];
+
+                int lastColumn = column(Math.max(zone.lngs[i], zone.lngs[j]));
+                int lastRow = row(Math.max(zone.lats[i], zone.lats[j]));
+                for (int column = column(Math.min(zone.lngs[i], zone.lngs[j])); column <= lastColumn; column++) {
+                    for (int row = row(Math.min(zone.lats[i], zone.lats[j])); row <= lastRow; row++) {
+                        cellSides.get(row * GRID_SIZE + column).add(side);
+                    }
+                }
+                side++;
+                j = i;
+            }
+        }
+        sideCells = toCellArrays(cellSides);
+    }
+
+    /**
+     * Converts the lists of indices in each cell into primitive arrays.
+     *
+     * @param cellIndices The list of indices in each cell.
+     * @return The array of indices in each cell.
+     */
+    private static int[][] toCellArrays(List<List<Integer>> cellIndices) {
+        int[][] cellArrays = new int[cellIndices.size()][];
+        for (int i = 0; i < cellArrays.length; i++) {
+            List<Integer> indices = cellIndices.get(i);
+            cellArrays[i] = indices.isEmpty() ? NO_ZONES : indices.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return cellArrays;
+    }
+
+    /**
+     * Compiles the no-fly zones and central region into an index.
+     *
+     * @param noFlyZones    An array of regions where flying is not allowed.
+     * @param centralRegion The central region.
+     * @return The compiled index.
+     */
+    public static RegionIndex compile(NamedRegion[] noFlyZones, NamedRegion centralRegion) {
+        return new RegionIndex(noFlyZones, centralRegion);
+    }
+
+    /**
+     * Checks if this index was compiled from exactly these regions, so it can be reused rather than compiled again.
+     *
+     * @param noFlyZones    An array of regions where flying is not allowed.
+     * @param centralRegion The central region.
+     * @return True if the index was compiled from the same region objects, false otherwise.
+     */
+    public boolean isCompiledFrom(NamedRegion[] noFlyZones, NamedRegion centralRegion) {
+        return sourceNoFlyZones == noFlyZones && sourceCentralRegion == centralRegion;
+    }
+
+    /**
+     * Gets the fingerprint of the regions, see {@link FlightPathCache#fingerprint}.
+     *
+     * @return The 64-bit fingerprint of the regions.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Gets the visibility graph of the regions, which is only built the first time it is needed,
+     * see {@link VisibilityGraph}.
+     *
+     * @return The visibility graph.
+     */
+    VisibilityGraph getVisibilityGraph() {
+        VisibilityGraph graph = visibilityGraph;
+        if (graph == null) {
+            graph = new VisibilityGraph(this, sourceNoFlyZones, sourceCentralRegion);
+            visibilityGraph = graph;
+        }
+        return graph;
+    }
+
+    /**
+     * Precomputes the occupancy bitmap of the regions over an area, see {@link OccupancyBitmap}, loading it from
+     * the directory if it was saved there with the same regions and area. The bitmap gives the same answers as the
+     * regions, so checks made while it is being attached from another thread are still correct.
+     *
+     * @param directory The directory the bitmaps are kept in.
+     * @param minLng    The longitude of the west edge of the area.
+     * @param minLat    The latitude of the south edge of the area.
+     * @param maxLng    The longitude of the east edge of the area.
+     * @param maxLat    The latitude of the north edge of the area.
+     */
+    public void precomputeOccupancy(File directory, double minLng, double minLat, double maxLng, double maxLat) {
+        OccupancyBitmap bitmap = occupancy;
+        if (bitmap == null || !bitmap.covers(fingerprint, minLng, minLat, maxLng, maxLat)) {
+            occupancy = OccupancyBitmap.load(directory, fingerprint, sourceNoFlyZones, sourceCentralRegion,
+                    minLng, minLat, maxLng, maxLat);
+        }
+    }
+
+    /**
+     * Gets the occupancy bitmap of the regions.
+     *
+     * @return The bitmap, or null if it hasn't been precomputed.
+     */
+    OccupancyBitmap getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Checks if a move is known to be clear of the no-fly zones, so it neither ends in one nor crosses one, without
+     * looking at the zones. It is if it doesn't overlap the grid, or only overlaps cells the occupancy bitmap knows
+     * are clear.
+     *
+     * @param lng1 The longitude the move starts at.
+     * @param lat1 The latitude the move starts at.
+     * @param lng2 The longitude the move ends at.
+     * @param lat2 The latitude the move ends at.
+     * @return True if the move is known to be clear, false if it has to be checked against the zones.
+     */
+    public boolean isKnownClear(double lng1, double lat1, double lng2, double lat2) {
+        double minLng = Math.min(lng1, lng2);
+        double maxLng = Math.max(lng1, lng2);
+        double minLat = Math.min(lat1, lat2);
+        double maxLat = Math.max(lat1, lat2);
+        if (maxLng < gridMinLng || minLng > gridMaxLng || maxLat < gridMinLat || minLat > gridMaxLat) {
+            return true;
+        }
+        OccupancyBitmap bitmap = occupancy;
+        return bitmap != null && bitmap.isClear(minLng, minLat, maxLng, maxLat);
+    }
+
+    /**
+     * Checks if a point is in any of the no-fly zones.
+     *
+     * @param lng The longitude of the point.
+     * @param lat The latitude of the point.
+     * @return True if the point is in a no-fly zone, false otherwise.
+     */
+    public boolean isInNoFlyZone(double lng, double lat) {
+        // Points outside the grid are outside every zone.
+        if (!(lng >= gridMinLng && lng <= gridMaxLng && lat >= gridMinLat && lat <= gridMaxLat)) {
+            return false;
+        }
+
+        for (int zone : cells[row(lat) * GRID_SIZE + column(lng)]) {
+            if (noFlyZones[zone].contains(lng, lat)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the straight line of a move crosses or touches a side of any no-fly zone, so that a move
+     * between two points outside the no-fly zones cannot clip the corner of one.
+     *
+     * @param lng1 The longitude the move starts at.
+     * @param lat1 The latitude the move starts at.
+     * @param lng2 The longitude the move ends at.
+     * @param lat2 The latitude the move ends at.
+     * @return True if the move crosses a no-fly zone, false otherwise.
+     */
+    public boolean crossesNoFlyZone(double lng1, double lat1, double lng2, double lat2) {
+        double minLng = Math.min(lng1, lng2);
+        double maxLng = Math.max(lng1, lng2);
+        double minLat = Math.min(lat1, lat2);
+        double maxLat = Math.max(lat1, lat2);
+
+        // Moves that don't overlap the grid cannot cross any zone.
+        if (maxLng < gridMinLng || minLng > gridMaxLng || maxLat < gridMinLat || minLat > gridMaxLat) {
+            return false;
+        }
+
+        int lastColumn = column(maxLng);
+        int lastRow = row(maxLat);
+        for (int column = column(minLng); column <= lastColumn; column++) {
+            for (int row = row(minLat); row <= lastRow; row++) {
+                for (int side : sideCells[row * GRID_SIZE + column]) {
+                    // Rejects sides whose bounding box doesn't overlap the move before the exact test.
+                    if (Math.max(sideLng1[side], sideLng2[side]) < minLng || Math.min(sideLng1[side], sideLng2[side]) > maxLng
+                            || Math.max(sideLat1[side], sideLat2[side]) < minLat || Math.min(sideLat1[side], sideLat2[side]) > maxLat) {
+                        continue;
+                    }
+                    if (segmentsIntersect(lng1, lat1, lng2, lat2,
+                            sideLng1[side], sideLat1[side], sideLng2[side], sideLat2[side])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if two line segments, whose bounding boxes overlap, intersect or touch.
+     *
+     * @return True if segment (a1, a2) intersects segment (b1, b2), false otherwise.
+     */
+    private static boolean segmentsIntersect(double aLng1, double aLat1, double aLng2, double aLat2,
+                                             double bLng1, double bLat1, double bLng2, double bLat2) {
+        // Which side of each segment the ends of the other segment are on.
+        double b1SideOfA = orientation(aLng1, aLat1, aLng2, aLat2, bLng1, bLat1);
+        double b2SideOfA = orientation(aLng1, aLat1, aLng2, aLat2, bLng2, bLat2);
+        double a1SideOfB = orientation(bLng1, bLat1, bLng2, bLat2, aLng1, aLat1);
+        double a2SideOfB = orientation(bLng1, bLat1, bLng2, bLat2, aLng2, aLat2);
+
+        // The segments cross if the ends of each are on opposite sides of the other.
+        if (b1SideOfA * b2SideOfA < 0 && a1SideOfB * a2SideOfB < 0) {
+            return true;
+        }
+        // Otherwise they only touch if an end of one segment lies on the other.
+        return collinearEndTouches(aLng1, aLat1, aLng2, aLat2, bLng1, bLat1, b1SideOfA)
+                || collinearEndTouches(aLng1, aLat1, aLng2, aLat2, bLng2, bLat2, b2SideOfA)
+                || collinearEndTouches(bLng1, bLat1, bLng2, bLat2, aLng1, aLat1, a1SideOfB)
+                || collinearEndTouches(bLng1, bLat1, bLng2, bLat2, aLng2, aLat2, a2SideOfB);
+    }
+
+    /**
+     * Checks if the end of one segment touches another segment, given which side of the segment it is on.
+     *
+     * @return True if the end is collinear with and within the segment (lng1, lat1) to (lng2, lat2).
+     */
+    private static boolean collinearEndTouches(double lng1, double lat1, double lng2, double lat2,
+                                               double endLng, double endLat, double side) {
+        return side == 0
+                && endLng >= Math.min(lng1, lng2) && endLng <= Math.max(lng1, lng2)
+                && endLat >= Math.min(lat1, lat2) && endLat <= Math.max(lat1, lat2);
+    }
+
+    /**
+     * Calculates which side of the line through (lng1, lat1) and (lng2, lat2) a point is on.
+     *
+     * @return Positive if the point is to the left of the line, negative if it is to the right, zero if it is on it.
+     */
+    private static double orientation(double lng1, double lat1, double lng2, double lat2, double lng, double lat) {
+        return (lng2 - lng1) * (lat - lat1) - (lat2 - lat1) * (lng - lng1);
+    }
+
+    /**
+     * Checks if a point is in the central region.
+     *
+     * @param lng The longitude of the point.
+     * @param lat The latitude of the point.
+     * @return True if the point is in the central region, false otherwise.
+     */
+    public boolean isInCentralRegion(double lng, double lat) {
+        OccupancyBitmap bitmap = occupancy;
+        if (bitmap != null) {
+            int state = bitmap.centralState(lng, lat);
+            if (state != OccupancyBitmap.UNKNOWN) {
+                return state == OccupancyBitmap.INSIDE;
+            }
+        }
+        return centralRegion.contains(lng, lat);
+    }
+
+    /**
+     * Gets the grid column of a longitude, clamped to the grid.
+     *
+     * @param lng The longitude.
+     * @return The column of the grid.
+     */
+    private int column(double lng) {
+        int column = (int) ((lng - gridMinLng) / cellWidth);
+        return Math.max(0, Math.min(GRID_SIZE - 1, column));
+    }
+
+    /**
+     * Gets the grid row of a latitude, clamped to the grid.
+     *
+     * @param lat The latitude.
+     * @return The row of the grid.
+     */
+    private int row(double lat) {
+        int row = (int) ((lat - gridMinLat) / cellHeight);
+        return Math.max(0, Math.min(GRID_SIZE - 1, row));
+    }
+}
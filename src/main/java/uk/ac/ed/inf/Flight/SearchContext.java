@@ -0,0 +1,323 @@
+package uk.ac.ed.inf.Flight;
+
+import java.util.Arrays;
+
+/**
+ * The working state of an A* search, kept per thread and reused by every search on the thread rather than allocated
+ * per search, so a long run doesn't create garbage for every path. Nodes are kept as a struct of arrays indexed by
+ * node number, the open set is a binary heap of node numbers, and the state of each lattice key is kept in an
+ * open-addressing hash table. Resetting only clears counters, stale hash table entries are recognised by the
+ * generation they were written in. Arrays grown past a cap by an unusually long search are dropped on reset, so
+ * pooled threads don't each keep the largest search they ever ran.
+ * <p>
+ * The heap orders nodes exactly as the {@link java.util.PriorityQueue} the search used before, with the same sift
+ * steps, so nodes with equal scores still come off it in the same order and paths are the same as before.
+ */
+final class SearchContext {
+    static final int ABSENT = -2;   // The state of a key that hasn't been reached.
+    static final int CLOSED = -1;   // The state of a key that has been expanded.
+
+    private static final int INITIAL_NODES = 1 << 10;
+    private static final int INITIAL_KEYS = 1 << 11;
+    private static final int MAX_KEPT_NODES = 1 << 16;     // About 3 MB of node and heap arrays.
+    private static final int MAX_KEPT_KEYS = 1 << 17;      // About 2 MB of hash table.
+    private static final ThreadLocal<SearchContext> CONTEXTS = ThreadLocal.withInitial(SearchContext::new);
+
+    // The node pool, node i is at (lngs[i], lats[i]) and was reached from node parents[i] by a move in directions[i].
+    private double[] lngs = new double[INITIAL_NODES];
+    private double[] lats = new double[INITIAL_NODES];
+    private double[] gScores = new double[INITIAL_NODES];
+    private double[] fScores = new double[INITIAL_NODES];
+    private long[] nodeKeys = new long[INITIAL_NODES];
+    private int[] parents = new int[INITIAL_NODES];
+    private byte[] directions = new byte[INITIAL_NODES];
+    private int nodeCount;
+
+    private int[] heap = new int[INITIAL_NODES];
+    private int heapSize;
+
+    // The state of each key, the open node with the key, CLOSED, or ABSENT if the slot's stamp isn't this generation.
+    private long[] keys = new long[INITIAL_KEYS];
+    private int[] states = new int[INITIAL_KEYS];
+    private int[] stamps = new int[INITIAL_KEYS];
+    private int generation = 1;
+    private int keyCount;
+
+    private SearchContext() {
+    }
+
+    /**
+     * Gets the search context of the current thread.
+     *
+     * @return The context, which must be reset before each search.
+     */
+    static SearchContext current() {
+        return CONTEXTS.get();
+    }
+
+    /**
+     * Forgets every node and key of the last search, keeping the arrays for the next unless they grew past the cap.
+     */
+    void reset() {
+        nodeCount = 0;
+        heapSize = 0;
+        keyCount = 0;
+        if (lngs.length > MAX_KEPT_NODES) {
+            lngs = new double[INITIAL_NODES];
+            lats = new double[INITIAL_NODES];
+            gScores = new double[INITIAL_NODES];
+            fScores = new double[INITIAL_NODES];
+            nodeKeys = new long[INITIAL_NODES];
+            parents = new int[INITIAL_NODES];
+            directions = new byte[INITIAL_NODES];
+        }
+        if (heap.length > MAX_KEPT_NODES) {
+            heap = new int[INITIAL_NODES];
+        }
+        if (keys.length > MAX_KEPT_KEYS) {
+            // The new stamps are all 0, which is never a generation, so every slot is empty.
+            keys = new long[INITIAL_KEYS];
+            states = new int[INITIAL_KEYS];
+            stamps = new int[INITIAL_KEYS];
+        }
+        generation++;
+        if (generation == 0) {
+            // Only once every 4 billion searches, an old stamp could otherwise match the new generation.
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Adds a node to the pool.
+     *
+     * @param lng       The longitude of the node's position.
+     * @param lat       The latitude of the node's position.
+     * @param key       The lattice key of the position.
+     * @param parent    The node it was reached from, or -1 for the start.
+     * @param direction The direction code of the move from the parent.
+     * @param gScore    The cost of the path from the start to the node.
+     * @param fScore    The G-Score plus the heuristic cost estimate from the node to the end.
+     * @return The number of the node.
+     */
+    int addNode(double lng, double lat, long key, int parent, byte direction, double gScore, double fScore) {
+        if (nodeCount == lngs.length) {
+            int capacity = nodeCount * 2;
+            lngs = Arrays.copyOf(lngs, capacity);
+            lats = Arrays.copyOf(lats, capacity);
+            gScores = Arrays.copyOf(gScores, capacity);
+            fScores = Arrays.copyOf(fScores, capacity);
+            nodeKeys = Arrays.copyOf(nodeKeys, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            directions = Arrays.copyOf(directions, capacity);
+        }
+        int node = nodeCount++;
+        lngs[node] = lng;
+        lats[node] = lat;
+        nodeKeys[node] = key;
+        parents[node] = parent;
+        directions[node] = direction;
+        gScores[node] = gScore;
+        fScores[node] = fScore;
+        return node;
+    }
+
+    /**
+     * Gets the number of nodes the pool holds before it grows.
+     */
+    int nodeCapacity() {
+        return lngs.length;
+    }
+
+    /**
+     * Gets the number of slots in the hash table of keys.
+     */
+    int keyCapacity() {
+        return keys.length;
+    }
+
+    double lng(int node) {
+        return lngs[node];
+    }
+
+    double lat(int node) {
+        return lats[node];
+    }
+
+    long key(int node) {
+        return nodeKeys[node];
+    }
+
+    double gScore(int node) {
+        return gScores[node];
+    }
+
+    double fScore(int node) {
+        return fScores[node];
+    }
+
+    /**
+     * Gets the direction code of every move on the path from the start to a node.
+     *
+     * @param node The node.
+     * @return The direction codes, in the order they are flown.
+     */
+    byte[] pathTo(int node) {
+        int length = 0;
+        for (int move = node; parents[move] >= 0; move = parents[move]) {
+            length++;
+        }
+
+        // Fill the path from the back, as the loop starts from the end position.
+        byte[] path = new byte[length];
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = directions[node];
+            node = parents[node];
+        }
+        return path;
+    }
+
+    /**
+     * Checks if the open set is empty.
+     *
+     * @return True if there are no nodes in the heap, false otherwise.
+     */
+    boolean isHeapEmpty() {
+        return heapSize == 0;
+    }
+
+    /**
+     * Adds a node to the open set heap.
+     *
+     * @param node The node.
+     */
+    void push(int node) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        // Sifts up as PriorityQueue.offer does.
+        int k = heapSize++;
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (compare(node, heap[parent]) >= 0) {
+                break;
+            }
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = node;
+    }
+
+    /**
+     * Takes the node with the lowest F-Score off the open set heap, ties are broken towards the larger G-Score.
+     *
+     * @return The node, the heap must not be empty.
+     */
+    int pop() {
+        int result = heap[0];
+        int n = --heapSize;
+        if (n > 0) {
+            // Sifts the last node down from the root as PriorityQueue.poll does.
+            int node = heap[n];
+            int k = 0;
+            int half = n >>> 1;
+            while (k < half) {
+                int child = 2 * k + 1;
+                int right = child + 1;
+                if (right < n && compare(heap[child], heap[right]) > 0) {
+                    child = right;
+                }
+                if (compare(node, heap[child]) <= 0) {
+                    break;
+                }
+                heap[k] = heap[child];
+                k = child;
+            }
+            heap[k] = node;
+        }
+        return result;
+    }
+
+    /**
+     * Compares two nodes by F-Score, then by G-Score in reverse.
+     */
+    private int compare(int a, int b) {
+        int byFScore = Double.compare(fScores[a], fScores[b]);
+        return byFScore != 0 ? byFScore : Double.compare(gScores[b], gScores[a]);
+    }
+
+    /**
+     * Gets the state of a lattice key.
+     *
+     * @param key The key.
+     * @return The open node with the key, {@link #CLOSED} or {@link #ABSENT}.
+     */
+    int state(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slotOf(key, mask); stamps[slot] == generation; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return states[slot];
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Sets the state of a lattice key.
+     *
+     * @param key   The key.
+     * @param state The open node with the key, or {@link #CLOSED}.
+     */
+    void setState(long key, int state) {
+        if (2 * (keyCount + 1) > keys.length) {
+            growKeys();
+        }
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (stamps[slot] == generation) {
+            if (keys[slot] == key) {
+                states[slot] = state;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        stamps[slot] = generation;
+        keys[slot] = key;
+        states[slot] = state;
+        keyCount++;
+    }
+
+    /**
+     * Doubles the hash table, moving the keys of this generation over.
+     */
+    private void growKeys() {
+        long[] oldKeys = keys;
+        int[] oldStates = states;
+        int[] oldStamps = stamps;
+        keys = new long[oldKeys.length * 2];
+        states = new int[oldKeys.length * 2];
+        stamps = new int[oldKeys.length * 2];
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStamps[i] != generation) {
+                continue;
+            }
+            int slot = slotOf(oldKeys[i], mask);
+            while (stamps[slot] == generation) {
+                slot = (slot + 1) & mask;
+            }
+            stamps[slot] = generation;
+            keys[slot] = oldKeys[i];
+            states[slot] = oldStates[i];
+        }
+    }
+
+    /**
+     * Spreads the bits of a key, so neighbouring lattice keys don't fill neighbouring slots.
+     */
+    private static int slotOf(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
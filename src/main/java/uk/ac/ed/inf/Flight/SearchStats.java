@@ -0,0 +1,11 @@
+package uk.ac.ed.inf.Flight;
+
+/**
+ * The statistics of a single path search, used to measure how much work a search did.
+ *
+ * @param nodesExpanded   The number of nodes taken off the open set and expanded.
+ * @param nodesGenerated  The number of legal neighbours generated that were not already closed.
+ * @param peakOpenSetSize The largest the open set got during the search.
+ */
+public record SearchStats(int nodesExpanded, int nodesGenerated, int peakOpenSetSize) {
+}
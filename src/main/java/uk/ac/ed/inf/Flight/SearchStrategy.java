@@ -0,0 +1,23 @@
+package uk.ac.ed.inf.Flight;
+
+/**
+ * The ways {@link PathGenerator} can search for a path.
+ */
+public enum SearchStrategy {
+    /**
+     * An A* search from the start towards the end, the default.
+     */
+    ASTAR,
+
+    /**
+     * A search from both ends at once that meets in the middle, which expands far fewer nodes on routes around
+     * no-fly zones. The joined path is checked by flying it, and an A* search is used instead if it isn't legal.
+     */
+    BIDIRECTIONAL,
+
+    /**
+     * Dijkstra over a visibility graph of the corners of the no-fly zones, see {@link VisibilityGraph}, with the
+     * shortest route then flown as compass moves. An A* search is used instead if the route cannot be flown.
+     */
+    VISIBILITY_GRAPH
+}
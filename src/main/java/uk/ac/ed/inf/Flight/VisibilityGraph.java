@@ -0,0 +1,228 @@
+package uk.ac.ed.inf.Flight;
+
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A visibility graph over the corners of the no-fly zones and the central region. The shortest route between two
+ * points around the no-fly zones only ever turns at a corner of a zone, so rather than searching the lattice of
+ * moves, the shortest route is found by Dijkstra over the corners that can see each other. Each corner of a zone is
+ * pushed out from the zone by a couple of moves, so a route of compass moves that follows the straight lines of
+ * the graph keeps clear of the zone. The graph is built once per set of regions, see
+ * {@link RegionIndex#getVisibilityGraph}, only the start and end of each route are connected to it per search.
+ */
+final class VisibilityGraph {
+    private static final double CLEARANCE = SystemConstants.DRONE_MOVE_DISTANCE * 2;
+
+    private final RegionIndex regions;
+    private final double[] lngs;
+    private final double[] lats;
+    private final double[][] distances;     // The length of the edge between each pair of corners, infinite if hidden.
+
+    /**
+     * A route through the graph.
+     *
+     * @param waypoints The points the route turns at after the start, ending with the end position,
+     *                  or null if there is no route.
+     * @param stats     The statistics of the search for the route.
+     */
+    record Route(List<LngLat> waypoints, SearchStats stats) {
+    }
+
+    /**
+     * Builds the graph of a set of regions.
+     *
+     * @param regions       The compiled regions, used to check which corners can see each other.
+     * @param noFlyZones    The no-fly zones the corners are taken from.
+     * @param centralRegion The central region, whose corners are used as they are.
+     */
+    VisibilityGraph(RegionIndex regions, NamedRegion[] noFlyZones, NamedRegion centralRegion) {
+        this.regions = regions;
+        List<double[]> corners = new ArrayList<>();
+        for (NamedRegion zone : noFlyZones) {
+            LngLat[] vertices = zone.vertices();
+            for (int i = 0; i < vertices.length; i++) {
+                double[] corner = pushedOut(vertices[(i + vertices.length - 1) % vertices.length], vertices[i],
+                        vertices[(i + 1) % vertices.length]);
+                if (corner != null) {
+                    corners.add(corner);
+                }
+            }
+        }
+        for (LngLat vertex : centralRegion.vertices()) {
+            if (!regions.isInNoFlyZone(vertex.lng(), vertex.lat())) {
+                corners.add(new double[]{vertex.lng(), vertex.lat()});
+            }
+        }
+
+        int size = corners.size();
+        lngs = new double[size];
+        lats = new double[size];
+        for (int i = 0; i < size; i++) {
+            lngs[i] = corners.get(i)[0];
+            lats[i] = corners.get(i)[1];
+        }
+
+        distances = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            distances[i][i] = Double.POSITIVE_INFINITY;
+            for (int j = i + 1; j < size; j++) {
+                double distance = distanceIfVisible(lngs[i], lats[i], lngs[j], lats[j]);
+                distances[i][j] = distance;
+                distances[j][i] = distance;
+            }
+        }
+    }
+
+    /**
+     * Pushes a corner of a zone out along the bisector of its two sides, away from the zone.
+     *
+     * @param previous The corner before.
+     * @param vertex   The corner.
+     * @param next     The corner after.
+     * @return The longitude and latitude of the pushed out corner, or null if it cannot be pushed out of every zone.
+     */
+    private double[] pushedOut(LngLat previous, LngLat vertex, LngLat next) {
+        double fromPreviousLng = vertex.lng() - previous.lng();
+        double fromPreviousLat = vertex.lat() - previous.lat();
+        double fromNextLng = vertex.lng() - next.lng();
+        double fromNextLat = vertex.lat() - next.lat();
+        double previousLength = Math.hypot(fromPreviousLng, fromPreviousLat);
+        double nextLength = Math.hypot(fromNextLng, fromNextLat);
+        if (previousLength == 0 || nextLength == 0) {
+            return null;
+        }
+
+        // The bisector points away from the zone at a convex corner, and into it at a concave one.
+        double bisectorLng = fromPreviousLng / previousLength + fromNextLng / nextLength;
+        double bisectorLat = fromPreviousLat / previousLength + fromNextLat / nextLength;
+        double bisectorLength = Math.hypot(bisectorLng, bisectorLat);
+        if (bisectorLength == 0) {
+            return null;
+        }
+        bisectorLng *= CLEARANCE / bisectorLength;
+        bisectorLat *= CLEARANCE / bisectorLength;
+
+        for (int sign = 1; sign >= -1; sign -= 2) {
+            double lng = vertex.lng() + sign * bisectorLng;
+            double lat = vertex.lat() + sign * bisectorLat;
+            if (!regions.isInNoFlyZone(lng, lat)) {
+                return new double[]{lng, lat};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the length of the straight line between two points, if it doesn't cross a no-fly zone.
+     *
+     * @return The length of the line, or infinity if it crosses a no-fly zone.
+     */
+    private double distanceIfVisible(double lng1, double lat1, double lng2, double lat2) {
+        if (regions.crossesNoFlyZone(lng1, lat1, lng2, lat2)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.hypot(lng2 - lng1, lat2 - lat1);
+    }
+
+    /**
+     * Finds the shortest route from the start to the end position through the graph, with Dijkstra over the
+     * corners, the start and the end. As the graph only has a few dozen corners, each step takes the closest
+     * unsettled corner by scanning them all rather than with a heap.
+     *
+     * @param startPosition The position the route starts at.
+     * @param endPosition   The position the route ends at.
+     * @return The route, whose waypoints are null if the end cannot be reached.
+     */
+    Route shortestPath(LngLat startPosition, LngLat endPosition) {
+        int corners = lngs.length;
+        int start = corners;
+        int end = corners + 1;
+
+        // The start and end are connected to every corner they can see, and to each other.
+        double[] fromStart = new double[corners + 2];
+        double[] toEnd = new double[corners + 2];
+        for (int i = 0; i < corners; i++) {
+            fromStart[i] = distanceIfVisible(startPosition.lng(), startPosition.lat(), lngs[i], lats[i]);
+            toEnd[i] = distanceIfVisible(lngs[i], lats[i], endPosition.lng(), endPosition.lat());
+        }
+        fromStart[end] = distanceIfVisible(startPosition.lng(), startPosition.lat(),
+                endPosition.lng(), endPosition.lat());
+        fromStart[start] = Double.POSITIVE_INFINITY;
+
+        double[] distance = new double[corners + 2];
+        int[] previous = new int[corners + 2];
+        boolean[] settled = new boolean[corners + 2];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(previous, -1);
+        distance[start] = 0;
+
+        int nodesSettled = 0;
+        int edgesRelaxed = 0;
+        int reached = 1;    // The nodes that have a distance but aren't settled yet.
+        int peakReached = 1;
+        while (true) {
+            int current = -1;
+            for (int i = 0; i < corners + 2; i++) {
+                if (!settled[i] && distance[i] < Double.POSITIVE_INFINITY
+                        && (current < 0 || distance[i] < distance[current])) {
+                    current = i;
+                }
+            }
+            if (current < 0 || current == end) {
+                break;
+            }
+            settled[current] = true;
+            nodesSettled++;
+            reached--;
+
+            for (int next = 0; next < corners + 2; next++) {
+                if (settled[next]) {
+                    continue;
+                }
+                double edge;
+                if (current == start) {
+                    edge = fromStart[next];
+                } else if (next == end) {
+                    edge = toEnd[current];
+                } else if (next == start) {
+                    continue;
+                } else {
+                    edge = distances[current][next];
+                }
+                if (edge == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                edgesRelaxed++;
+                if (distance[current] + edge < distance[next]) {
+                    if (distance[next] == Double.POSITIVE_INFINITY) {
+                        reached++;
+                    }
+                    distance[next] = distance[current] + edge;
+                    previous[next] = current;
+                }
+            }
+            peakReached = Math.max(peakReached, reached);
+        }
+
+        SearchStats stats = new SearchStats(nodesSettled, edgesRelaxed, peakReached);
+        if (previous[end] < 0) {
+            return new Route(null, stats);
+        }
+
+        // Walks back from the end, the start itself isn't a waypoint.
+        List<LngLat> waypoints = new ArrayList<>();
+        waypoints.add(endPosition);
+        for (int node = previous[end]; node != start; node = previous[node]) {
+            waypoints.add(new LngLat(lngs[node], lats[node]));
+        }
+        Collections.reverse(waypoints);
+        return new Route(waypoints, stats);
+    }
+}
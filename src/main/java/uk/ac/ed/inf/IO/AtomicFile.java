@@ -0,0 +1,143 @@
+package uk.ac.ed.inf.IO;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * An output file that is written to a temporary file next to it, which is only moved over the file once it is
+ * complete, so anything reading the file never sees it half written. Closing the file without committing it
+ * deletes the temporary file and leaves the old file, if any, as it was.
+ */
+final class AtomicFile implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final Path target;
+    private final Path temporary;
+    private final FileChannel channel;
+    private final OutputStream stream;
+    private final OutputStream writerStream;
+    private boolean prepared = false;
+    private boolean committed = false;
+
+    /**
+     * Creates the temporary file, and the directory of the file if it doesn't exist.
+     *
+     * @param target The file that is replaced when committed.
+     */
+    AtomicFile(Path target) throws IOException {
+        this.target = target;
+        Files.createDirectories(target.toAbsolutePath().getParent());
+
+        // Not Files.createTempFile, which would leave the committed file only readable by its owner.
+        temporary = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        stream = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES);
+
+        // Writers such as Jackson's close the stream they are given, which mustn't close the file before it is
+        // forced and committed, so closing the stream they get only flushes it.
+        writerStream = new FilterOutputStream(stream) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Gets a buffered stream to the temporary file, closing it only flushes it, the file is closed by
+     * {@link #commit()} or {@link #close()}.
+     *
+     * @return The stream.
+     */
+    OutputStream stream() {
+        return writerStream;
+    }
+
+    /**
+     * Gets the channel to the temporary file, for writers with their own buffer, which mustn't also write to
+     * {@link #stream()}.
+     *
+     * @return The channel.
+     */
+    FileChannel channel() {
+        return channel;
+    }
+
+    /**
+     * Finishes writing the temporary file and forces it to disk, without moving it over the file yet.
+     *
+     * @throws IOException If the temporary file cannot be written.
+     */
+    void prepare() throws IOException {
+        if (prepared) {
+            return;
+        }
+        // Forced to disk before the move, or a crash could leave the moved file empty or cut short.
+        stream.flush();
+        channel.force(true);
+        stream.close();
+        prepared = true;
+    }
+
+    /**
+     * Finishes writing the temporary file, forces it to disk and moves it over the file.
+     *
+     * @throws IOException If the temporary file cannot be written or moved.
+     */
+    void commit() throws IOException {
+        prepare();
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+    }
+
+    /**
+     * Commits files that belong together, every file is written and forced to disk before any is moved, so one
+     * that fails to be written leaves all of the old files as they were.
+     *
+     * @param files The files to commit.
+     * @throws IOException If any file cannot be written or moved.
+     */
+    static void commitAll(AtomicFile... files) throws IOException {
+        for (AtomicFile file : files) {
+            file.prepare();
+        }
+        for (AtomicFile file : files) {
+            file.commit();
+        }
+    }
+
+    /**
+     * Deletes the temporary file if it wasn't committed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        try {
+            stream.close();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
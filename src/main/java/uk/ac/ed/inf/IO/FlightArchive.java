@@ -0,0 +1,175 @@
+package uk.ac.ed.inf.IO;
+
+import uk.ac.ed.inf.Flight.FlightPlan;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a binary flight path archive written by {@link FlightArchiveWriter}. The file is memory-mapped and only
+ * its index is read up front, so the flight plan of any order can be read without reading the orders before it.
+ * <p>
+ * All numbers are big-endian. The file starts with a 16 byte header: the magic number, the version, the flags
+ * and a reserved int. Each order follows, as the length and UTF-8 bytes of its order number, the longitude and
+ * latitude of its start position as doubles, and its number of moves as an int, then a record per move: the
+ * direction code byte of the move (see {@link FlightPlan}) and, if the coordinates flag is set, the longitude
+ * and latitude the move ends at as floats. The index follows the orders, the number of orders, then the length
+ * and bytes of each order number with the offset of the order in the file as a long. The file ends with a 16
+ * byte footer: the offset of the index, the number of orders and the magic number again.
+ */
+public class FlightArchive {
+    static final int MAGIC = 0x50444641;    // "PDFA"
+    static final int FILE_VERSION = 1;
+    static final int COORDINATES_FLAG = 1;
+    static final int HEADER_BYTES = 16;
+    static final int FOOTER_BYTES = 16;
+    static final int DIRECTION_RECORD_BYTES = 1;
+    static final int COORDINATE_RECORD_BYTES = 1 + 2 * Float.BYTES;
+    static final int MAX_ORDER_NO_BYTES = Short.MAX_VALUE;
+
+    private final MappedByteBuffer buffer;
+    private final boolean coordinates;
+    private final int recordBytes;
+    private final List<String> orderNumbers;
+    private final Map<String, Integer> offsets;
+
+    private FlightArchive(MappedByteBuffer buffer, boolean coordinates, List<String> orderNumbers,
+                          Map<String, Integer> offsets) {
+        this.buffer = buffer;
+        this.coordinates = coordinates;
+        this.recordBytes = coordinates ? COORDINATE_RECORD_BYTES : DIRECTION_RECORD_BYTES;
+        this.orderNumbers = Collections.unmodifiableList(orderNumbers);
+        this.offsets = offsets;
+    }
+
+    /**
+     * Maps an archive and reads its index.
+     *
+     * @param file The archive file.
+     * @return The archive.
+     * @throws IOException If the file cannot be mapped, or isn't a complete archive.
+     */
+    public static FlightArchive open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE || size < HEADER_BYTES + Integer.BYTES + FOOTER_BYTES) {
+                throw new IOException("FlightArchive - open: " + file + " is not an archive of a mappable size");
+            }
+            // The mapping stays valid once the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        int footer = buffer.capacity() - FOOTER_BYTES;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(footer + 12) != MAGIC) {
+            throw new IOException("FlightArchive - open: " + file + " is not an archive, or was not finished");
+        }
+        if (buffer.getInt(4) != FILE_VERSION) {
+            throw new IOException("FlightArchive - open: " + file + " has unsupported version " + buffer.getInt(4));
+        }
+
+        // Reads the index into a map from order number to offset, the orders themselves are read when asked for.
+        try {
+            long indexOffset = buffer.getLong(footer);
+            int orders = buffer.getInt(footer + 8);
+            if (indexOffset < HEADER_BYTES || indexOffset > footer || buffer.getInt((int) indexOffset) != orders) {
+                throw new IOException("FlightArchive - open: " + file + " has a corrupt index");
+            }
+            List<String> orderNumbers = new ArrayList<>(orders);
+            Map<String, Integer> offsets = new HashMap<>();
+            MappedByteBuffer index = buffer.slice((int) indexOffset + Integer.BYTES,
+                    footer - (int) indexOffset - Integer.BYTES);
+            for (int i = 0; i < orders; i++) {
+                byte[] orderNumber = new byte[index.getShort()];
+                index.get(orderNumber);
+                String orderNo = new String(orderNumber, StandardCharsets.UTF_8);
+                orderNumbers.add(orderNo);
+                offsets.put(orderNo, (int) index.getLong());
+            }
+            return new FlightArchive(buffer, (buffer.getInt(8) & COORDINATES_FLAG) != 0, orderNumbers, offsets);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("FlightArchive - open: " + file + " has a corrupt index: " + e);
+        }
+    }
+
+    /**
+     * Gets the number of every order in the archive.
+     *
+     * @return The order numbers, in the order they were written.
+     */
+    public List<String> getOrderNumbers() {
+        return orderNumbers;
+    }
+
+    /**
+     * Checks if the moves of the archive store the positions they end at.
+     *
+     * @return True if they do, false if only their directions are stored.
+     */
+    public boolean hasCoordinates() {
+        return coordinates;
+    }
+
+    /**
+     * Reads the flight plan of an order, which gives the exact position after each move.
+     *
+     * @param orderNo The number of the order.
+     * @return The flight plan, or null if the order is not in the archive.
+     */
+    public FlightPlan getFlightPlan(String orderNo) {
+        Integer offset = offsets.get(orderNo);
+        if (offset == null) {
+            return null;
+        }
+
+        int moves = movesOffset(offset);
+        LngLat startPosition = new LngLat(buffer.getDouble(moves - Integer.BYTES - 2 * Double.BYTES),
+                buffer.getDouble(moves - Integer.BYTES - Double.BYTES));
+        byte[] directions = new byte[buffer.getInt(moves - Integer.BYTES)];
+        for (int move = 0; move < directions.length; move++) {
+            directions[move] = buffer.get(moves + move * recordBytes);
+        }
+        return new FlightPlan(startPosition, directions);
+    }
+
+    /**
+     * Reads the stored position each move of an order ends at, which is only as precise as a float.
+     *
+     * @param orderNo The number of the order.
+     * @return The position after each move, or null if the order is not in the archive or the archive has no
+     * coordinates.
+     */
+    public List<LngLat> getStoredPositions(String orderNo) {
+        Integer offset = offsets.get(orderNo);
+        if (offset == null || !coordinates) {
+            return null;
+        }
+
+        int moves = movesOffset(offset);
+        int count = buffer.getInt(moves - Integer.BYTES);
+        List<LngLat> positions = new ArrayList<>(count);
+        for (int move = 0; move < count; move++) {
+            int record = moves + move * recordBytes;
+            positions.add(new LngLat(buffer.getFloat(record + 1), buffer.getFloat(record + 1 + Float.BYTES)));
+        }
+        return positions;
+    }
+
+    /**
+     * Gets the offset of the first move record of the order at an offset, just after the order's header.
+     */
+    private int movesOffset(int offset) {
+        return offset + Short.BYTES + buffer.getShort(offset) + 2 * Double.BYTES + Integer.BYTES;
+    }
+}
@@ -0,0 +1,160 @@
+package uk.ac.ed.inf.IO;
+
+import uk.ac.ed.inf.Flight.FlightPlan;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.Metrics.Timer;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the flight plans of a day's orders to a compact binary archive, one order at a time, which
+ * {@link FlightArchive} reads back by order number. Each move is a fixed-width record of its direction code,
+ * optionally followed by the position it ends at as two floats, rather than a JSON object repeating the order
+ * number and both positions. The layout of the file is described by {@link FlightArchive}.
+ * <p>
+ * The archive only replaces the file once {@link #finish()} is called, closing the writer without finishing it
+ * discards the archive, so a day that fails part way through leaves the previous archive as it was.
+ */
+public class FlightArchiveWriter implements Closeable {
+    private static final Timer WRITE_TIMER = MetricsRegistry.global().timer("pizzadronz_output_seconds", "file", "archive");
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final AtomicFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final boolean coordinates;
+    private final int recordBytes;
+    private final List<byte[]> orderNumbers = new ArrayList<>();
+    private final List<Long> offsets = new ArrayList<>();
+    private final Set<String> written = new HashSet<>();
+    private long position;      // The offset in the file of the next byte put in the buffer.
+
+    /**
+     * Opens the archive file and writes its header.
+     *
+     * @param file        The file to write the archive to, replacing it once the archive is finished.
+     * @param coordinates Whether each move stores the position it ends at, as well as its direction.
+     */
+    public FlightArchiveWriter(File file, boolean coordinates) throws IOException {
+        this.coordinates = coordinates;
+        this.recordBytes = coordinates ? FlightArchive.COORDINATE_RECORD_BYTES : FlightArchive.DIRECTION_RECORD_BYTES;
+        try {
+            this.file = new AtomicFile(file.toPath());
+        } catch (Exception e) {
+            throw new IOException("FlightArchiveWriter: Failed to open archive file: " + e);
+        }
+
+        channel = this.file.channel();
+        buffer.putInt(FlightArchive.MAGIC).putInt(FlightArchive.FILE_VERSION)
+                .putInt(coordinates ? FlightArchive.COORDINATES_FLAG : 0).putInt(0);
+        position = FlightArchive.HEADER_BYTES;
+    }
+
+    /**
+     * Writes the flight plan of an order.
+     *
+     * @param orderNo    The order number the plan is looked up by.
+     * @param flightPlan The flight plan of the order.
+     * @throws IOException If the plan cannot be written, or an order with the same number was already written.
+     */
+    public void write(String orderNo, FlightPlan flightPlan) throws IOException {
+        byte[] orderNumber = orderNo.getBytes(StandardCharsets.UTF_8);
+        if (orderNumber.length > FlightArchive.MAX_ORDER_NO_BYTES || !written.add(orderNo)) {
+            throw new IOException("FlightArchiveWriter - write: Order number " + orderNo
+                    + " is too long or was already written");
+        }
+
+        long start = System.nanoTime();
+        try {
+            orderNumbers.add(orderNumber);
+            offsets.add(position);
+
+            // The header of the order.
+            LngLat startPosition = flightPlan.getStartPosition();
+            reserve(Short.BYTES + orderNumber.length + 2 * Double.BYTES + Integer.BYTES);
+            buffer.putShort((short) orderNumber.length).put(orderNumber)
+                    .putDouble(startPosition.lng()).putDouble(startPosition.lat())
+                    .putInt(flightPlan.size());
+
+            // A record per move.
+            for (int move = 0; move < flightPlan.size(); move++) {
+                reserve(recordBytes);
+                buffer.put(flightPlan.getDirection(move));
+                if (coordinates) {
+                    LngLat to = flightPlan.getPosition(move + 1);
+                    buffer.putFloat((float) to.lng()).putFloat((float) to.lat());
+                }
+            }
+        } catch (Exception e) {
+            throw new IOException("FlightArchiveWriter - write: Failed to write flight plan to archive: " + e);
+        } finally {
+            WRITE_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Writes the index of the orders and the footer, and moves the finished archive into place.
+     *
+     * @throws IOException If the archive cannot be written, in which case the file is left as it was.
+     */
+    public void finish() throws IOException {
+        try {
+            long indexOffset = position;
+            reserve(Integer.BYTES);
+            buffer.putInt(orderNumbers.size());
+            for (int i = 0; i < orderNumbers.size(); i++) {
+                byte[] orderNumber = orderNumbers.get(i);
+                reserve(Short.BYTES + orderNumber.length + Long.BYTES);
+                buffer.putShort((short) orderNumber.length).put(orderNumber).putLong(offsets.get(i));
+            }
+            reserve(FlightArchive.FOOTER_BYTES);
+            buffer.putLong(indexOffset).putInt(orderNumbers.size()).putInt(FlightArchive.MAGIC);
+            flush();
+            file.commit();
+        } catch (Exception e) {
+            throw new IOException("FlightArchiveWriter - finish: Failed to finish writing archive: " + e);
+        }
+    }
+
+    /**
+     * Closes the file, discarding the archive if it wasn't finished.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Makes room in the buffer for a number of bytes, flushing it if it is too full, and moves the position in
+     * the file past them.
+     *
+     * @param bytes The number of bytes about to be put in the buffer, at most the size of the buffer.
+     */
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        position += bytes;
+    }
+
+    /**
+     * Writes everything in the buffer to the file.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
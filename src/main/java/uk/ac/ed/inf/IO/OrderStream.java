@@ -0,0 +1,103 @@
+package uk.ac.ed.inf.IO;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import uk.ac.ed.inf.ilp.data.Order;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads orders one at a time from a JSON array as it arrives, so an order can be processed as soon as it
+ * has been read, and only the orders being processed are ever held in memory. As an iterator cannot throw
+ * checked exceptions, an order that cannot be read is thrown as an {@link UncheckedIOException}.
+ */
+public class OrderStream implements Iterator<Order>, Closeable {
+    private final JsonParser parser;
+    private final ObjectReader orderReader;
+    private Order next;
+    private boolean finished;
+
+    /**
+     * Starts reading a JSON array of orders.
+     *
+     * @param body        The JSON array of orders.
+     * @param orderReader Reads a single order.
+     * @throws IOException If the body is not a JSON array.
+     */
+    OrderStream(InputStream body, ObjectReader orderReader) throws IOException {
+        this.orderReader = orderReader;
+        this.parser = orderReader.createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected an array of orders at " + parser.getCurrentLocation());
+            }
+        } catch (IOException e) {
+            parser.close();
+            throw new IOException("OrderStream: Failed to obtain orders" + e);
+        }
+    }
+
+    /**
+     * Checks if there is another order, reading it if it hasn't been read yet.
+     *
+     * @return True if there is another order, false otherwise.
+     */
+    @Override
+    public boolean hasNext() {
+        if (next != null || finished) {
+            return next != null;
+        }
+
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY) {
+                finished = true;
+                parser.close();
+                return false;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected an order at " + parser.getCurrentLocation());
+            }
+            next = orderReader.readValue(parser);
+            return true;
+        } catch (IOException e) {
+            finished = true;
+            throw new UncheckedIOException(new IOException("OrderStream - hasNext: Failed to obtain orders" + e));
+        }
+    }
+
+    /**
+     * Gets the next order.
+     *
+     * @return The next order.
+     */
+    @Override
+    public Order next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("OrderStream - next: There are no more orders");
+        }
+        Order order = next;
+        next = null;
+        return order;
+    }
+
+    /**
+     * Stops reading orders and closes the underlying stream, any orders that haven't been read are discarded.
+     */
+    @Override
+    public void close() {
+        finished = true;
+        next = null;
+        try {
+            parser.close();
+        } catch (IOException e) {
+            System.err.println("OrderStream - close: Failed to close orders: " + e);
+        }
+    }
+}
@@ -1,32 +1,218 @@
 package uk.ac.ed.inf.IO;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.Metrics.Timer;
 import uk.ac.ed.inf.OutputClasses.Delivery;
 import uk.ac.ed.inf.OutputClasses.FeatureCollection;
 import uk.ac.ed.inf.OutputClasses.FlightPath;
 import uk.ac.ed.inf.ilp.data.Order;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-
+/**
+ * Writes the output files of each date to a directory. Each file is written to a temporary file which replaces it
+ * once complete, so a file is never seen half written.
+ */
 public class OutputToFile {
+    private static final String OUTPUT_METRIC = "pizzadronz_output_seconds";
+    private static final Timer DELIVERIES_TIMER = MetricsRegistry.global().timer(OUTPUT_METRIC, "file", "deliveries");
+    private static final Timer FLIGHT_PATHS_TIMER = MetricsRegistry.global().timer(OUTPUT_METRIC, "file", "flightpath");
+    private static final Timer GEO_JSON_TIMER = MetricsRegistry.global().timer(OUTPUT_METRIC, "file", "drone");
+
+    // Writers are immutable and thread safe, so they are configured once and shared by every output.
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectWriter DELIVERIES_WRITER = MAPPER.writerFor(new TypeReference<List<Delivery>>() {});
+    private static final ObjectWriter FLIGHT_PATHS_WRITER = MAPPER.writerFor(new TypeReference<List<FlightPath>>() {});
+    private static final ObjectWriter GEO_JSON_WRITER = MAPPER.writerFor(FeatureCollection.class);
+    private static final ObjectWriter METRICS_WRITER = MAPPER.writerWithDefaultPrettyPrinter();
+
+    // One thread for each of the files of a date, which are daemons so an idle pool doesn't keep the JVM running.
+    private static final ExecutorService WRITERS = Executors.newFixedThreadPool(3, runnable -> {
+        Thread thread = new Thread(runnable, "output-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path directory;
 
+    /**
+     * Creates an output to the resultFiles directory of the working directory.
+     */
     public OutputToFile() {
+        this(Path.of("resultFiles"));
+    }
+
+    /**
+     * Creates an output to a directory, which is created when the first file is written if it doesn't exist.
+     *
+     * @param directory The directory to write the files to.
+     */
+    public OutputToFile(Path directory) {
+        this.directory = directory;
     }
 
     /**
      * Checks if a directory exists, if not it creates one.
+     *
+     * @return True if the directory doesn't exist and could not be created.
      */
     private boolean checkDirectoryExists() {
-        File directory = new File("resultFiles");
-        boolean createdDirectory = true;
-        if (!directory.exists()){
-            createdDirectory = directory.mkdir(); // Create the directory if it doesn't exist
+        // Unlike File.mkdir, this doesn't fail when another thread creates the directory first.
+        try {
+            Files.createDirectories(directory);
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Writes an output file through a temporary file, which replaces the file once it is complete.
+     *
+     * @param file   The name of the file in the output directory.
+     * @param writer The writer of the value.
+     * @param value  The value to write.
+     */
+    private void writeAtomically(String file, ObjectWriter writer, Object value) throws IOException {
+        try (AtomicFile atomicFile = writeUncommitted(file, writer, value)) {
+            atomicFile.commit();
+        }
+    }
+
+    /**
+     * Writes an output file to a temporary file, which only replaces the file once it is committed.
+     *
+     * @param file   The name of the file in the output directory.
+     * @param writer The writer of the value.
+     * @param value  The value to write.
+     * @return The written file, which is discarded if it is closed without being committed.
+     */
+    private AtomicFile writeUncommitted(String file, ObjectWriter writer, Object value) throws IOException {
+        AtomicFile atomicFile = new AtomicFile(directory.resolve(file));
+        try {
+            writer.writeValue(atomicFile.stream(), value);
+            return atomicFile;
+        } catch (IOException | RuntimeException e) {
+            atomicFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the deliveries, flight path and GEO JSON files of a date at the same time, each on its own thread.
+     * Only once all three are written do they replace the old files, so a file that fails leaves all three of
+     * the old files as they were.
+     *
+     * @param deliveries        The deliveries of the orders that were processed, in the order they were made.
+     * @param flightPaths       The moves of every order.
+     * @param featureCollection The Feature Collection that holds all the coordinates.
+     * @param date              The date the orders were made on.
+     * @throws IOException If any of the files cannot be written.
+     */
+    public void outputDay(List<Delivery> deliveries, ArrayList<FlightPath> flightPaths,
+                          FeatureCollection featureCollection, LocalDate date) throws IOException {
+        // Checks if the directory exists, if not it creates one, if it fails to do so, throw an exception.
+        if (checkDirectoryExists()) {
+            throw new IOException("OutputToFile - outputDay: Failed to create directory");
+        }
+
+        List<Callable<AtomicFile>> outputs = List.of(
+                () -> writeTimed("deliveries-" + date + ".json", DELIVERIES_WRITER, deliveries, DELIVERIES_TIMER),
+                () -> writeTimed("flightpath-" + date + ".json", FLIGHT_PATHS_WRITER, flightPaths,
+                        FLIGHT_PATHS_TIMER),
+                () -> writeTimed("drone-" + date + ".geojson", GEO_JSON_WRITER, featureCollection, GEO_JSON_TIMER));
+
+        List<Future<AtomicFile>> futures;
+        try {
+            // Only returns once every output has finished, whether or not it failed.
+            futures = WRITERS.invokeAll(outputs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("OutputToFile - outputDay: Interrupted while writing files");
+        }
+
+        // Every written file is closed at the end, which discards it unless all of them were committed.
+        List<AtomicFile> files = new ArrayList<>();
+        try {
+            Throwable failure = null;
+            for (Future<AtomicFile> future : futures) {
+                try {
+                    files.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("OutputToFile - outputDay: Interrupted while writing files");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error error) {
+                        throw error;
+                    }
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure != null) {
+                throw new IOException("OutputToFile - outputDay: Failed to write files: " + failure);
+            }
+            AtomicFile.commitAll(files.toArray(new AtomicFile[0]));
+        } finally {
+            for (AtomicFile file : files) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Writes the deliveries of a date, and moves them into place together with the flight path and GEO JSON
+     * files of a streamed output of the same date, so either all three files replace the old ones or none do.
+     *
+     * @param flightOutput The streamed output of the date, with every order written.
+     * @param deliveries   The deliveries of the orders that were processed, in the order they were made.
+     * @param date         The date the orders were made on.
+     * @throws IOException If any of the files cannot be written.
+     */
+    public void finishDay(StreamingFlightOutput flightOutput, List<Delivery> deliveries, LocalDate date)
+            throws IOException {
+        // Checks if the directory exists, if not it creates one, if it fails to do so, throw an exception.
+        if (checkDirectoryExists()) {
+            throw new IOException("OutputToFile - finishDay: Failed to create directory");
+        }
+
+        AtomicFile deliveriesFile;
+        try {
+            deliveriesFile = writeTimed("deliveries-" + date + ".json", DELIVERIES_WRITER, deliveries,
+                    DELIVERIES_TIMER);
+        } catch (Exception e) {
+            throw new IOException("OutputToFile - finishDay: Failed to write deliveries to file: " + e);
+        }
+        try (deliveriesFile) {
+            flightOutput.finish(deliveriesFile);
+        }
+    }
+
+    /**
+     * Writes an output file to a temporary file, as {@link #writeUncommitted} does, recording how long it took.
+     */
+    private AtomicFile writeTimed(String file, ObjectWriter writer, Object value, Timer timer) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return writeUncommitted(file, writer, value);
+        } finally {
+            timer.recordSince(start);
         }
-        return !createdDirectory;
     }
 
     /**
@@ -36,25 +222,36 @@ public class OutputToFile {
      * @param date   The given date the orders were made.
      */
     public void outputDeliveries(Order[] orders, LocalDate date) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        Delivery[] deliveries = new Delivery[orders.length];
+        List<Delivery> deliveries = new ArrayList<>(orders.length);
+
+        // Converts each Order to a Delivery.
+        for (Order order : orders) {
+            deliveries.add(new Delivery(order));
+        }
+        outputDeliveries(deliveries, date);
+    }
 
+    /**
+     * Creates a JSON file of the deliveries of the drones orders, for when each order has already been
+     * reduced to its delivery so the orders themselves don't need to be kept.
+     *
+     * @param deliveries The deliveries of the orders that were processed, in the order they were made.
+     * @param date       The given date the orders were made.
+     */
+    public void outputDeliveries(List<Delivery> deliveries, LocalDate date) throws IOException {
         // Checks if the directory exists, if not it creates one, if it fails to do so, throw an exception.
         if (checkDirectoryExists()) {
             throw new IOException("OutputToFile - outputDeliveries: Failed to create directory");
         }
 
-        // Converts each Order to a Delivery.
-        for (int i = 0; i < orders.length; i++) {
-            Delivery delivery = new Delivery(orders[i]);
-            deliveries[i] = delivery;
-        }
-
         // Tries to write deliveries to a JSON file.
+        long start = System.nanoTime();
         try {
-            mapper.writeValue(new File("resultFiles\\deliveries-" + date.toString() + ".json"), deliveries);
+            writeAtomically("deliveries-" + date.toString() + ".json", DELIVERIES_WRITER, deliveries);
         } catch (Exception e) {
             throw new IOException("OutputToFile - outputDeliveries: Failed to write deliveries to file:" + e);
+        } finally {
+            DELIVERIES_TIMER.recordSince(start);
         }
     }
 
@@ -65,19 +262,53 @@ public class OutputToFile {
      * @param date        The date the orders was made on.
      */
     public void outputFlightPaths(ArrayList<FlightPath> flightPaths, LocalDate date) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-
         // Checks if the directory exists, if not it creates one, if it fails to do so, throw an exception.
         if(checkDirectoryExists()) {
             throw new IOException("OutputToFile - outputDeliveries: Failed to create directory");
         }
 
         // Tries to write flight paths to a JSON file.
+        long start = System.nanoTime();
         try {
-            mapper.writeValue(new File("resultFiles\\flightpath-" + date.toString() + ".json"), flightPaths);
+            writeAtomically("flightpath-" + date.toString() + ".json", FLIGHT_PATHS_WRITER, flightPaths);
         } catch (Exception e) {
             throw new IOException("OutputToFile - outputFlightPaths: Failed to write flight paths to file: " + e);
+        } finally {
+            FLIGHT_PATHS_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Opens the flight path JSON and GEO JSON files for each date to be written one order at a time,
+     * the files will be the same as the ones written by {@link #outputFlightPaths} and {@link #outputGeoJson}.
+     *
+     * @param date The date the orders were made on.
+     * @return The open output, whose files only replace the old ones once it is finished, see {@link #finishDay}.
+     */
+    public StreamingFlightOutput openFlightOutput(LocalDate date) throws IOException {
+        // Checks if the directory exists, if not it creates one, if it fails to do so, throw an exception.
+        if(checkDirectoryExists()) {
+            throw new IOException("OutputToFile - openFlightOutput: Failed to create directory");
         }
+
+        return new StreamingFlightOutput(directory.resolve("flightpath-" + date.toString() + ".json").toFile(),
+                directory.resolve("drone-" + date.toString() + ".geojson").toFile());
+    }
+
+    /**
+     * Opens a binary archive of the flight plans for each date, to be written one order at a time alongside the
+     * JSON files, from which any order's moves can be read back without parsing the whole day.
+     *
+     * @param date The date the orders were made on.
+     * @return The open archive, which only replaces the old one once it is finished.
+     */
+    public FlightArchiveWriter openFlightArchive(LocalDate date) throws IOException {
+        // Checks if the directory exists, if not it creates one, if it fails to do so, throw an exception.
+        if(checkDirectoryExists()) {
+            throw new IOException("OutputToFile - openFlightArchive: Failed to create directory");
+        }
+
+        return new FlightArchiveWriter(directory.resolve("flightpath-" + date.toString() + ".bin").toFile(), true);
     }
 
     /**
@@ -87,18 +318,43 @@ public class OutputToFile {
      * @param date              The date the orders were made on.
      */
     public void outputGeoJson(FeatureCollection featureCollection, LocalDate date) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-
         // Checks if the directory exists, if not it creates one, if it fails to do so, throw an exception.
         if(checkDirectoryExists()) {
             throw new IOException("OutputToFile - outputDeliveries: Failed to create directory");
         }
 
         // Tries to write Feature Collection to a GEO JSON.
+        long start = System.nanoTime();
         try {
-            mapper.writeValue(new File("resultFiles\\drone-" + date.toString() + ".geojson"), featureCollection);
+            writeAtomically("drone-" + date.toString() + ".geojson", GEO_JSON_WRITER, featureCollection);
         } catch (Exception e) {
             throw new IOException("OutputToFile - outputGeoJson: Failed to write flight paths to file: " + e);
+        } finally {
+            GEO_JSON_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Outputs the metrics of a run, as a JSON report and in the Prometheus text format.
+     *
+     * @param metrics The metrics of the run.
+     * @param run     The name of the run, such as the date or range of dates it processed.
+     */
+    public void outputMetrics(MetricsRegistry metrics, String run) throws IOException {
+        // Checks if the directory exists, if not it creates one, if it fails to do so, throw an exception.
+        if(checkDirectoryExists()) {
+            throw new IOException("OutputToFile - outputMetrics: Failed to create directory");
+        }
+
+        // Tries to write the report and the Prometheus text.
+        try {
+            writeAtomically("metrics-" + run + ".json", METRICS_WRITER, metrics.toReport());
+            try (AtomicFile prometheus = new AtomicFile(directory.resolve("metrics-" + run + ".prom"))) {
+                prometheus.stream().write(metrics.toPrometheus().getBytes(StandardCharsets.UTF_8));
+                prometheus.commit();
+            }
+        } catch (Exception e) {
+            throw new IOException("OutputToFile - outputMetrics: Failed to write metrics to file: " + e);
         }
     }
 
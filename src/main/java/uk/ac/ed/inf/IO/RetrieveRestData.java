@@ -2,20 +2,125 @@ package uk.ac.ed.inf.IO;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import uk.ac.ed.inf.Metrics.Counter;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.Metrics.Timer;
 import uk.ac.ed.inf.ilp.data.NamedRegion;
 import uk.ac.ed.inf.ilp.data.Order;
 import uk.ac.ed.inf.ilp.data.Restaurant;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Retrieves input data from a REST Sever.
+ * Retrieves input data from a REST Sever. All requests share one HTTP client, so connections are reused,
+ * and each type is read by a reader that is only created once. Every request can be made asynchronously,
+ * so that the data sets can be retrieved at the same time, and failed requests are retried. The static data
+ * sets can be kept in a {@link SnapshotStore}, so they are only downloaded again once they change.
  */
 public class RetrieveRestData {
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final Duration DEFAULT_RETRY_DELAY = Duration.ofMillis(500);
+    private static final int OK = 200;
+    private static final int NOT_MODIFIED = 304;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final ObjectReader ORDERS_READER = MAPPER.readerFor(Order[].class);
+    private static final ObjectReader ORDER_READER = MAPPER.readerFor(Order.class);
+    private static final ObjectReader RESTAURANTS_READER = MAPPER.readerFor(Restaurant[].class);
+    private static final ObjectReader NO_FLY_ZONES_READER = MAPPER.readerFor(NamedRegion[].class);
+    private static final ObjectReader CENTRAL_AREA_READER = MAPPER.readerFor(NamedRegion.class);
+
+    private static final String FETCH_METRIC = "pizzadronz_fetch_seconds";
+    private static final Timer ORDERS_TIMER = MetricsRegistry.global().timer(FETCH_METRIC, "data", "orders");
+    private static final Timer RESTAURANTS_TIMER = MetricsRegistry.global().timer(FETCH_METRIC, "data", "restaurants");
+    private static final Timer NO_FLY_ZONES_TIMER = MetricsRegistry.global().timer(FETCH_METRIC, "data", "noFlyZones");
+    private static final Timer CENTRAL_AREA_TIMER = MetricsRegistry.global().timer(FETCH_METRIC, "data", "centralArea");
+    private static final Counter RETRIES = MetricsRegistry.global().counter("pizzadronz_fetch_retries_total");
+
+    private final HttpClient client;
+    private final Duration timeout;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final SnapshotStore snapshots;
+
+    /**
+     * An unsuccessful HTTP status code, only server errors and too many requests are worth retrying.
+     */
+    private static final class StatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        StatusException(int status) {
+            super("HTTP status " + status);
+            this.status = status;
+        }
+
+        boolean isRetryable() {
+            return status >= 500 || status == 429;
+        }
+    }
 
     public RetrieveRestData() {
+        this(DEFAULT_TIMEOUT, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY);
+    }
+
+    /**
+     * Creates a retriever that keeps snapshots of the static data sets, the restaurants, no-fly zones and central area.
+     *
+     * @param snapshots The store of the last known-good snapshot of each static data set.
+     */
+    public RetrieveRestData(SnapshotStore snapshots) {
+        this(DEFAULT_TIMEOUT, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY, snapshots);
+    }
+
+    /**
+     * Creates a retriever with its own timeouts and retries.
+     *
+     * @param timeout     The time allowed to connect, and separately to receive a response to each request.
+     * @param maxAttempts The number of times a request is attempted before giving up, at least 1.
+     * @param retryDelay  The delay before the first retry, each later retry waits one more delay than the last.
+     */
+    public RetrieveRestData(Duration timeout, int maxAttempts, Duration retryDelay) {
+        this(timeout, maxAttempts, retryDelay, null);
+    }
+
+    /**
+     * Creates a retriever with its own timeouts and retries, that keeps snapshots of the static data sets.
+     *
+     * @param timeout     The time allowed to connect, and separately to receive a response to each request.
+     * @param maxAttempts The number of times a request is attempted before giving up, at least 1.
+     * @param retryDelay  The delay before the first retry, each later retry waits one more delay than the last.
+     * @param snapshots   The store of the last known-good snapshot of each static data set, null to not keep any.
+     */
+    public RetrieveRestData(Duration timeout, int maxAttempts, Duration retryDelay, SnapshotStore snapshots) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("RetrieveRestData: Max attempts must be at least 1, received "
+                    + maxAttempts);
+        }
+        this.timeout = timeout;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.snapshots = snapshots;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(timeout)
+                .build();
     }
 
     /**
@@ -25,19 +130,53 @@ public class RetrieveRestData {
      * @return An array of the orders for a given day.
      */
     public Order[] retrieveOrders(String apiUrl) throws IOException {
-        Order[] orders;
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
+        return await(retrieveOrdersAsync(apiUrl));
+    }
+
+    /**
+     * Retrieves Order data from the REST API without waiting for the response.
+     *
+     * @param apiUrl Rest API URL.
+     * @return The orders for a given day, once they have been retrieved.
+     */
+    public CompletableFuture<Order[]> retrieveOrdersAsync(String apiUrl) {
+        return fetch(apiUrl, ORDERS_READER, "orders", ORDERS_TIMER);
+    }
 
-        // Tries to retrieve orders from REST API.
+    /**
+     * Opens the Order data from the REST API to be read one order at a time as it arrives, rather than waiting
+     * for the whole response. Only connecting is retried, as the orders may already have been used once they
+     * start arriving.
+     *
+     * @param apiUrl Rest API URL.
+     * @return The orders for a given day, which must be closed once they have been read.
+     */
+    public OrderStream streamOrders(String apiUrl) throws IOException {
+        HttpRequest request;
         try {
-            URL url = new URL(apiUrl);
-            orders = objectMapper.readValue(url, Order[].class);
+            request = requestBuilder(apiUrl).build();
         } catch (Exception e) {
-            throw new IOException("RetrieveRestData: Failed to obtain orders" + e);
-            }
-
-        return orders;
+            throw failure("orders", e);
+        }
+        // Only the time until the orders start arriving is recorded, reading them is part of processing them.
+        long start = System.nanoTime();
+        return await(send(request, HttpResponse.BodyHandlers.ofInputStream(), 1)
+                .thenApply(response -> {
+                    try {
+                        if (response.statusCode() != OK) {
+                            response.body().close();
+                            throw new StatusException(response.statusCode());
+                        }
+                        return new OrderStream(response.body(), ORDER_READER);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                })
+                .handle((orders, failure) -> failure == null
+                        ? CompletableFuture.completedFuture(orders)
+                        : CompletableFuture.<OrderStream>failedFuture(failure("orders", failure)))
+                .thenCompose(orders -> orders)
+                .whenComplete((orders, failure) -> ORDERS_TIMER.recordSince(start)));
     }
 
     /**
@@ -47,19 +186,17 @@ public class RetrieveRestData {
      * @return An array of all the restaurants.
      */
     public Restaurant[] retrieveRestaurants(String apiUrl) throws IOException {
-        Restaurant[] restaurants;
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
-
-        // Tries to retrieve restaurants from REST API.
-        try {
-            URL url = new URL(apiUrl);
-            restaurants = objectMapper.readValue(url, Restaurant[].class);
-        } catch (Exception e) {
-            throw new IOException("RetrieveRestData: Failed to obtain restaurants" + e);
-        }
+        return await(retrieveRestaurantsAsync(apiUrl));
+    }
 
-        return restaurants;
+    /**
+     * Retrieves Restaurant data from the REST API without waiting for the response.
+     *
+     * @param apiUrl Rest API URL.
+     * @return All the restaurants, once they have been retrieved.
+     */
+    public CompletableFuture<Restaurant[]> retrieveRestaurantsAsync(String apiUrl) {
+        return fetchStatic(apiUrl, RESTAURANTS_READER, "restaurants", RESTAURANTS_TIMER);
     }
 
     /**
@@ -69,19 +206,17 @@ public class RetrieveRestData {
      * @return An array of the no-fly-zones.
      */
     public NamedRegion[] retrieveNoFlyZones(String apiUrl) throws IOException {
-        NamedRegion[] noFlyZones;
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
-
-        // Tries to retrieve noFlyZones from REST API.
-        try {
-            URL url = new URL(apiUrl);
-            noFlyZones = objectMapper.readValue(url, NamedRegion[].class);
-        } catch (Exception e) {
-            throw new IOException("RetrieveRestData: Failed to obtain no-fly-zones" + e);
-        }
+        return await(retrieveNoFlyZonesAsync(apiUrl));
+    }
 
-        return noFlyZones;
+    /**
+     * Retrieves NoFlyZone data from the REST API without waiting for the response.
+     *
+     * @param apiUrl Rest API URL.
+     * @return The no-fly-zones, once they have been retrieved.
+     */
+    public CompletableFuture<NamedRegion[]> retrieveNoFlyZonesAsync(String apiUrl) {
+        return fetchStatic(apiUrl, NO_FLY_ZONES_READER, "no-fly-zones", NO_FLY_ZONES_TIMER);
     }
 
 
@@ -92,21 +227,236 @@ public class RetrieveRestData {
      * @return The central area.
      */
     public NamedRegion retrieveCentralArea(String apiUrl) throws IOException {
-        NamedRegion centralArea;
+        return await(retrieveCentralAreaAsync(apiUrl));
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
+    /**
+     * Retrieves the central area without waiting for the response.
+     *
+     * @param apiUrl The URL of the Rest API.
+     * @return The central area, once it has been retrieved.
+     */
+    public CompletableFuture<NamedRegion> retrieveCentralAreaAsync(String apiUrl) {
+        return fetchStatic(apiUrl, CENTRAL_AREA_READER, "REST data for central area", CENTRAL_AREA_TIMER);
+    }
 
+    /**
+     * Waits for data that is being retrieved.
+     *
+     * @param data The data being retrieved.
+     * @return The retrieved data.
+     * @throws IOException If the data could not be retrieved.
+     */
+    public static <T> T await(CompletableFuture<T> data) throws IOException {
+        try {
+            return data.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("RetrieveRestData: Failed to obtain REST data" + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("RetrieveRestData: Interrupted while obtaining REST data");
+        }
+    }
 
-        // Tries to receive no-fly zones from REST API.
+    /**
+     * Requests data from the REST API and reads the response, retrying if the request fails.
+     *
+     * @param apiUrl      Rest API URL.
+     * @param reader      Reads the type of the data.
+     * @param description A description of the data for error messages.
+     * @param timer       Records how long the data took to retrieve.
+     * @return The data, once it has been retrieved, or an IOException if it could not be.
+     */
+    private <T> CompletableFuture<T> fetch(String apiUrl, ObjectReader reader, String description, Timer timer) {
+        HttpRequest request;
         try {
-            URL url = new URL(apiUrl);
-            centralArea = objectMapper.readValue(url, NamedRegion.class);
+            request = requestBuilder(apiUrl).build();
         } catch (Exception e) {
-            throw new IOException("RetrieveRestData: Failed to obtain REST data for central area" + e);
+            return CompletableFuture.failedFuture(failure(description, e));
+        }
+        long start = System.nanoTime();
+        return send(request, HttpResponse.BodyHandlers.ofByteArray(), 1)
+                .thenApply(response -> this.<T>read(response, reader))
+                .handle((data, failure) -> failure == null
+                        ? CompletableFuture.completedFuture(data)
+                        : CompletableFuture.<T>failedFuture(failure(description, failure)))
+                .thenCompose(data -> data)
+                .whenComplete((data, failure) -> timer.recordSince(start));
+    }
 
+    /**
+     * Requests a static data set as {@link #fetch} does, using the snapshot store if there is one. If the data set
+     * hasn't changed since its snapshot, the snapshot is used rather than downloading it again, and if the request
+     * fails the last known-good snapshot is used.
+     *
+     * @param apiUrl      Rest API URL.
+     * @param reader      Reads the type of the data.
+     * @param description A description of the data for error messages.
+     * @param timer       Records how long the data took to retrieve.
+     * @return The data, once it has been retrieved, or an IOException if it could not be.
+     */
+    private <T> CompletableFuture<T> fetchStatic(String apiUrl, ObjectReader reader, String description, Timer timer) {
+        if (snapshots == null) {
+            return fetch(apiUrl, reader, description, timer);
         }
 
-        return centralArea;
+        SnapshotStore.Snapshot snapshot = snapshots.get(apiUrl);
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = requestBuilder(apiUrl);
+            // Asks the server to only send the data set if it has changed since the snapshot.
+            if (snapshot != null && snapshot.etag != null) {
+                builder.header("If-None-Match", snapshot.etag);
+            }
+            if (snapshot != null && snapshot.lastModified != null) {
+                builder.header("If-Modified-Since", snapshot.lastModified);
+            }
+            request = builder.build();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(failure(description, e));
+        }
+
+        long start = System.nanoTime();
+        return send(request, HttpResponse.BodyHandlers.ofByteArray(), 1)
+                .thenApply(response -> {
+                    try {
+                        if (response.statusCode() == NOT_MODIFIED && snapshot != null) {
+                            snapshots.recordHit();
+                            return snapshot.<T>value(reader);
+                        }
+                        T data = read(response, reader);
+                        snapshots.recordMiss();
+                        snapshots.put(apiUrl, response.headers().firstValue("ETag").orElse(null),
+                                response.headers().firstValue("Last-Modified").orElse(null), response.body(), data);
+                        return data;
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                })
+                .handle((data, failure) -> {
+                    if (failure == null) {
+                        return CompletableFuture.completedFuture(data);
+                    }
+                    IOException cause = failure(description, failure);
+                    if (snapshot == null) {
+                        return CompletableFuture.<T>failedFuture(cause);
+                    }
+
+                    // Carries on with the last known-good data set, so a brief outage doesn't stop the run.
+                    try {
+                        T snapshotData = snapshot.value(reader);
+                        snapshots.recordFallback();
+                        System.err.println(cause.getMessage() + ", using the last known-good snapshot...");
+                        return CompletableFuture.completedFuture(snapshotData);
+                    } catch (IOException e) {
+                        return CompletableFuture.<T>failedFuture(cause);
+                    }
+                })
+                .thenCompose(data -> data)
+                .whenComplete((data, failure) -> timer.recordSince(start));
+    }
+
+    /**
+     * Starts building a request to the REST API.
+     *
+     * @param apiUrl Rest API URL.
+     * @return The request builder.
+     */
+    private HttpRequest.Builder requestBuilder(String apiUrl) {
+        return HttpRequest.newBuilder(URI.create(apiUrl))
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET();
+    }
+
+    /**
+     * Makes one attempt at a request, and if it fails in a way that is worth retrying, schedules the next attempt.
+     * A response is only successful if it is OK or not modified.
+     *
+     * @param request     The request to make.
+     * @param bodyHandler Handles the body of the response.
+     * @param attempt     The number of this attempt, starting at 1.
+     * @return The response, once it has been received, or the reason the last attempt failed.
+     */
+    private <B> CompletableFuture<HttpResponse<B>> send(HttpRequest request, HttpResponse.BodyHandler<B> bodyHandler,
+                                                        int attempt) {
+        return client.sendAsync(request, bodyHandler)
+                .thenApply(response -> {
+                    if (response.statusCode() != OK && response.statusCode() != NOT_MODIFIED) {
+                        // A body that is still being received has to be closed to release the connection.
+                        if (response.body() instanceof Closeable body) {
+                            try {
+                                body.close();
+                            } catch (IOException ignored) {
+                                // The request has failed either way.
+                            }
+                        }
+                        throw new CompletionException(new StatusException(response.statusCode()));
+                    }
+                    return response;
+                })
+                .handle((response, failure) -> {
+                    if (failure == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    if (attempt < maxAttempts && isRetryable(cause)) {
+                        RETRIES.increment();
+                        Executor delay = CompletableFuture.delayedExecutor(retryDelay.toMillis() * attempt,
+                                TimeUnit.MILLISECONDS);
+                        return CompletableFuture.runAsync(() -> {
+                        }, delay).thenCompose(ignored -> send(request, bodyHandler, attempt + 1));
+                    }
+                    return CompletableFuture.<HttpResponse<B>>failedFuture(cause);
+                })
+                .thenCompose(response -> response);
+    }
+
+    /**
+     * Reads the data from a response.
+     *
+     * @param response The response to a request.
+     * @param reader   Reads the type of the data.
+     * @return The data.
+     */
+    private <T> T read(HttpResponse<byte[]> response, ObjectReader reader) {
+        try {
+            // A request that wasn't conditional should never be answered with not modified.
+            if (response.statusCode() != OK) {
+                throw new StatusException(response.statusCode());
+            }
+            return reader.readValue(response.body());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Creates the exception for a data set that could not be retrieved.
+     *
+     * @param description A description of the data for the error message.
+     * @param failure     The reason it could not be retrieved.
+     * @return The exception.
+     */
+    private static IOException failure(String description, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        return new IOException("RetrieveRestData: Failed to obtain " + description + cause);
+    }
+
+    /**
+     * Checks if a failed request is worth retrying, only failures to get a response and server errors are.
+     *
+     * @param cause The reason the request failed.
+     * @return True if the request should be retried, false otherwise.
+     */
+    private static boolean isRetryable(Throwable cause) {
+        if (cause instanceof StatusException status) {
+            return status.isRetryable();
+        }
+        return cause instanceof IOException;
     }
 }
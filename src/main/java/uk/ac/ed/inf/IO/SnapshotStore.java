@@ -0,0 +1,195 @@
+package uk.ac.ed.inf.IO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stores the last known-good response of each static REST data set on disk, along with the ETag and
+ * Last-Modified headers it was served with. The headers let {@link RetrieveRestData} make conditional
+ * requests, so unchanged data is neither downloaded nor parsed again, and the stored response is used
+ * if the server cannot be reached. Counts are kept of how often a snapshot was used and how often it wasn't.
+ */
+public class SnapshotStore {
+    private static final int FILE_VERSION = 1;
+
+    private final File directory;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * A response as it is stored in a snapshot file.
+     */
+    private record SnapshotFile(int version, String url, String etag, String lastModified, byte[] body) {
+    }
+
+    /**
+     * A stored response, the body is only parsed the first time it is used.
+     */
+    static final class Snapshot {
+        final String etag;
+        final String lastModified;
+        private final byte[] body;
+        private volatile Object value;
+
+        private Snapshot(String etag, String lastModified, byte[] body, Object value) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+            this.value = value;
+        }
+
+        /**
+         * Gets the data of the response, parsing it if it hasn't been already.
+         *
+         * @param reader Reads the type of the data.
+         * @return The data.
+         * @throws IOException If the stored body cannot be read.
+         */
+        @SuppressWarnings("unchecked")
+        <T> T value(ObjectReader reader) throws IOException {
+            Object parsed = value;
+            if (parsed == null) {
+                parsed = reader.readValue(body);
+                value = parsed;
+            }
+            return (T) parsed;
+        }
+    }
+
+    /**
+     * Creates a store that keeps its snapshots in a directory, the directory is created when the first
+     * snapshot is saved.
+     *
+     * @param directory The directory to keep the snapshots in.
+     */
+    public SnapshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the snapshot of a URL, loading it from disk if it hasn't been used yet in this run.
+     *
+     * @param url The URL of the data set.
+     * @return The snapshot, or null if there is none.
+     */
+    Snapshot get(String url) {
+        Snapshot snapshot = snapshots.get(url);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        File file = fileOf(url);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            SnapshotFile snapshotFile = mapper.readValue(file, SnapshotFile.class);
+            // Snapshots from an older layout, or of another URL with the same file name, are ignored.
+            if (snapshotFile.version() != FILE_VERSION || !url.equals(snapshotFile.url()) || snapshotFile.body() == null) {
+                return null;
+            }
+            snapshot = new Snapshot(snapshotFile.etag(), snapshotFile.lastModified(), snapshotFile.body(), null);
+        } catch (Exception e) {
+            System.err.println("SnapshotStore - get: Failed to read snapshot " + file + ": " + e + ", ignoring it...");
+            return null;
+        }
+        Snapshot existing = snapshots.putIfAbsent(url, snapshot);
+        return existing != null ? existing : snapshot;
+    }
+
+    /**
+     * Stores a new snapshot of a URL, a failure to save it to disk only means it won't be available to later runs.
+     *
+     * @param url          The URL of the data set.
+     * @param etag         The ETag header of the response, or null.
+     * @param lastModified The Last-Modified header of the response, or null.
+     * @param body         The body of the response.
+     * @param value        The data parsed from the body.
+     */
+    void put(String url, String etag, String lastModified, byte[] body, Object value) {
+        Snapshot previous = snapshots.put(url, new Snapshot(etag, lastModified, body, value));
+        // Nothing to save if the server sent the same response again.
+        if (previous != null && Arrays.equals(previous.body, body)
+                && Objects.equals(previous.etag, etag)
+                && Objects.equals(previous.lastModified, lastModified)) {
+            return;
+        }
+
+        File file = fileOf(url);
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to create directory " + directory);
+            }
+            // Replaces the old snapshot only once the new one is written, so a run that is killed part of the way
+            // through leaves the old snapshot rather than a cut short one.
+            try (AtomicFile atomicFile = new AtomicFile(file.toPath())) {
+                mapper.writeValue(atomicFile.stream(), new SnapshotFile(FILE_VERSION, url, etag, lastModified, body));
+                atomicFile.commit();
+            }
+        } catch (Exception e) {
+            System.err.println("SnapshotStore - put: Failed to save snapshot " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Gets the file the snapshot of a URL is kept in.
+     *
+     * @param url The URL of the data set.
+     * @return The snapshot file.
+     */
+    private File fileOf(String url) {
+        return new File(directory, UUID.nameUUIDFromBytes(url.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordFallback() {
+        fallbacks.increment();
+    }
+
+    /**
+     * Gets the number of requests answered with "not modified", so the snapshot was used.
+     *
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of requests that downloaded the data set, as it had changed or there was no snapshot.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of requests that failed, so the last known-good snapshot was used instead.
+     *
+     * @return The number of fallbacks.
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+}
@@ -0,0 +1,152 @@
+package uk.ac.ed.inf.IO;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.Metrics.Timer;
+import uk.ac.ed.inf.OutputClasses.FlightPath;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the flight path JSON and the drone GEO JSON one order at a time, instead of collecting a whole day of
+ * moves before writing them. The files are byte for byte the same as the ones written by {@link OutputToFile},
+ * but only the moves of the order being written are ever held in memory. Neither file replaces the old one until
+ * {@link #finish()} is called, closing the output without finishing it discards both files, so a day that fails
+ * part way through leaves the previous files as they were.
+ */
+public class StreamingFlightOutput implements Closeable {
+    private static final Timer WRITE_TIMER = MetricsRegistry.global().timer("pizzadronz_output_seconds", "file", "stream");
+
+    private final AtomicFile flightPathFile;
+    private final AtomicFile geoJsonFile;
+    private final JsonGenerator flightPathGenerator;
+    private final JsonGenerator geoJsonGenerator;
+    private final ObjectWriter flightPathWriter;
+
+    /**
+     * Opens both files and writes everything that comes before the first move.
+     *
+     * @param flightPathFile The file to write the flight paths to.
+     * @param geoJsonFile    The file to write the GEO JSON to.
+     */
+    public StreamingFlightOutput(File flightPathFile, File geoJsonFile) throws IOException {
+        // Flushing after every move would defeat the generator's buffer, the files are flushed when closed.
+        ObjectMapper mapper = new ObjectMapper().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        flightPathWriter = mapper.writerFor(FlightPath.class);
+
+        try {
+            this.flightPathFile = new AtomicFile(flightPathFile.toPath());
+            flightPathGenerator = mapper.getFactory().createGenerator(this.flightPathFile.stream(), JsonEncoding.UTF8);
+        } catch (Exception e) {
+            throw new IOException("StreamingFlightOutput: Failed to open flight path file: " + e);
+        }
+        try {
+            this.geoJsonFile = new AtomicFile(geoJsonFile.toPath());
+            geoJsonGenerator = mapper.getFactory().createGenerator(this.geoJsonFile.stream(), JsonEncoding.UTF8);
+        } catch (Exception e) {
+            this.flightPathFile.close();
+            throw new IOException("StreamingFlightOutput: Failed to open GEO JSON file: " + e);
+        }
+
+        // The flight paths are a single array of moves.
+        flightPathGenerator.writeStartArray();
+
+        // The GEO JSON is a single feature, with a line string through every position the drone visits.
+        geoJsonGenerator.writeStartObject();
+        geoJsonGenerator.writeStringField("type", "FeatureCollection");
+        geoJsonGenerator.writeArrayFieldStart("features");
+        geoJsonGenerator.writeStartObject();
+        geoJsonGenerator.writeStringField("type", "Feature");
+        geoJsonGenerator.writeObjectFieldStart("properties");
+        geoJsonGenerator.writeNullField("name");
+        geoJsonGenerator.writeEndObject();
+        geoJsonGenerator.writeObjectFieldStart("geometry");
+        geoJsonGenerator.writeStringField("type", "LineString");
+        geoJsonGenerator.writeArrayFieldStart("coordinates");
+    }
+
+    /**
+     * Writes the moves of an order to both files.
+     *
+     * @param flightPaths The moves of the order in the JSON output class.
+     * @param lngLats     The positions the drone visits during the order.
+     */
+    public void write(List<FlightPath> flightPaths, List<LngLat> lngLats) throws IOException {
+        long start = System.nanoTime();
+        try {
+            for (FlightPath flightPath : flightPaths) {
+                flightPathWriter.writeValue(flightPathGenerator, flightPath);
+            }
+            for (LngLat lngLat : lngLats) {
+                geoJsonGenerator.writeStartArray();
+                geoJsonGenerator.writeNumber(lngLat.lng());
+                geoJsonGenerator.writeNumber(lngLat.lat());
+                geoJsonGenerator.writeEndArray();
+            }
+        } catch (Exception e) {
+            throw new IOException("StreamingFlightOutput - write: Failed to write flight paths to file: " + e);
+        } finally {
+            WRITE_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Writes everything that comes after the last move, and moves both finished files into place.
+     *
+     * @throws IOException If either file cannot be written.
+     */
+    public void finish() throws IOException {
+        finish(new AtomicFile[0]);
+    }
+
+    /**
+     * Writes everything that comes after the last move, and moves both finished files into place together with
+     * other files of the same day, none of which are moved unless all of them were written.
+     *
+     * @param others The other files of the day, which are already written.
+     * @throws IOException If any of the files cannot be written.
+     */
+    void finish(AtomicFile... others) throws IOException {
+        try {
+            flightPathGenerator.writeEndArray();
+
+            // Ends the coordinates, geometry, feature, features and feature collection.
+            geoJsonGenerator.writeEndArray();
+            geoJsonGenerator.writeEndObject();
+            geoJsonGenerator.writeEndObject();
+            geoJsonGenerator.writeEndArray();
+            geoJsonGenerator.writeEndObject();
+
+            flightPathGenerator.close();
+            geoJsonGenerator.close();
+
+            AtomicFile[] files = Arrays.copyOf(others, others.length + 2);
+            files[others.length] = flightPathFile;
+            files[others.length + 1] = geoJsonFile;
+            AtomicFile.commitAll(files);
+        } catch (Exception e) {
+            throw new IOException("StreamingFlightOutput - finish: Failed to finish writing flight paths to file: " + e);
+        }
+    }
+
+    /**
+     * Closes both files, discarding them if the output wasn't finished.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flightPathFile.close();
+        } finally {
+            geoJsonFile.close();
+        }
+    }
+}
@@ -5,13 +5,37 @@ import uk.ac.ed.inf.ilp.data.NamedRegion;
 import uk.ac.ed.inf.ilp.constant.*;
 import uk.ac.ed.inf.ilp.interfaces.LngLatHandling;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-
 /**
  * Performs important operations with the LngLat class for finding the flight path of the drone.
  */
 public class LngLatHandler implements LngLatHandling {
+    /*
+        Distances used to be rounded to 5 decimal places before being compared to the tolerance, as due to how
+        doubles work a distance of just 1.5e-4 would otherwise be 1.4999999999999998. Rounding to 5 places means
+        a distance is close when it is less than the tolerance minus half of the fifth decimal place.
+     */
+    private static final double DISTANCE_PRECISION = 1e5;
+    private static final double CLOSE_EPSILON = 0.5 / DISTANCE_PRECISION;
+    private static final double CLOSE_DISTANCE = SystemConstants.DRONE_IS_CLOSE_DISTANCE - CLOSE_EPSILON;
+    private static final double CLOSE_DISTANCE_SQUARED = CLOSE_DISTANCE * CLOSE_DISTANCE;
+
+    /*
+        The change in longitude and latitude of a move in each of the 16 compass directions, direction d being the
+        angle d * 22.5. Each step is the exact product nextPosition would calculate, so adding it to a position gives
+        the same position bit for bit, without calling toRadians, cos and sin for every move.
+     */
+    private static final int COMPASS_DIRECTIONS = 16;
+    private static final double COMPASS_ANGLE = 360.0 / COMPASS_DIRECTIONS;
+    private static final double[] STEP_LNGS = new double[COMPASS_DIRECTIONS];
+    private static final double[] STEP_LATS = new double[COMPASS_DIRECTIONS];
+
+    static {
+        for (int direction = 0; direction < COMPASS_DIRECTIONS; direction++) {
+            double angle = Math.toRadians(direction * COMPASS_ANGLE);
+            STEP_LNGS[direction] = SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(angle);
+            STEP_LATS[direction] = SystemConstants.DRONE_MOVE_DISTANCE * Math.sin(angle);
+        }
+    }
 
     public LngLatHandler() {
     }
@@ -21,44 +45,44 @@ public class LngLatHandler implements LngLatHandling {
      *
      * @param startPosition The starting position as longitude and latitude.
      * @param endPosition   The ending position as longitude and latitude.
-     * @return The distance between the two points in degrees.
+     * @return The distance between the two points in degrees, rounded to 5 decimal places.
      */
     public double distanceTo(LngLat startPosition, LngLat endPosition) {
-        double lng1, lng2, lat1, lat2, distance;
-        // If the position is ever greater, flip to the other side of the world.
-        lng1 = startPosition.lng();
-        lng2 = endPosition.lng();
-        lat1 = startPosition.lat();
-        lat2 = endPosition.lat();
-
         // Checks if all the positions are valid
-        if (Math.abs(lng1) > 180) {
-            throw new IllegalStateException("LngLatHandler - nextPosition: Position - " + lng1 + " in position ("
-                    + lat1 + ", " + lng1 + ")  (lat, lng) is invalid");
-        }
-        if (Math.abs(lng2) > 180) {
-            throw new IllegalStateException("LngLatHandler - nextPosition: Position - " + lng2 + " in position ("
-                    + lat2 + ", " + lng2 + ")  (lat, lng) is invalid");
-        }
-        if (Math.abs(lat1) > 90) {
-            throw new IllegalStateException("LngLatHandler - nextPosition: Position - " + lat1 + " in position ("
-                    + lat1 + ", " + lng1 + ")  (lat, lng) is invalid");
-        }
-        if (Math.abs(lat2) > 90) {
-            throw new IllegalStateException("LngLatHandler - nextPosition: Position - " + lat2 + " in position ("
-                    + lat2 + ", " + lng2 + ")  (lat, lng) is invalid");
-        }
+        validatePosition("distanceTo", startPosition.lng(), startPosition.lat());
+        validatePosition("distanceTo", endPosition.lng(), endPosition.lat());
 
-        // Distance Formula
-        distance = Math.sqrt(Math.pow(lng2 - lng1, 2) + Math.pow(lat2 - lat1, 2));
-        /*
-            Due to how doubles work, if the is distance to is just at 1.5e-4 the distance will be 1.4999999999999998
-            which is not equal to 1.5e-4. This causes isCloseTo to return true instead of false. So we round to 5
-            places.
-         */
-        BigDecimal bd = new BigDecimal(distance);
-        bd = bd.setScale(5, RoundingMode.HALF_UP);
-        return bd.doubleValue();
+        double distance = distanceTo(startPosition.lng(), startPosition.lat(), endPosition.lng(), endPosition.lat());
+        return Math.round(distance * DISTANCE_PRECISION) / DISTANCE_PRECISION;
+    }
+
+    /**
+     * Calculates the exact distance between two points, without validating or rounding either point.
+     * This is the fast path for the path search, which only ever generates valid positions.
+     *
+     * @param lng1 The longitude of the starting position.
+     * @param lat1 The latitude of the starting position.
+     * @param lng2 The longitude of the ending position.
+     * @param lat2 The latitude of the ending position.
+     * @return The distance between the two points in degrees.
+     */
+    public double distanceTo(double lng1, double lat1, double lng2, double lat2) {
+        return Math.sqrt(squaredDistanceTo(lng1, lat1, lng2, lat2));
+    }
+
+    /**
+     * Calculates the squared distance between two points, for comparing distances without a square root.
+     *
+     * @param lng1 The longitude of the starting position.
+     * @param lat1 The latitude of the starting position.
+     * @param lng2 The longitude of the ending position.
+     * @param lat2 The latitude of the ending position.
+     * @return The squared distance between the two points in degrees.
+     */
+    public double squaredDistanceTo(double lng1, double lat1, double lng2, double lat2) {
+        double lngDistance = lng2 - lng1;
+        double latDistance = lat2 - lat1;
+        return lngDistance * lngDistance + latDistance * latDistance;
     }
 
     /**
@@ -69,8 +93,22 @@ public class LngLatHandler implements LngLatHandling {
      * @return True if the two points are close to each other, false otherwise.
      */
     public boolean isCloseTo(LngLat startPosition, LngLat otherPosition) {
-        double tolerance = SystemConstants.DRONE_IS_CLOSE_DISTANCE;
-        return distanceTo(startPosition, otherPosition) < tolerance;
+        validatePosition("isCloseTo", startPosition.lng(), startPosition.lat());
+        validatePosition("isCloseTo", otherPosition.lng(), otherPosition.lat());
+        return isCloseTo(startPosition.lng(), startPosition.lat(), otherPosition.lng(), otherPosition.lat());
+    }
+
+    /**
+     * Checks if two points are close to each other, without validating either point.
+     *
+     * @param lng1 The longitude of the starting position.
+     * @param lat1 The latitude of the starting position.
+     * @param lng2 The longitude of the ending position.
+     * @param lat2 The latitude of the ending position.
+     * @return True if the two points are close to each other, false otherwise.
+     */
+    public boolean isCloseTo(double lng1, double lat1, double lng2, double lat2) {
+        return squaredDistanceTo(lng1, lat1, lng2, lat2) < CLOSE_DISTANCE_SQUARED;
     }
 
     /**
@@ -124,17 +162,16 @@ public class LngLatHandler implements LngLatHandling {
         double lng1, lng2, lat1, lat2;
         lng1 = startPosition.lng();
         lat1 = startPosition.lat();
-        angle = Math.toRadians(angle);  // Java sin and cos only take radians.
 
         // Checks if all the positions are valid.
-        if (Math.abs(lng1) > 180) {
-            throw new IllegalStateException("LngLatHandler - nextPosition: Position - " + lng1 + " in position ("
-                    + lat1 + ", " + lng1 + ")  (lat, lng) is invalid");
-        }
-        if (Math.abs(lat1) > 90) {
-            throw new IllegalStateException("LngLatHandler - nextPosition: Position - " + lat1 +  "in position ("
-                    + lat1 + ", " + lng1 + "), (lat, lng) is invalid");
+        validatePosition("nextPosition", lng1, lat1);
+
+        // The 16 compass directions use their precomputed step, any other angle is calculated.
+        int direction = (int) (angle / COMPASS_ANGLE);
+        if (direction >= 0 && direction < COMPASS_DIRECTIONS && direction * COMPASS_ANGLE == angle) {
+            return new LngLat(lng1 + STEP_LNGS[direction], lat1 + STEP_LATS[direction]);
         }
+        angle = Math.toRadians(angle);  // Java sin and cos only take radians.
 
         // Calculates new x and y positions.
         lng2 = lng1 + (SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(angle));
@@ -142,4 +179,51 @@ public class LngLatHandler implements LngLatHandling {
         return new LngLat(lng2, lat2);
     }
 
+    /**
+     * Calculates the position after a move in each of the 16 compass directions, without creating any objects.
+     * Each position is the same, bit for bit, as {@link #nextPosition} gives for the angle of the direction.
+     *
+     * @param lng  The longitude of the starting position.
+     * @param lat  The latitude of the starting position.
+     * @param lngs Filled with the longitude after a move in each direction, direction d being the angle d * 22.5.
+     * @param lats Filled with the latitude after a move in each direction.
+     */
+    public void compassNeighbours(double lng, double lat, double[] lngs, double[] lats) {
+        validatePosition("compassNeighbours", lng, lat);
+        for (int direction = 0; direction < COMPASS_DIRECTIONS; direction++) {
+            lngs[direction] = lng + STEP_LNGS[direction];
+            lats[direction] = lat + STEP_LATS[direction];
+        }
+    }
+
+    /**
+     * Checks that a position is a valid longitude and latitude, for callers that go on to use the methods taking
+     * raw longitudes and latitudes, which don't validate them.
+     *
+     * @param position The position to check.
+     * @throws IllegalStateException If the longitude or latitude is out of range.
+     */
+    public void validatePosition(LngLat position) {
+        validatePosition("validatePosition", position.lng(), position.lat());
+    }
+
+    /**
+     * Checks that a position is a valid longitude and latitude.
+     *
+     * @param method The name of the method the position was passed to, for the exception message.
+     * @param lng    The longitude of the position.
+     * @param lat    The latitude of the position.
+     * @throws IllegalStateException If the longitude or latitude is out of range.
+     */
+    private void validatePosition(String method, double lng, double lat) {
+        if (Math.abs(lng) > 180) {
+            throw new IllegalStateException("LngLatHandler - " + method + ": Position - " + lng + " in position ("
+                    + lat + ", " + lng + ")  (lat, lng) is invalid");
+        }
+        if (Math.abs(lat) > 90) {
+            throw new IllegalStateException("LngLatHandler - " + method + ": Position - " + lat + " in position ("
+                    + lat + ", " + lng + ")  (lat, lng) is invalid");
+        }
+    }
+
 }
@@ -0,0 +1,115 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.data.Pizza;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * An index of the menus of a set of restaurants, built once so that finding which restaurants sell a pizza
+ * and whether a restaurant is open takes the same time however many restaurants and menu items there are.
+ * It is shared by order validation and flight path calculation, and never changes once built, so it can be
+ * used on many threads at once.
+ */
+public final class MenuIndex {
+    private final Restaurant[] sourceRestaurants;
+    private final Map<Pizza, List<Restaurant>> restaurantsByPizza = new HashMap<>();
+    private final Map<Restaurant, Set<DayOfWeek>> openingDays = new HashMap<>();
+
+    /**
+     * Builds the index of a set of restaurants. A restaurant with no menu sells nothing, and one with no
+     * opening days is never open.
+     *
+     * @param restaurants The restaurants orders can be made from.
+     */
+    private MenuIndex(Restaurant[] restaurants) {
+        this.sourceRestaurants = restaurants;
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant.menu() != null) {
+                for (Pizza pizza : restaurant.menu()) {
+                    List<Restaurant> sellers = restaurantsByPizza.computeIfAbsent(pizza, key -> new ArrayList<>(1));
+                    // Restaurants are kept in the order they were given, each only once per pizza.
+                    if (!sellers.contains(restaurant)) {
+                        sellers.add(restaurant);
+                    }
+                }
+            }
+
+            EnumSet<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+            if (restaurant.openingDays() != null) {
+                Collections.addAll(days, restaurant.openingDays());
+            }
+            // The first of two equal restaurants is kept, which has the same opening days anyway.
+            openingDays.putIfAbsent(restaurant, Collections.unmodifiableSet(days));
+        }
+
+        restaurantsByPizza.replaceAll((pizza, sellers) -> List.copyOf(sellers));
+    }
+
+    /**
+     * Builds the index of a set of restaurants.
+     *
+     * @param restaurants The restaurants orders can be made from.
+     * @return The index of the restaurants' menus.
+     */
+    public static MenuIndex build(Restaurant[] restaurants) {
+        if (restaurants == null) {
+            throw new NullPointerException("MenuIndex - build: Restaurants are null");
+        }
+        return new MenuIndex(restaurants);
+    }
+
+    /**
+     * Checks if the index was built from the given restaurants, so it can be reused rather than built again.
+     *
+     * @param restaurants The restaurants.
+     * @return True if the index was built from the same array of restaurants, false otherwise.
+     */
+    public boolean isBuiltFrom(Restaurant[] restaurants) {
+        return sourceRestaurants == restaurants;
+    }
+
+    /**
+     * Checks if a pizza is on the menu of any restaurant.
+     *
+     * @param pizza The pizza.
+     * @return True if the pizza can be ordered, false otherwise.
+     */
+    public boolean isDefined(Pizza pizza) {
+        return restaurantsByPizza.containsKey(pizza);
+    }
+
+    /**
+     * Gets every restaurant that has a pizza on its menu.
+     *
+     * @param pizza The pizza.
+     * @return The restaurants in the order they were given, empty if the pizza is not on any menu.
+     */
+    public List<Restaurant> getRestaurants(Pizza pizza) {
+        return restaurantsByPizza.getOrDefault(pizza, List.of());
+    }
+
+    /**
+     * Gets the first restaurant that has a pizza on its menu.
+     *
+     * @param pizza The pizza.
+     * @return The restaurant, or null if the pizza is not on any menu.
+     */
+    public Restaurant getRestaurant(Pizza pizza) {
+        List<Restaurant> sellers = restaurantsByPizza.get(pizza);
+        return sellers == null ? null : sellers.get(0);
+    }
+
+    /**
+     * Checks if a restaurant is open on a day.
+     *
+     * @param restaurant One of the restaurants of the index.
+     * @param day        The day of the week.
+     * @return True if the restaurant is open on the day, false otherwise.
+     */
+    public boolean isOpen(Restaurant restaurant, DayOfWeek day) {
+        Set<DayOfWeek> days = openingDays.get(restaurant);
+        return days != null && days.contains(day);
+    }
+}
@@ -0,0 +1,38 @@
+package uk.ac.ed.inf.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, many threads can add to it at once without contending on a lock.
+ */
+public final class Counter {
+    private final LongAdder count = new LongAdder();
+
+    Counter() {
+    }
+
+    /**
+     * Adds one to the count.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Adds to the count.
+     *
+     * @param amount The amount to add, at least 0.
+     */
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    /**
+     * Gets the count.
+     *
+     * @return The count so far.
+     */
+    public long get() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,138 @@
+package uk.ac.ed.inf.Metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the distribution of non-negative values in the style of an HDR histogram, without locks. Values below
+ * 16 are counted exactly, larger values are counted in 8 buckets per power of two, so a percentile is never more
+ * than 12.5% above the true value, however large the values are, in a fixed 488 buckets.
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_LIMIT = 2 * SUB_BUCKETS;   // Values below this have their own bucket.
+    private static final int EXACT_BITS = SUB_BUCKET_BITS + 1;
+    private static final int BUCKET_COUNT = EXACT_LIMIT + (Long.SIZE - 1 - EXACT_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+    }
+
+    /**
+     * Records a value, negative values are recorded as 0.
+     *
+     * @param value The value.
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Gets the bucket a value is counted in.
+     *
+     * @param value The value, at least 0.
+     * @return The index of the bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < EXACT_LIMIT) {
+            return (int) value;
+        }
+        // The highest set bit picks the power of two, the next 3 bits pick the bucket within it.
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_LIMIT + (exponent - EXACT_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the largest value counted in a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The largest value of the bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < EXACT_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT_LIMIT) / SUB_BUCKETS + EXACT_BITS;
+        int subBucket = (bucket - EXACT_LIMIT) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + ((1L << shift) - 1);
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return The number of values.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of the values recorded.
+     *
+     * @return The sum of the values.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return The largest value, or 0 if none have been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     *
+     * @return The mean, or 0 if none have been recorded.
+     */
+    public double getMean() {
+        long values = getCount();
+        return values == 0 ? 0 : (double) getSum() / values;
+    }
+
+    /**
+     * Gets a percentile of the values recorded, as the largest value of the bucket it falls in, but no more
+     * than the largest value recorded.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value at the percentile, or 0 if none have been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,233 @@
+package uk.ac.ed.inf.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds the counters, gauges, histograms and timers of a run by name, and reports them as a JSON-ready map
+ * or in the Prometheus text format. A metric is only looked up when it is created, so code on a hot path
+ * should keep the metric it records to rather than looking it up every time. Recording never takes a lock.
+ */
+public final class MetricsRegistry {
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final ConcurrentNavigableMap<MetricId, Counter> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<MetricId, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<MetricId, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<MetricId, Timer> timers = new ConcurrentSkipListMap<>();
+
+    /**
+     * The name and labels of a metric, metrics are sorted by name so metrics with the same name are reported together.
+     *
+     * @param name   The name of the metric.
+     * @param labels The labels in the Prometheus format, such as code="NO_ERROR", empty if there are none.
+     */
+    private record MetricId(String name, String labels) implements Comparable<MetricId> {
+        @Override
+        public int compareTo(MetricId other) {
+            int byName = name.compareTo(other.name);
+            return byName != 0 ? byName : labels.compareTo(other.labels);
+        }
+
+        @Override
+        public String toString() {
+            return labels.isEmpty() ? name : name + "{" + labels + "}";
+        }
+
+        /**
+         * Formats the metric with an extra label.
+         *
+         * @param suffix The suffix of the name.
+         * @param label  The extra label in the Prometheus format, or empty for none.
+         * @return The metric as it appears in the Prometheus format.
+         */
+        String format(String suffix, String label) {
+            String allLabels = labels.isEmpty() ? label : label.isEmpty() ? labels : labels + "," + label;
+            return name + suffix + (allLabels.isEmpty() ? "" : "{" + allLabels + "}");
+        }
+    }
+
+    public MetricsRegistry() {
+    }
+
+    /**
+     * Gets the registry the whole program records to.
+     *
+     * @return The global registry.
+     */
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Gets a counter, creating it if it doesn't exist yet.
+     *
+     * @param name   The name of the counter.
+     * @param labels Pairs of label names and values.
+     * @return The counter.
+     */
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(idOf(name, labels), id -> new Counter());
+    }
+
+    /**
+     * Gets a histogram, creating it if it doesn't exist yet.
+     *
+     * @param name   The name of the histogram.
+     * @param labels Pairs of label names and values.
+     * @return The histogram.
+     */
+    public Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(idOf(name, labels), id -> new Histogram());
+    }
+
+    /**
+     * Gets a timer, creating it if it doesn't exist yet. Times are reported in seconds.
+     *
+     * @param name   The name of the timer.
+     * @param labels Pairs of label names and values.
+     * @return The timer.
+     */
+    public Timer timer(String name, String... labels) {
+        return timers.computeIfAbsent(idOf(name, labels), id -> new Timer());
+    }
+
+    /**
+     * Sets a gauge, a value that is read when the metrics are reported, replacing any gauge with the same name.
+     *
+     * @param name   The name of the gauge.
+     * @param value  Reads the value of the gauge.
+     * @param labels Pairs of label names and values.
+     */
+    public void gauge(String name, LongSupplier value, String... labels) {
+        gauges.put(idOf(name, labels), value);
+    }
+
+    /**
+     * Creates the id of a metric.
+     *
+     * @param name   The name of the metric.
+     * @param labels Pairs of label names and values.
+     * @return The id.
+     */
+    private static MetricId idOf(String name, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("MetricsRegistry - idOf: Labels of " + name
+                    + " must be pairs of names and values");
+        }
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                formatted.append(',');
+            }
+            formatted.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return new MetricId(name, formatted.toString());
+    }
+
+    /**
+     * Escapes a label value for the Prometheus format.
+     *
+     * @param value The label value.
+     * @return The escaped value.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Gets every metric as nested maps, ready to be written as JSON. Times are in milliseconds.
+     *
+     * @return The counters, gauges, histograms and timers, each keyed by name and labels.
+     */
+    public Map<String, Object> toReport() {
+        Map<String, Object> countersReport = new LinkedHashMap<>();
+        counters.forEach((id, counter) -> countersReport.put(id.toString(), counter.get()));
+
+        Map<String, Object> gaugesReport = new LinkedHashMap<>();
+        gauges.forEach((id, gauge) -> gaugesReport.put(id.toString(), gauge.getAsLong()));
+
+        Map<String, Object> histogramsReport = new LinkedHashMap<>();
+        histograms.forEach((id, histogram) -> histogramsReport.put(id.toString(), summaryOf(histogram, 1)));
+
+        Map<String, Object> timersReport = new LinkedHashMap<>();
+        timers.forEach((id, timer) -> timersReport.put(id.toString(), summaryOf(timer.getNanos(), 1e6)));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("counters", countersReport);
+        report.put("gauges", gaugesReport);
+        report.put("histograms", histogramsReport);
+        report.put("timersMillis", timersReport);
+        return report;
+    }
+
+    /**
+     * Summarises a histogram.
+     *
+     * @param histogram The histogram.
+     * @param unit      The size of a reported unit in recorded units.
+     * @return The count, sum, mean, max and percentiles of the histogram.
+     */
+    private static Map<String, Object> summaryOf(Histogram histogram, double unit) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getCount());
+        summary.put("sum", histogram.getSum() / unit);
+        summary.put("mean", histogram.getMean() / unit);
+        summary.put("max", histogram.getMax() / unit);
+        for (double percentile : PERCENTILES) {
+            summary.put("p" + (int) percentile, histogram.getPercentile(percentile) / unit);
+        }
+        return summary;
+    }
+
+    /**
+     * Gets every metric in the Prometheus text format. Histograms and timers are reported as summaries,
+     * with times in seconds.
+     *
+     * @return The metrics.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        String[] lastName = {null};
+
+        counters.forEach((id, counter) -> {
+            typeLine(text, lastName, id, "counter");
+            text.append(id).append(' ').append(counter.get()).append('\n');
+        });
+        gauges.forEach((id, gauge) -> {
+            typeLine(text, lastName, id, "gauge");
+            text.append(id).append(' ').append(gauge.getAsLong()).append('\n');
+        });
+        histograms.forEach((id, histogram) -> summaryLines(text, lastName, id, histogram, 1));
+        timers.forEach((id, timer) -> summaryLines(text, lastName, id, timer.getNanos(), 1e9));
+        return text.toString();
+    }
+
+    /**
+     * Adds the type of a metric, once for all the metrics with the same name.
+     */
+    private static void typeLine(StringBuilder text, String[] lastName, MetricId id, String type) {
+        if (!id.name().equals(lastName[0])) {
+            text.append("# TYPE ").append(id.name()).append(' ').append(type).append('\n');
+            lastName[0] = id.name();
+        }
+    }
+
+    /**
+     * Adds a histogram as a summary, with a line per percentile, then its sum and count.
+     */
+    private static void summaryLines(StringBuilder text, String[] lastName, MetricId id, Histogram histogram,
+                                     double unit) {
+        typeLine(text, lastName, id, "summary");
+        for (double percentile : PERCENTILES) {
+            text.append(id.format("", "quantile=\"" + percentile / 100 + "\"")).append(' ')
+                    .append(histogram.getPercentile(percentile) / unit).append('\n');
+        }
+        text.append(id.format("_sum", "")).append(' ').append(histogram.getSum() / unit).append('\n');
+        text.append(id.format("_count", "")).append(' ').append(histogram.getCount()).append('\n');
+    }
+}
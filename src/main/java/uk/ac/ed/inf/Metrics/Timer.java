@@ -0,0 +1,55 @@
+package uk.ac.ed.inf.Metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Records how long something takes, as a histogram of nanoseconds.
+ */
+public final class Timer {
+    private final Histogram nanos = new Histogram();
+
+    Timer() {
+    }
+
+    /**
+     * Records the time since a start time.
+     *
+     * @param startNanos The start time, from {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        nanos.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records a time.
+     *
+     * @param duration The time in nanoseconds.
+     */
+    public void recordNanos(long duration) {
+        nanos.record(duration);
+    }
+
+    /**
+     * Times how long it takes to get a value.
+     *
+     * @param supplier Gets the value.
+     * @return The value.
+     */
+    public <T> T time(Supplier<T> supplier) {
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            recordSince(start);
+        }
+    }
+
+    /**
+     * Gets the times recorded.
+     *
+     * @return The histogram of the times in nanoseconds.
+     */
+    public Histogram getNanos() {
+        return nanos;
+    }
+}
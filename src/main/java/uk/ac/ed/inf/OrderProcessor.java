@@ -0,0 +1,162 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.Flight.FlightDataHandler;
+import uk.ac.ed.inf.Flight.FlightPlan;
+import uk.ac.ed.inf.Metrics.Counter;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.Metrics.Timer;
+import uk.ac.ed.inf.OutputClasses.FlightPath;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.util.List;
+
+/**
+ * Validates a single order and calculates its flight path. It holds no state that changes from order to order,
+ * so a single instance can process different orders on many threads at once.
+ */
+public class OrderProcessor {
+    private static final Timer VALIDATION_TIMER = MetricsRegistry.global().timer("pizzadronz_validation_seconds");
+    private static final Timer CONVERSION_TIMER = MetricsRegistry.global().timer("pizzadronz_conversion_seconds");
+    private static final Counter[] ORDERS_BY_CODE = new Counter[OrderValidationCode.values().length];
+
+    static {
+        for (OrderValidationCode code : OrderValidationCode.values()) {
+            ORDERS_BY_CODE[code.ordinal()] = MetricsRegistry.global().counter("pizzadronz_orders_total",
+                    "code", code.name());
+        }
+    }
+
+    private final OrderValidator validator;
+    private final FlightDataHandler flightDataHandler;
+    private final MenuIndex menuIndex;
+    private final NamedRegion[] noFlyZones;
+    private final NamedRegion centralArea;
+    private final LngLat startPosition;
+
+    /**
+     * The flight data of a processed order, only the compact flight plan is kept until the output
+     * is needed, and the plan is empty if the order was not delivered.
+     *
+     * @param order      The order, with its final status and validation code.
+     * @param flightPlan The flight plan of the order.
+     */
+    public record ProcessedOrder(Order order, FlightPlan flightPlan) {
+        private static final FlightPlan NOT_DELIVERED = FlightPlan.empty(null);
+
+        /**
+         * Creates the result of an order that is not delivered, so has no flight plan.
+         *
+         * @param order The order.
+         * @return The processed order.
+         */
+        private static ProcessedOrder notDelivered(Order order) {
+            return new ProcessedOrder(order, NOT_DELIVERED);
+        }
+
+        /**
+         * Gets the moves of the order.
+         *
+         * @return The moves of the order in the json output class.
+         */
+        public List<FlightPath> flightPaths() {
+            return CONVERSION_TIMER.time(() -> flightPlan.toFlightPaths(order.getOrderNo()));
+        }
+
+        /**
+         * Gets the positions the drone visits during the order.
+         *
+         * @return The flight path of the order in the LngLat class. (for geo-json)
+         */
+        public List<LngLat> lngLats() {
+            return CONVERSION_TIMER.time(flightPlan::toLngLats);
+        }
+    }
+
+    /**
+     * Creates an order processor for a day's orders, precomputing the occupancy bitmap of the regions if the
+     * flight data handler keeps them, see {@link FlightDataHandler#precomputeOccupancy}.
+     *
+     * @param validator         Validates each order.
+     * @param flightDataHandler Calculates the flight path of each valid order.
+     * @param restaurants       The restaurants orders can be made from.
+     * @param noFlyZones        The regions the drone cannot fly in.
+     * @param centralArea       The central area.
+     * @param startPosition     The position the drone starts and ends each delivery at.
+     */
+    public OrderProcessor(OrderValidator validator, FlightDataHandler flightDataHandler, Restaurant[] restaurants,
+                          NamedRegion[] noFlyZones, NamedRegion centralArea, LngLat startPosition) {
+        this.validator = validator;
+        this.flightDataHandler = flightDataHandler;
+        // The menus are indexed once, and shared by validation and finding each order's restaurant.
+        this.menuIndex = restaurants == null ? null : MenuIndex.build(restaurants);
+        this.noFlyZones = noFlyZones;
+        this.centralArea = centralArea;
+        this.startPosition = startPosition;
+        flightDataHandler.precomputeOccupancy(restaurants, noFlyZones, centralArea, startPosition);
+    }
+
+    /**
+     * Validates an order and, if it is valid, calculates its flight path. The order's status and validation
+     * code are updated to reflect whether it could be delivered.
+     *
+     * @param order The order to process.
+     * @return The flight data of the order.
+     */
+    public ProcessedOrder process(Order order) {
+        ProcessedOrder processed = deliver(order);
+        if (order != null && order.getOrderValidationCode() != null) {
+            ORDERS_BY_CODE[order.getOrderValidationCode().ordinal()].increment();
+        }
+        return processed;
+    }
+
+    /**
+     * Validates an order and, if it is valid, calculates its flight path, see {@link #process}.
+     *
+     * @param order The order to process.
+     * @return The flight data of the order.
+     */
+    private ProcessedOrder deliver(Order order) {
+        long validationStart = System.nanoTime();
+        try {
+            validator.validateAgainst(order, menuIndex);
+        } catch (NullPointerException e) {
+            System.err.println("Main: Failed to validate order:" + e.getMessage());
+            return ProcessedOrder.notDelivered(order);
+        } finally {
+            VALIDATION_TIMER.recordSince(validationStart);
+        }
+
+        boolean order_status_valid = order.getOrderStatus() == OrderStatus.VALID_BUT_NOT_DELIVERED;
+        boolean order_code_valid = order.getOrderValidationCode() == OrderValidationCode.NO_ERROR;
+
+        // Only get flight path of valid orders
+        if (!order_status_valid || !order_code_valid) {
+            return ProcessedOrder.notDelivered(order);
+        }
+
+        FlightPlan flightPlan;  // The directions the drone takes from move to move.
+        try {
+            flightPlan = flightDataHandler.calculateFlightPlan(order, menuIndex, noFlyZones, centralArea, startPosition);
+        } catch (IllegalStateException e) {
+            order.setOrderStatus(OrderStatus.INVALID);
+            order.setOrderValidationCode(OrderValidationCode.UNDEFINED);
+            System.err.println("Main: Failed to calculate angles for order " + order.getOrderNo() + ": " +
+                    e.getMessage() + ", skipping order...");
+            return ProcessedOrder.notDelivered(order);
+        }
+        // If there is an error with finding a path, continue to next order.
+        if (flightPlan.isEmpty()) {
+            order.setOrderStatus(OrderStatus.INVALID);
+            order.setOrderValidationCode(OrderValidationCode.UNDEFINED);
+            System.err.println("Main: No path found for order: " + order.getOrderNo() + ", skipping order...");
+            return ProcessedOrder.notDelivered(order);
+        }
+        order.setOrderStatus(OrderStatus.DELIVERED);
+
+        // The plan is converted into the data for each output type when it is output.
+        return new ProcessedOrder(order, flightPlan);
+    }
+}
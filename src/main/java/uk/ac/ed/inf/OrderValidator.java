@@ -11,14 +11,17 @@ import uk.ac.ed.inf.ilp.interfaces.OrderValidation;
 import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.YearMonth;
-import java.util.*;
-
-import static java.util.Arrays.asList;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Ensues that a given order is valid so no errors occur when trying to deliver orders.
  */
 public class OrderValidator implements OrderValidation {
+    private static final int PARALLEL_THRESHOLD = 1024;    // Fewer orders are quicker to validate on one thread.
+    private static final long[] MONTH_ENDS = monthEnds();  // The epoch day of the last day of each "MM/YY" expiry.
+
+    private volatile MenuIndex menuIndex;   // The menus indexed for the most recent order.
 
     public OrderValidator() {
     }
@@ -31,7 +34,6 @@ public class OrderValidator implements OrderValidation {
      * @return The order with the correct status and validation code.
      */
     public Order validateOrder(Order orderToValidate, Restaurant[] definedRestaurants) {
-
         if (orderToValidate == null) {
             throw new NullPointerException("OrderValidator - validateOrder: Order to validate is null");    // Handled in main class.
         }
@@ -40,46 +42,178 @@ public class OrderValidator implements OrderValidation {
             throw new NullPointerException("OrderValidator - validateOrder: Defined restaurants are null");    // Handled in main class.
         }
 
+        // The menus are only indexed again when the restaurants change.
+        return validateAgainst(orderToValidate, getMenuIndex(definedRestaurants));
+    }
+
+    /**
+     * Validates an order against an index of the restaurants' menus, and returns the order with the correct
+     * status and validation code.
+     *
+     * @param orderToValidate The order to validate.
+     * @param menuIndex       The index of the menus of the restaurants that are currently supported.
+     * @return The order with the correct status and validation code.
+     */
+    public Order validateAgainst(Order orderToValidate, MenuIndex menuIndex) {
+        if (orderToValidate == null) {
+            throw new NullPointerException("OrderValidator - validateAgainst: Order to validate is null");    // Handled in main class.
+        }
+
+        if (menuIndex == null) {
+            throw new NullPointerException("OrderValidator - validateAgainst: Menu index is null");    // Handled in main class.
+        }
+
+        OrderValidationCode code = check(orderToValidate, menuIndex);
+        orderToValidate.setOrderStatus(statusOf(code));
+        orderToValidate.setOrderValidationCode(code);
+        return orderToValidate;
+    }
+
+    /**
+     * Validates many orders at once without changing them, orders are validated in parallel once there are
+     * enough of them to be worth it. The results are the same as validating each order with
+     * {@link #validateOrder}, an order that cannot be validated at all keeps its current status and code,
+     * as it would if validateOrder had thrown, or undefined if it has none.
+     *
+     * @param orders             The orders to validate.
+     * @param definedRestaurants The restaurants that are currently supported.
+     * @return The status and validation code of each order.
+     */
+    public ValidationResults validateOrders(Order[] orders, Restaurant[] definedRestaurants) {
+        if (definedRestaurants == null) {
+            throw new NullPointerException("OrderValidator - validateOrders: Defined restaurants are null");
+        }
+        return validateOrders(orders, getMenuIndex(definedRestaurants));
+    }
+
+    /**
+     * Validates a stream of orders at once without changing them, as {@link #validateOrders(Order[], MenuIndex)} does.
+     *
+     * @param orders    The orders to validate, in the order the results should be in.
+     * @param menuIndex The index of the menus of the restaurants that are currently supported.
+     * @return The status and validation code of each order.
+     */
+    public ValidationResults validateOrders(Stream<Order> orders, MenuIndex menuIndex) {
+        return validateOrders(orders.toArray(Order[]::new), menuIndex);
+    }
+
+    /**
+     * Validates many orders at once without changing them, as {@link #validateOrders(Order[], Restaurant[])} does.
+     *
+     * @param orders    The orders to validate.
+     * @param menuIndex The index of the menus of the restaurants that are currently supported.
+     * @return The status and validation code of each order.
+     */
+    public ValidationResults validateOrders(Order[] orders, MenuIndex menuIndex) {
+        if (orders == null) {
+            throw new NullPointerException("OrderValidator - validateOrders: Orders to validate are null");
+        }
+        if (menuIndex == null) {
+            throw new NullPointerException("OrderValidator - validateOrders: Menu index is null");
+        }
+
+        byte[] codes = new byte[orders.length];
+        byte[] statuses = new byte[orders.length];
+        IntStream indices = IntStream.range(0, orders.length);
+        if (orders.length >= PARALLEL_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        // Each order only writes its own elements, so no synchronisation is needed.
+        indices.forEach(i -> {
+            Order order = orders[i];
+            OrderValidationCode code;
+            OrderStatus status;
+            try {
+                code = check(order, menuIndex);
+                status = statusOf(code);
+            } catch (NullPointerException e) {
+                // Left as validateOrder would leave it, an order without a code or status has them undefined.
+                code = order == null ? null : order.getOrderValidationCode();
+                status = order == null ? null : order.getOrderStatus();
+                if (code == null) {
+                    code = OrderValidationCode.UNDEFINED;
+                }
+                if (status == null) {
+                    status = OrderStatus.UNDEFINED;
+                }
+            }
+            codes[i] = (byte) code.ordinal();
+            statuses[i] = (byte) status.ordinal();
+        });
+        return new ValidationResults(codes, statuses);
+    }
+
+    /**
+     * Gets the index of the restaurants' menus, the index is only built again when the restaurants change.
+     *
+     * @param definedRestaurants The restaurants that are currently supported.
+     * @return The index of the menus.
+     */
+    private MenuIndex getMenuIndex(Restaurant[] definedRestaurants) {
+        MenuIndex index = menuIndex;
+        if (index == null || !index.isBuiltFrom(definedRestaurants)) {
+            index = MenuIndex.build(definedRestaurants);
+            menuIndex = index;
+        }
+        return index;
+    }
 
+    /**
+     * Calculates the last day of every month from 2000 to 2099, the months a "MM/YY" expiry can be in.
+     *
+     * @return The epoch day of the last day of each month, month m of year 20YY is at index YY * 12 + m - 1.
+     */
+    private static long[] monthEnds() {
+        long[] monthEnds = new long[100 * 12];
+        for (int year = 0; year < 100; year++) {
+            for (int month = 1; month <= 12; month++) {
+                monthEnds[year * 12 + month - 1] = YearMonth.of(2000 + year, month).atEndOfMonth().toEpochDay();
+            }
+        }
+        return monthEnds;
+    }
+
+    /**
+     * Gets the status of an order with a validation code, that is yet to be delivered.
+     *
+     * @param code The validation code of the order.
+     * @return Valid but not delivered if there is no error, invalid otherwise.
+     */
+    private static OrderStatus statusOf(OrderValidationCode code) {
+        return code == OrderValidationCode.NO_ERROR ? OrderStatus.VALID_BUT_NOT_DELIVERED : OrderStatus.INVALID;
+    }
+
+    /**
+     * Checks an order without changing it, the checks are made in the same order as they always have been,
+     * so the first check that fails decides the code.
+     *
+     * @param orderToValidate The order to check.
+     * @param menuIndex       The index of the menus of the restaurants that are currently supported.
+     * @return The validation code of the order, no error if it is valid.
+     * @throws NullPointerException If a part of the order that is checked is missing.
+     */
+    private OrderValidationCode check(Order orderToValidate, MenuIndex menuIndex) {
         // -------------------- PIZZA CHECKS --------------------
         Pizza[] orderedPizzas = orderToValidate.getPizzasInOrder();
 
         // ---------- Checks if too many pizzas have been sent ----------
         if (orderedPizzas.length > 4) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.MAX_PIZZA_COUNT_EXCEEDED);
-            return orderToValidate;
+            return OrderValidationCode.MAX_PIZZA_COUNT_EXCEEDED;
         }
 
         // ---------- Checks if no pizzas have been ordered ----------
         if (orderedPizzas.length < 1) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.UNDEFINED);
-            return orderToValidate;
+            return OrderValidationCode.UNDEFINED;
         }
 
         // ---------- Checks for undefined pizzas -----------
-        boolean invalidPizza = false;
-        ArrayList<Pizza> allPizzas = new ArrayList<>();
-
         // Checks if the pizzas ordered are on the menu of any restaurant
-        for (Restaurant restaurant : definedRestaurants) {
-            Collections.addAll(allPizzas, restaurant.menu());
-        }
-
         for (Pizza pizza : orderedPizzas) {
-            if (!allPizzas.contains(pizza)) {
-                invalidPizza = true;
-                break;
+            if (!menuIndex.isDefined(pizza)) {
+                return OrderValidationCode.PIZZA_NOT_DEFINED;
             }
         }
 
-        if (invalidPizza) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.PIZZA_NOT_DEFINED);
-            return orderToValidate;
-        }
-
         // ---------- Checks if pizza price is accurate ----------
         int pizzaPriceSum = 0;
         for (Pizza pizza : orderedPizzas) {
@@ -88,95 +222,113 @@ public class OrderValidator implements OrderValidation {
 
         // Checks if pizza price + delivery is the same as the total price.
         if (pizzaPriceSum + 100 != orderToValidate.getPriceTotalInPence()) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.TOTAL_INCORRECT);
-            return orderToValidate;
+            return OrderValidationCode.TOTAL_INCORRECT;
         }
 
         // ---------- Checks if restaurant is open and if ordered from one restaurant ----------
-        Set<Restaurant> pizzaOriginRestaurant = new HashSet<>();
-        for (Restaurant restaurant : definedRestaurants) {
-            for (Pizza pizza : orderedPizzas) {
-                //  Checks that all pizzas are from the same restaurant.
-                // Converted menu to an arrayList so can use the contains method.
-                if (asList(restaurant.menu()).contains(pizza)) {
-                    pizzaOriginRestaurant.add(restaurant);
-                    // If the set ever goes above size 1 then pizzas are from more than 1 restaurant.
-                    if (pizzaOriginRestaurant.size() > 1) {
-                        orderToValidate.setOrderStatus(OrderStatus.INVALID);
-                        orderToValidate.setOrderValidationCode(OrderValidationCode.PIZZA_FROM_MULTIPLE_RESTAURANTS);
-                        return orderToValidate;
-                    }
+        Restaurant pizzaOriginRestaurant = null;
+        for (Pizza pizza : orderedPizzas) {
+            //  Checks that all pizzas are from the same restaurant.
+            for (Restaurant restaurant : menuIndex.getRestaurants(pizza)) {
+                if (pizzaOriginRestaurant == null) {
+                    pizzaOriginRestaurant = restaurant;
+                } else if (!pizzaOriginRestaurant.equals(restaurant)) {
+                    // If a second restaurant is ever found then pizzas are from more than 1 restaurant.
+                    return OrderValidationCode.PIZZA_FROM_MULTIPLE_RESTAURANTS;
                 }
             }
         }
 
-        for (Restaurant restaurant : definedRestaurants) {
-            for (Pizza pizza : orderedPizzas) {
-                // Checks if pizza is on the menu of the restaurant.
-                if (asList(restaurant.menu()).contains(pizza)) {
-                    // Checks if restaurant is open at time of order.
-                    if (!asList(restaurant.openingDays()).contains(orderToValidate.getOrderDate().getDayOfWeek())) {
-                        orderToValidate.setOrderStatus(OrderStatus.INVALID);
-                        orderToValidate.setOrderValidationCode(OrderValidationCode.RESTAURANT_CLOSED);
-                        return orderToValidate;
-                    }
-                }
-            }
+        // Checks if restaurant is open at time of order.
+        if (!menuIndex.isOpen(pizzaOriginRestaurant, orderToValidate.getOrderDate().getDayOfWeek())) {
+            return OrderValidationCode.RESTAURANT_CLOSED;
         }
 
         // -------------------- CREDIT CARD CHECKS ---------------------
         CreditCardInformation creditCardInfo = orderToValidate.getCreditCardInformation();
-        // ---------- Checks if card number is valid ----------
-        char[] creditCardNo = creditCardInfo.getCreditCardNumber().toCharArray();
-        boolean validCCNumber = true;
 
-        // Loop looks for any characters in the card number.
-        for (char digit : creditCardNo) {   // Converts string to char array for a foreach loop
-            if (!Character.isDigit(digit)) {
-                validCCNumber = false;
-            }
+        // ---------- Checks if card number is valid ----------
+        if (!isDigits(creditCardInfo.getCreditCardNumber(), 16)) {
+            return OrderValidationCode.CARD_NUMBER_INVALID;
         }
 
-        // Checks credit card length.
-        if (creditCardNo.length != 16) {
-            validCCNumber = false;
+        // ---------- Checks if cvv valid ----------
+        if (!isDigits(creditCardInfo.getCvv(), 3)) {
+            return OrderValidationCode.CVV_INVALID;
         }
 
-        if (!validCCNumber) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.CARD_NUMBER_INVALID);
-            return orderToValidate;
+        // ---------- Checks if card is not expired ----------
+        if (!isUnexpired(creditCardInfo.getCreditCardExpiry(), orderToValidate.getOrderDate())) {
+            return OrderValidationCode.EXPIRY_DATE_INVALID;
         }
 
-        // ---------- Checks if cvv valid ----------
-        String cvv = creditCardInfo.getCvv();
+        // ---------- Order is valid as all check have been passed -----------
+        return OrderValidationCode.NO_ERROR;
+    }
 
-        // Loop looks for any characters in the cvv.
-        boolean validCVV = true;
-        for (char digit : cvv.toCharArray()) {
-            if (!Character.isDigit(digit)) {
-                validCVV = false;
+    /**
+     * Checks if a string is made of only digits, without allocating anything.
+     *
+     * @param value  The string to check.
+     * @param length The number of digits it must have.
+     * @return True if the string is the given number of digits, false otherwise.
+     */
+    private static boolean isDigits(String value, int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            // Any unicode digit is allowed, as it always has been.
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
             }
         }
+        return true;
+    }
 
-        if (cvv.length() != 3) {
-            validCVV = false;
+    /**
+     * Checks if a card has not expired by the time an order is made. An expiry in the usual "MM/YY" form is
+     * read without allocating anything, and its last day is looked up in a table, anything else is read as
+     * it always has been by {@link #isUnexpiredLegacy}.
+     *
+     * @param expiry    The expiry date of the card.
+     * @param orderDate The date the order was made.
+     * @return True if the expiry is valid and on or after the order date, false otherwise.
+     */
+    private static boolean isUnexpired(String expiry, LocalDate orderDate) {
+        if (expiry.length() != 5 || expiry.charAt(2) != '/'
+                || !isAsciiDigit(expiry.charAt(0)) || !isAsciiDigit(expiry.charAt(1))
+                || !isAsciiDigit(expiry.charAt(3)) || !isAsciiDigit(expiry.charAt(4))) {
+            return isUnexpiredLegacy(expiry, orderDate);
         }
 
-        if (!validCVV) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.CVV_INVALID);
-            return orderToValidate;
+        int expiryMonth = (expiry.charAt(0) - '0') * 10 + (expiry.charAt(1) - '0');
+        int expiryYear = (expiry.charAt(3) - '0') * 10 + (expiry.charAt(4) - '0');
+        if (expiryMonth < 1 || expiryMonth > 12) {
+            return false;
         }
 
-        // ---------- Checks if card is not expired ----------
-        String[] expiryDateString = creditCardInfo.getCreditCardExpiry().split("/");
+        // Checks if card expiry date is before the current date (expired).
+        return MONTH_ENDS[expiryYear * 12 + expiryMonth - 1] >= orderDate.toEpochDay();
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Checks if a card has not expired by the time an order is made, reading the expiry with split and
+     * parseInt, which allow forms such as "+1/99", "12/99/" or "1/2099" that are kept valid.
+     *
+     * @param expiry    The expiry date of the card.
+     * @param orderDate The date the order was made.
+     * @return True if the expiry is valid and on or after the order date, false otherwise.
+     */
+    private static boolean isUnexpiredLegacy(String expiry, LocalDate orderDate) {
+        String[] expiryDateString = expiry.split("/");
 
         if (expiryDateString.length != 2) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.EXPIRY_DATE_INVALID);
-            return orderToValidate;
+            return false;
         }
 
         LocalDate expiryDate;
@@ -185,31 +337,17 @@ public class OrderValidator implements OrderValidation {
             expiryMonth = Integer.parseInt(expiryDateString[0]);
             expiryYear = Integer.parseInt(expiryDateString[1]) + 2000;
         } catch (NumberFormatException e) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.EXPIRY_DATE_INVALID);
-            return orderToValidate;
+            return false;
         }
         // Converts integers into LocalDate of the last day of expiry month.
 
         try {
             expiryDate = YearMonth.of(expiryYear, expiryMonth).atEndOfMonth();
         } catch (DateTimeException e) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.EXPIRY_DATE_INVALID);
-            return orderToValidate;
+            return false;
         }
 
         // Checks if card expiry date is before the current date (expired).
-        if (expiryDate.isBefore(orderToValidate.getOrderDate())) {
-            orderToValidate.setOrderStatus(OrderStatus.INVALID);
-            orderToValidate.setOrderValidationCode(OrderValidationCode.EXPIRY_DATE_INVALID);
-            return orderToValidate;
-        }
-
-
-        // ---------- Sets order to valid as all check have been passed -----------
-        orderToValidate.setOrderStatus(OrderStatus.VALID_BUT_NOT_DELIVERED);
-        orderToValidate.setOrderValidationCode(OrderValidationCode.NO_ERROR);
-        return orderToValidate;
+        return !expiryDate.isBefore(orderDate);
     }
 }
@@ -0,0 +1,54 @@
+package uk.ac.ed.inf.OutputClasses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A summary of the deliveries of a date, returned by the drone server once it has processed the date.
+ */
+public class DeliverySummary {
+    @JsonProperty
+    private final String date;
+    @JsonProperty
+    private final int orders;
+    @JsonProperty
+    private final int delivered;
+    @JsonProperty
+    private final Map<OrderValidationCode, Integer> validationCodes;
+    @JsonProperty
+    private final long millis;
+
+    /**
+     * Assigns the totals of the date to variables.
+     *
+     * @param date            The date the orders were made on.
+     * @param validationCodes The number of orders with each validation code, codes no order has are left out.
+     * @param delivered       The number of orders that were delivered.
+     * @param millis          The time taken to process the date in milliseconds.
+     */
+    public DeliverySummary(LocalDate date, Map<OrderValidationCode, Integer> validationCodes, int delivered,
+                           long millis) {
+        this.date = date.toString();
+        this.validationCodes = new EnumMap<>(OrderValidationCode.class);
+        this.validationCodes.putAll(validationCodes);
+        this.orders = validationCodes.values().stream().mapToInt(Integer::intValue).sum();
+        this.delivered = delivered;
+        this.millis = millis;
+    }
+
+    public int getOrders() {
+        return orders;
+    }
+
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public Map<OrderValidationCode, Integer> getValidationCodes() {
+        return validationCodes;
+    }
+}
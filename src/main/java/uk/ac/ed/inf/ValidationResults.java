@@ -0,0 +1,124 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.Order;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The results of validating a batch of orders, see {@link OrderValidator#validateOrders}. Rather than an object
+ * per order, the validation code and status of every order are each stored as the ordinal of the enum in a byte
+ * array, and the number of orders with each validation code is counted so it can be monitored.
+ */
+public final class ValidationResults {
+    private static final OrderValidationCode[] CODES = OrderValidationCode.values();
+    private static final OrderStatus[] STATUSES = OrderStatus.values();
+
+    private final byte[] codes;
+    private final byte[] statuses;
+    private final int[] histogram = new int[CODES.length];
+
+    /**
+     * Creates the results of a batch.
+     *
+     * @param codes    The ordinal of each order's validation code.
+     * @param statuses The ordinal of each order's status.
+     */
+    ValidationResults(byte[] codes, byte[] statuses) {
+        if (codes.length != statuses.length) {
+            throw new IllegalArgumentException("ValidationResults: There are " + codes.length + " codes but "
+                    + statuses.length + " statuses");
+        }
+        this.codes = codes;
+        this.statuses = statuses;
+        for (byte code : codes) {
+            histogram[code]++;
+        }
+    }
+
+    /**
+     * Gets the number of orders in the batch.
+     *
+     * @return The number of orders.
+     */
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * Gets the validation code of an order.
+     *
+     * @param order The index of the order in the batch.
+     * @return The validation code.
+     */
+    public OrderValidationCode getCode(int order) {
+        return CODES[codes[order]];
+    }
+
+    /**
+     * Gets the status of an order.
+     *
+     * @param order The index of the order in the batch.
+     * @return The status.
+     */
+    public OrderStatus getStatus(int order) {
+        return STATUSES[statuses[order]];
+    }
+
+    /**
+     * Gets the ordinal of every order's validation code.
+     *
+     * @return A copy of the validation codes, in the same order as the batch.
+     */
+    public byte[] getCodes() {
+        return codes.clone();
+    }
+
+    /**
+     * Gets the ordinal of every order's status.
+     *
+     * @return A copy of the statuses, in the same order as the batch.
+     */
+    public byte[] getStatuses() {
+        return statuses.clone();
+    }
+
+    /**
+     * Gets the number of orders with a validation code.
+     *
+     * @param code The validation code.
+     * @return The number of orders in the batch with the code.
+     */
+    public int getCount(OrderValidationCode code) {
+        return histogram[code.ordinal()];
+    }
+
+    /**
+     * Gets the number of orders with each validation code, codes no order has are left out.
+     *
+     * @return The number of orders with each code.
+     */
+    public Map<OrderValidationCode, Integer> getHistogram() {
+        Map<OrderValidationCode, Integer> counts = new EnumMap<>(OrderValidationCode.class);
+        for (OrderValidationCode code : CODES) {
+            if (histogram[code.ordinal()] > 0) {
+                counts.put(code, histogram[code.ordinal()]);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Sets the status and validation code of an order to its result, as {@link OrderValidator#validateOrder}
+     * would have.
+     *
+     * @param index The index of the order in the batch.
+     * @param order The order at that index.
+     */
+    public void applyTo(int index, Order order) {
+        order.setOrderStatus(getStatus(index));
+        order.setOrderValidationCode(getCode(index));
+    }
+}
@@ -4,8 +4,21 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import uk.ac.ed.inf.Flight.FlightDataHandlerTest;
+import uk.ac.ed.inf.Flight.FlightPathCacheTest;
+import uk.ac.ed.inf.Flight.FlightPlanTest;
+import uk.ac.ed.inf.Flight.OccupancyBitmapTest;
+import uk.ac.ed.inf.Flight.PathGeneratorTest;
+import uk.ac.ed.inf.Flight.RegionIndexTest;
+import uk.ac.ed.inf.Flight.SearchContextTest;
+import uk.ac.ed.inf.IO.FlightArchiveTest;
+import uk.ac.ed.inf.IO.OutputToFileTest;
+import uk.ac.ed.inf.IO.RetrieveRestDataTest;
+import uk.ac.ed.inf.IO.StreamingFlightOutputTest;
+import uk.ac.ed.inf.Metrics.MetricsRegistryTest;
 
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 
 /**
  * Unit test for simple App.
@@ -30,6 +43,20 @@ public class AppTest
         suite.addTestSuite(LngLatHandlerTest.class);
         suite.addTestSuite(OrderValidatorTest.class);
         suite.addTestSuite(FlightDataHandlerTest.class);
+        suite.addTestSuite(PathGeneratorTest.class);
+        suite.addTestSuite(FlightPathCacheTest.class);
+        suite.addTestSuite(RegionIndexTest.class);
+        suite.addTestSuite(FlightPlanTest.class);
+        suite.addTestSuite(StreamingFlightOutputTest.class);
+        suite.addTestSuite(RetrieveRestDataTest.class);
+        suite.addTestSuite(MenuIndexTest.class);
+        suite.addTestSuite(MetricsRegistryTest.class);
+        suite.addTestSuite(DroneServerTest.class);
+        suite.addTestSuite(SearchContextTest.class);
+        suite.addTestSuite(OccupancyBitmapTest.class);
+        suite.addTestSuite(FlightArchiveTest.class);
+        suite.addTestSuite(OutputToFileTest.class);
+        suite.addTestSuite(ProcessDateTest.class);
         return suite;
     }
 
@@ -46,4 +73,37 @@ public class AppTest
             fail("App failed to run normally");
         }
     }
+
+    /**
+     * Tests that a single date, a list of dates and a range of dates are each parsed in order.
+     */
+    public void testParseDates() {
+        App app = new App();
+        assertEquals(List.of(LocalDate.of(2023, 11, 6)), app.parseDates("2023-11-06"));
+        assertEquals(List.of(LocalDate.of(2023, 11, 8), LocalDate.of(2023, 11, 6)),
+                app.parseDates("2023-11-08, 2023-11-06"));
+        assertEquals(List.of(LocalDate.of(2023, 11, 30), LocalDate.of(2023, 12, 1), LocalDate.of(2023, 12, 2)),
+                app.parseDates("2023-11-30..2023-12-02"));
+        assertEquals(List.of(LocalDate.of(2023, 11, 6)), app.parseDates("2023-11-06..2023-11-06"));
+    }
+
+    /**
+     * Tests that a range that ends before it starts, or a date that isn't a valid date, is rejected.
+     */
+    public void testParseInvalidDates() {
+        App app = new App();
+        try {
+            app.parseDates("2023-11-08..2023-11-06");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        for (String dates : new String[]{"2023-02-30", "06/11/2023", "2023-11-06..", "2023-11-06,,2023-11-07"}) {
+            try {
+                app.parseDates(dates);
+                fail("Expected DateTimeParseException for " + dates);
+            } catch (DateTimeParseException expected) {
+            }
+        }
+    }
 }
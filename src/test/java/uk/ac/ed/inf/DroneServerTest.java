@@ -0,0 +1,216 @@
+package uk.ac.ed.inf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import uk.ac.ed.inf.Flight.FlightDataHandler;
+import uk.ac.ed.inf.Flight.FlightPathCache;
+import uk.ac.ed.inf.IO.FlightArchiveWriter;
+import uk.ac.ed.inf.IO.OutputToFile;
+import uk.ac.ed.inf.IO.RetrieveRestData;
+import uk.ac.ed.inf.OutputClasses.Delivery;
+import uk.ac.ed.inf.OutputClasses.FeatureCollection;
+import uk.ac.ed.inf.OutputClasses.FlightPath;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DroneServerTest extends TestCase {
+    private static final String ORDER = "{\"orderNo\":\"1\",\"orderDate\":\"2023-11-06\",\"orderStatus\":\"UNDEFINED\","
+            + "\"orderValidationCode\":\"UNDEFINED\",\"priceTotalInPence\":1100,"
+            + "\"pizzasInOrder\":[{\"name\":\"Pizza\",\"priceInPence\":1000}],\"creditCardInformation\":"
+            + "{\"creditCardNumber\":\"1234567812345678\",\"creditCardExpiry\":\"01/30\",\"cvv\":\"123\"}}";
+    private static final String ORDERS = "[" + ORDER + ","
+            + ORDER.replace("\"orderNo\":\"1\"", "\"orderNo\":\"2\"").replace("\"123\"", "\"12\"") + "]";
+    private static final String RESTAURANTS = "[{\"name\":\"R\",\"location\":{\"lng\":-3.19,\"lat\":55.945},"
+            + "\"openingDays\":[\"MONDAY\"],\"menu\":[{\"name\":\"Pizza\",\"priceInPence\":1000}]}]";
+    private static final String CENTRAL_AREA = "{\"name\":\"central\",\"vertices\":[{\"lng\":-3.2,\"lat\":55.93},"
+            + "{\"lng\":-3.17,\"lat\":55.93},{\"lng\":-3.17,\"lat\":55.96},{\"lng\":-3.2,\"lat\":55.96}]}";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final FlightPathCache pathCache = new FlightPathCache();
+    private final List<LocalDate> outputDates = new ArrayList<>();
+    private final AtomicInteger restaurantRequests = new AtomicInteger();
+    private final CountDownLatch slowOrdersRequested = new CountDownLatch(1);
+    private final CountDownLatch slowOrdersReleased = new CountDownLatch(1);
+    private HttpServer api;
+    private DroneServer server;
+
+    /**
+     * Outputs to memory rather than files, recording the date of each output.
+     */
+    private class RecordingOutput extends OutputToFile {
+        @Override
+        public void outputDay(List<Delivery> deliveries, ArrayList<FlightPath> flightPaths,
+                              FeatureCollection featureCollection, LocalDate date) {
+            assertFalse(flightPaths.isEmpty());
+            outputDates.add(date);
+        }
+
+        @Override
+        public FlightArchiveWriter openFlightArchive(LocalDate date) throws IOException {
+            File archive = File.createTempFile("flightpath-" + date, ".bin");
+            archive.deleteOnExit();
+            return new FlightArchiveWriter(archive, true);
+        }
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        api = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        api.createContext("/restaurants", exchange -> {
+            restaurantRequests.incrementAndGet();
+            respond(exchange, RESTAURANTS);
+        });
+        api.createContext("/noFlyZones", exchange -> respond(exchange, "[]"));
+        api.createContext("/centralArea", exchange -> respond(exchange, CENTRAL_AREA));
+        api.createContext("/orders/2023-11-06", exchange -> respond(exchange, ORDERS));
+        api.createContext("/orders/2023-11-08", exchange -> {
+            slowOrdersRequested.countDown();
+            try {
+                slowOrdersReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, ORDERS);
+        });
+        // A slow response mustn't hold up the other data sets.
+        api.setExecutor(Executors.newCachedThreadPool());
+        api.start();
+
+        String apiUrl = "http://127.0.0.1:" + api.getAddress().getPort() + "/";
+        RetrieveRestData retrieveData = new RetrieveRestData(Duration.ofSeconds(5), 1, Duration.ZERO);
+        server = new DroneServer(0, apiUrl, retrieveData, new OrderValidator(), new FlightDataHandler(pathCache),
+                pathCache, new RecordingOutput(), 2, false);
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws InterruptedException {
+        slowOrdersReleased.countDown();
+        server.stop();
+        api.stop(0);
+    }
+
+    /**
+     * Sends a response to a request of the stub API.
+     */
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    /**
+     * Sends a request to the drone server.
+     */
+    private HttpResponse<String> send(String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Tests that each request processes the date and responds with its summary, and that the flight path to the
+     * restaurant is calculated once and then reused by later requests.
+     */
+    public void testProcessDate() throws IOException, InterruptedException {
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<String> response = send("POST", "/process?date=2023-11-06");
+            assertEquals(200, response.statusCode());
+
+            JsonNode summary = new ObjectMapper().readTree(response.body());
+            assertEquals("2023-11-06", summary.get("date").asText());
+            assertEquals(2, summary.get("orders").asInt());
+            assertEquals(1, summary.get("delivered").asInt());
+            assertEquals(1, summary.get("validationCodes").get("NO_ERROR").asInt());
+            assertEquals(1, summary.get("validationCodes").get("CVV_INVALID").asInt());
+            assertEquals(1, pathCache.size());
+        }
+        assertEquals(List.of(LocalDate.of(2023, 11, 6), LocalDate.of(2023, 11, 6)), outputDates);
+        assertEquals(2, restaurantRequests.get());
+
+        String metrics = send("GET", "/metrics").body();
+        assertTrue(metrics.contains("pizzadronz_orders_total{code=\"NO_ERROR\"}"));
+    }
+
+    /**
+     * Tests that bad requests are rejected without processing anything.
+     */
+    public void testBadRequests() throws IOException, InterruptedException {
+        assertEquals(405, send("GET", "/process?date=2023-11-06").statusCode());
+        assertEquals(400, send("POST", "/process?date=06-11-2023").statusCode());
+        assertEquals(400, send("POST", "/process").statusCode());
+        assertEquals(502, send("POST", "/process?date=2023-11-07").statusCode());
+        assertTrue(outputDates.isEmpty());
+    }
+
+    /**
+     * Tests that metrics are answered while a date is being processed, rather than waiting for it to finish.
+     */
+    public void testMetricsWhileProcessing() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort()
+                + "/process?date=2023-11-08")).POST(HttpRequest.BodyPublishers.noBody()).build();
+        CompletableFuture<HttpResponse<String>> processing = client.sendAsync(request,
+                HttpResponse.BodyHandlers.ofString());
+        assertTrue(slowOrdersRequested.await(5, TimeUnit.SECONDS));
+
+        assertEquals(200, send("GET", "/metrics").statusCode());
+        assertFalse(processing.isDone());
+
+        slowOrdersReleased.countDown();
+        assertEquals(200, processing.get(5, TimeUnit.SECONDS).statusCode());
+        assertEquals(List.of(LocalDate.of(2023, 11, 8)), outputDates);
+    }
+
+    /**
+     * Tests that metrics are answered while more dates are waiting to be processed than the server has threads
+     * for requests, and that the dates are still processed in the order they were asked for.
+     */
+    public void testMetricsWithDatesQueued() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> processing = new ArrayList<>();
+        for (String date : List.of("2023-11-08", "2023-11-06", "2023-11-06", "2023-11-06", "2023-11-06",
+                "2023-11-06")) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort()
+                    + "/process?date=" + date)).POST(HttpRequest.BodyPublishers.noBody()).build();
+            processing.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            if (processing.size() == 1) {
+                assertTrue(slowOrdersRequested.await(5, TimeUnit.SECONDS));
+            }
+        }
+        // Gives the dates behind the slow one time to reach the server, there is nothing to wait on for them.
+        Thread.sleep(500);
+
+        HttpRequest metrics = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/metrics"))
+                .timeout(Duration.ofSeconds(5)).build();
+        assertEquals(200, client.send(metrics, HttpResponse.BodyHandlers.ofString()).statusCode());
+        for (CompletableFuture<HttpResponse<String>> response : processing) {
+            assertFalse(response.isDone());
+        }
+
+        slowOrdersReleased.countDown();
+        for (CompletableFuture<HttpResponse<String>> response : processing) {
+            assertEquals(200, response.get(10, TimeUnit.SECONDS).statusCode());
+        }
+        assertEquals(LocalDate.of(2023, 11, 8), outputDates.get(0));
+        assertEquals(6, outputDates.size());
+    }
+}
@@ -1,6 +1,8 @@
 package uk.ac.ed.inf.Flight;
 
 import junit.framework.TestCase;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.OutputClasses.FlightPath;
 import uk.ac.ed.inf.ilp.constant.OrderStatus;
 import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
 import uk.ac.ed.inf.ilp.constant.SystemConstants;
@@ -8,6 +10,7 @@ import uk.ac.ed.inf.ilp.data.*;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
 
 public class FlightDataHandlerTest extends TestCase {
     public void testFlight() {
@@ -89,4 +92,22 @@ public class FlightDataHandlerTest extends TestCase {
 
         assertEquals(new ArrayList<>(), angles);
     }
-}
\ No newline at end of file
+
+    public void testConvertAnyAngle() {
+        FlightDataHandler flightDataHandler = new FlightDataHandler();
+        LngLatHandler lngLatHandler = new LngLatHandler();
+        LngLat start = new LngLat(-3.186874, 55.944494);
+        ArrayList<Double> angles = new ArrayList<>(List.of(45.0, 10.0, 999.0, 90.0));
+
+        ArrayList<LngLat> positions = flightDataHandler.convertAngleToList(angles, start);
+        LngLat first = lngLatHandler.nextPosition(start, 45.0);
+        LngLat second = lngLatHandler.nextPosition(first, 10.0);
+        assertEquals(List.of(start, first, second, second, lngLatHandler.nextPosition(second, 90.0)), positions);
+
+        ArrayList<FlightPath> flightPaths = flightDataHandler.convertAngleToFlightPath("0", angles, start);
+        assertEquals(4, flightPaths.size());
+        assertEquals(10.0, flightPaths.get(1).getAngle());
+        assertEquals(second.lng(), flightPaths.get(1).getToLongitude());
+        assertEquals(second.lat(), flightPaths.get(2).getFromLatitude());
+    }
+}
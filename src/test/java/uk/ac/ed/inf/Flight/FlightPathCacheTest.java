@@ -0,0 +1,190 @@
+package uk.ac.ed.inf.Flight;
+
+import junit.framework.TestCase;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class FlightPathCacheTest extends TestCase {
+    private static final SearchStrategy ASTAR = SearchStrategy.ASTAR;
+
+    private final LngLat start = new LngLat(0, 0);
+    private final LngLat end = new LngLat(1, 1);
+    private final NamedRegion centralRegion = new NamedRegion("central", new LngLat[]{new LngLat(10, 10)});
+    private final NamedRegion[] noFlyZones = new NamedRegion[]{
+            new NamedRegion("zone", new LngLat[]{new LngLat(2, 2), new LngLat(3, 2), new LngLat(3, 3)})
+    };
+
+    /**
+     * Gets a path from the cache as a list of angles, searching for it as a list of angles if it is not cached.
+     */
+    private ArrayList<Double> getOrCompute(FlightPathCache cache, LngLat start, LngLat end, NamedRegion[] noFlyZones,
+                                           SearchStrategy strategy, Supplier<ArrayList<Double>> search) {
+        long fingerprint = FlightPathCache.fingerprint(noFlyZones, centralRegion);
+        return FlightPlan.anglesOf(cache.getOrComputeDirections(start, end, fingerprint, strategy, () -> {
+            ArrayList<Double> angles = search.get();
+            return angles == null ? null : FlightPlan.directionsOf(angles);
+        }));
+    }
+
+    /**
+     * Tests that a path is only searched for once, and that changing a no-fly zone searches again.
+     */
+    public void testPathSearchedOncePerRegions() {
+        FlightPathCache cache = new FlightPathCache();
+        AtomicInteger searches = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            ArrayList<Double> angles = getOrCompute(cache, start, end, noFlyZones, ASTAR, () -> {
+                searches.incrementAndGet();
+                return new ArrayList<>(List.of(45.0));
+            });
+            assertEquals(List.of(45.0), angles);
+            angles.add(999.0);  // Callers may modify the returned path without affecting the cache.
+        }
+        assertEquals(1, searches.get());
+
+        NamedRegion[] movedZones = new NamedRegion[]{
+                new NamedRegion("zone", new LngLat[]{new LngLat(2, 2), new LngLat(3, 2), new LngLat(3, 4)})
+        };
+        getOrCompute(cache, start, end, movedZones, ASTAR, () -> {
+            searches.incrementAndGet();
+            return new ArrayList<>(List.of(90.0));
+        });
+        assertEquals(2, searches.get());
+    }
+
+    /**
+     * Tests that a saved cache is reused when loaded, but only for the same regions.
+     */
+    public void testSaveAndLoad() throws IOException {
+        File file = File.createTempFile("flightpaths", ".json");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+
+        FlightPathCache cache = FlightPathCache.load(file);
+        getOrCompute(cache, start, end, noFlyZones, ASTAR, () -> new ArrayList<>(List.of(0.0, 22.5)));
+        cache.save();
+
+        FlightPathCache loaded = FlightPathCache.load(file);
+        assertEquals(1, loaded.size());
+        ArrayList<Double> angles = getOrCompute(loaded, start, end, noFlyZones, ASTAR, () -> {
+            fail("Path should have been loaded from the cache file");
+            return null;
+        });
+        assertEquals(List.of(0.0, 22.5), angles);
+
+        // Saving after the regions change drops the out of date path.
+        getOrCompute(loaded, start, end, new NamedRegion[0], ASTAR, () -> new ArrayList<>(List.of(45.0)));
+        loaded.save();
+        assertEquals(1, FlightPathCache.load(file).size());
+
+        // Each save replaces the file through a temporary file, which isn't left behind.
+        assertEquals(1, file.getParentFile().list((directory, name) -> name.startsWith(file.getName())).length);
+    }
+
+    /**
+     * Tests that a path found with one search strategy is never used by another, before or after saving.
+     */
+    public void testStrategiesKeptApart() throws IOException {
+        File file = File.createTempFile("flightpaths", ".json");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+
+        FlightPathCache cache = FlightPathCache.load(file);
+        getOrCompute(cache, start, end, noFlyZones, ASTAR, () -> new ArrayList<>(List.of(45.0)));
+        getOrCompute(cache, start, end, noFlyZones, SearchStrategy.BIDIRECTIONAL,
+                () -> new ArrayList<>(List.of(0.0, 90.0)));
+        assertEquals(2, cache.size());
+        cache.save();
+
+        FlightPathCache loaded = FlightPathCache.load(file);
+        assertEquals(2, loaded.size());
+        for (SearchStrategy strategy : List.of(ASTAR, SearchStrategy.BIDIRECTIONAL)) {
+            ArrayList<Double> angles = getOrCompute(loaded, start, end, noFlyZones, strategy, () -> {
+                fail("Path should have been loaded from the cache file");
+                return null;
+            });
+            assertEquals(strategy == ASTAR ? List.of(45.0) : List.of(0.0, 90.0), angles);
+        }
+        assertEquals(List.of(22.5), getOrCompute(loaded, start, end, noFlyZones, SearchStrategy.VISIBILITY_GRAPH,
+                () -> new ArrayList<>(List.of(22.5))));
+    }
+
+    /**
+     * Tests that a failed search isn't cached or saved, so the path is searched for again.
+     */
+    public void testFailedSearchNotCached() throws IOException {
+        File file = File.createTempFile("flightpaths", ".json");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+
+        FlightPathCache cache = FlightPathCache.load(file);
+        AtomicInteger searches = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            assertTrue(getOrCompute(cache, start, end, noFlyZones, ASTAR, () -> {
+                searches.incrementAndGet();
+                return null;
+            }).isEmpty());
+        }
+        assertEquals(2, searches.get());
+        assertEquals(0, cache.size());
+
+        cache.save();
+        assertEquals(0, FlightPathCache.load(file).size());
+    }
+
+    /**
+     * Tests that a path being searched for doesn't hold up other paths, and that workers asking for the same path
+     * wait for the one search rather than searching again.
+     */
+    public void testConcurrentSearches() throws Exception {
+        FlightPathCache cache = new FlightPathCache();
+        AtomicInteger searches = new AtomicInteger();
+        CountDownLatch searching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<ArrayList<Double>> slowSearch = () -> {
+            searches.incrementAndGet();
+            searching.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ArrayList<>(List.of(45.0));
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ArrayList<Double>> first = executor.submit(
+                    () -> getOrCompute(cache, start, end, noFlyZones, ASTAR, slowSearch));
+            assertTrue(searching.await(5, TimeUnit.SECONDS));
+            Future<ArrayList<Double>> second = executor.submit(
+                    () -> getOrCompute(cache, start, end, noFlyZones, ASTAR, slowSearch));
+
+            // Another path is found while the first is still being searched for.
+            assertEquals(List.of(90.0), getOrCompute(cache, start, new LngLat(1, 2), noFlyZones, ASTAR,
+                    () -> new ArrayList<>(List.of(90.0))));
+            assertFalse(first.isDone());
+
+            release.countDown();
+            assertEquals(List.of(45.0), first.get(5, TimeUnit.SECONDS));
+            assertEquals(List.of(45.0), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, searches.get());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+}
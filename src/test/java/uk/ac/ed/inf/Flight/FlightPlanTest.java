@@ -0,0 +1,90 @@
+package uk.ac.ed.inf.Flight;
+
+import junit.framework.TestCase;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.OutputClasses.FlightPath;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FlightPlanTest extends TestCase {
+    private final LngLat start = new LngLat(-3.186874, 55.944494);
+
+    /**
+     * Tests that every angle the drone can move at, and a hover, maps to a direction code and back.
+     */
+    public void testAngleRoundTrip() {
+        for (byte direction = 0; direction <= FlightPlan.HOVER; direction++) {
+            assertEquals(direction, FlightPlan.directionOf(FlightPlan.angleOf(direction)));
+        }
+        assertEquals(999.0, FlightPlan.angleOf(FlightPlan.HOVER));
+        assertEquals(337.5, FlightPlan.angleOf((byte) 15));
+    }
+
+    /**
+     * Tests that angles the drone cannot move at are rejected.
+     */
+    public void testInvalidAngle() {
+        for (double angle : new double[]{10.0, -22.5, 360.0, Double.NaN}) {
+            try {
+                FlightPlan.directionOf(angle);
+                fail("Expected angle " + angle + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Tests that a delivery flies out, hovers, flies back in reverse and hovers, as the old 999 angle list did.
+     */
+    public void testDelivery() {
+        FlightPlan plan = FlightPlan.delivery(start, FlightPlan.directionsOf(List.of(0.0, 22.5, 270.0)));
+        assertEquals(List.of(0.0, 22.5, 270.0, 999.0, 90.0, 202.5, 180.0, 999.0), plan.toAngles());
+        assertEquals(8, plan.size());
+    }
+
+    /**
+     * Tests that the positions of a plan are the same as moving with the LngLatHandler one angle at a time.
+     */
+    public void testPositionsMatchLngLatHandler() {
+        LngLatHandler handler = new LngLatHandler();
+        ArrayList<Double> angles = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            angles.add(i % 7 == 0 ? 999.0 : (i * 5 % 16) * 22.5);
+        }
+        FlightPlan plan = FlightPlan.fromAngles(start, angles);
+
+        List<LngLat> lngLats = plan.toLngLats();
+        List<FlightPath> flightPaths = plan.toFlightPaths("ORDER");
+        assertEquals(angles.size() + 1, lngLats.size());
+        assertEquals(angles.size(), flightPaths.size());
+
+        LngLat position = start;
+        assertEquals(position, lngLats.get(0));
+        for (int i = 0; i < angles.size(); i++) {
+            LngLat from = position;
+            position = angles.get(i) == 999 ? position : handler.nextPosition(position, angles.get(i));
+            assertEquals(position, lngLats.get(i + 1));
+
+            FlightPath flightPath = flightPaths.get(i);
+            assertEquals("ORDER", flightPath.getOrderNo());
+            assertEquals(from.lng(), flightPath.getFromLongitude());
+            assertEquals(from.lat(), flightPath.getFromLatitude());
+            assertEquals(angles.get(i), flightPath.getAngle());
+            assertEquals(position.lng(), flightPath.getToLongitude());
+            assertEquals(position.lat(), flightPath.getToLatitude());
+        }
+    }
+
+    /**
+     * Tests that an empty plan has no moves and visits no positions.
+     */
+    public void testEmpty() {
+        FlightPlan plan = FlightPlan.empty(start);
+        assertTrue(plan.isEmpty());
+        assertTrue(plan.toLngLats().isEmpty());
+        assertTrue(plan.toFlightPaths("ORDER").isEmpty());
+    }
+}
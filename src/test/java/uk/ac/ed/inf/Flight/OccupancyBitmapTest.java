@@ -0,0 +1,118 @@
+package uk.ac.ed.inf.Flight;
+
+import junit.framework.TestCase;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class OccupancyBitmapTest extends TestCase {
+    // The regions of RegionIndexTest, shrunk to a few dozen moves across.
+    private final NamedRegion centralRegion = new NamedRegion("central", new LngLat[]{
+            new LngLat(-0.001, 0.001), new LngLat(-0.001, -0.001), new LngLat(0.001, -0.001), new LngLat(0.001, 0.001)
+    });
+    private final NamedRegion[] noFlyZones = new NamedRegion[]{
+            new NamedRegion("square", new LngLat[]{
+                    new LngLat(0, 0), new LngLat(0.0005, 0), new LngLat(0.0005, 0.0005), new LngLat(0, 0.0005)
+            }),
+            new NamedRegion("concave", new LngLat[]{
+                    new LngLat(-0.0008, -0.0008), new LngLat(-0.0002, -0.0008), new LngLat(-0.0005, -0.0005),
+                    new LngLat(-0.0002, -0.0002), new LngLat(-0.0008, -0.0002)
+            }),
+            new NamedRegion("triangle", new LngLat[]{
+                    new LngLat(0.0006, -0.0009), new LngLat(0.0009, -0.0001), new LngLat(0.0003, -0.0004)
+            })
+    };
+    private File directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("occupancy").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(directory.delete());
+    }
+
+    /**
+     * Tests that the bitmap never disagrees with the regions, for random moves inside and around the area it
+     * covers, including moves along the edges of the cells.
+     */
+    public void testMatchesRegions() {
+        RegionIndex plain = RegionIndex.compile(noFlyZones, centralRegion);
+        RegionIndex index = RegionIndex.compile(noFlyZones, centralRegion);
+        index.precomputeOccupancy(directory, -0.0012, -0.0012, 0.0012, 0.0012);
+
+        Random random = new Random(0);
+        int knownClear = 0;
+        for (int i = 0; i < 100_000; i++) {
+            double lng1 = random.nextDouble() * 0.003 - 0.0015;
+            double lat1 = random.nextDouble() * 0.003 - 0.0015;
+            if (i % 4 == 0) {
+                // On the edge of a cell.
+                lng1 = -0.0012 + 0.00015 * random.nextInt(16);
+            }
+            double angle = Math.toRadians(random.nextInt(16) * 22.5);
+            double lng2 = lng1 + 0.00015 * Math.cos(angle);
+            double lat2 = lat1 + 0.00015 * Math.sin(angle);
+
+            assertEquals(plain.isInCentralRegion(lng2, lat2), index.isInCentralRegion(lng2, lat2));
+            if (index.isKnownClear(lng1, lat1, lng2, lat2)) {
+                knownClear++;
+                assertFalse(plain.isInNoFlyZone(lng2, lat2));
+                assertFalse(plain.crossesNoFlyZone(lng1, lat1, lng2, lat2));
+            }
+        }
+
+        // Most moves away from the edges of the zones are known to be clear.
+        assertTrue(knownClear > 50_000);
+    }
+
+    /**
+     * Tests that a saved bitmap is mapped by a later index with the same regions and area, and that it is
+     * rasterised again when the area changes.
+     */
+    public void testSavedBitmapIsMapped() {
+        RegionIndex first = RegionIndex.compile(noFlyZones, centralRegion);
+        first.precomputeOccupancy(directory, -0.0012, -0.0012, 0.0012, 0.0012);
+        assertFalse(first.getOccupancy().isMapped());
+        assertEquals(1, directory.listFiles().length);
+
+        RegionIndex second = RegionIndex.compile(noFlyZones, centralRegion);
+        second.precomputeOccupancy(directory, -0.0012, -0.0012, 0.0012, 0.0012);
+        assertTrue(second.getOccupancy().isMapped());
+        assertEquals(first.isKnownClear(0.0007, 0.0007, 0.0008, 0.0008),
+                second.isKnownClear(0.0007, 0.0007, 0.0008, 0.0008));
+        assertTrue(second.isKnownClear(0.0007, 0.0007, 0.0008, 0.0008));
+
+        // The same index keeps its bitmap, another area replaces it.
+        OccupancyBitmap bitmap = second.getOccupancy();
+        second.precomputeOccupancy(directory, -0.0012, -0.0012, 0.0012, 0.0012);
+        assertSame(bitmap, second.getOccupancy());
+        second.precomputeOccupancy(directory, -0.002, -0.002, 0.002, 0.002);
+        assertFalse(second.getOccupancy().isMapped());
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    /**
+     * Tests that positions outside the area of the bitmap are left to the exact checks.
+     */
+    public void testOutsideArea() {
+        RegionIndex index = RegionIndex.compile(noFlyZones, centralRegion);
+        index.precomputeOccupancy(directory, 0.0001, 0.0001, 0.0002, 0.0002);
+        assertEquals(OccupancyBitmap.UNKNOWN, index.getOccupancy().centralState(-0.0005, -0.0005));
+        assertFalse(index.getOccupancy().isClear(-0.0007, 0.0007, -0.0006, 0.0008));
+        assertTrue(index.isInCentralRegion(-0.0005, -0.0005));
+        assertFalse(index.isInNoFlyZone(-0.0007, 0.0007));
+    }
+}
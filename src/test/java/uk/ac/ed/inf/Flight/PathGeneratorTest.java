@@ -0,0 +1,186 @@
+package uk.ac.ed.inf.Flight;
+
+import junit.framework.TestCase;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.Metrics.Counter;
+import uk.ac.ed.inf.Metrics.MetricsRegistry;
+import uk.ac.ed.inf.ilp.constant.SystemConstants;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class PathGeneratorTest extends TestCase {
+    private final double distance = SystemConstants.DRONE_MOVE_DISTANCE;
+    private final NamedRegion centralRegion = new NamedRegion("test", new LngLat[]{new LngLat(10, 10)});
+
+    /**
+     * Tests that a straight path only expands the nodes along the path.
+     */
+    public void testStraightPathExpandsOnlyPath() {
+        PathGenerator pathGenerator = new PathGenerator();
+        ArrayList<Double> angles = pathGenerator.createFlightAngles(new LngLat(0, 0),
+                new LngLat(distance * 20, 0), new NamedRegion[0], centralRegion);
+
+        assertEquals(20, angles.size());
+        assertEquals(20, pathGenerator.getLastSearchStats().nodesExpanded());
+    }
+
+    /**
+     * Tests that a path around a wall ends close to the end position and never lands in the wall.
+     */
+    public void testPathAroundWall() {
+        LngLatHandler handler = new LngLatHandler();
+        LngLat start = new LngLat(0, 0);
+        LngLat end = new LngLat(distance * 20, 0);
+        NamedRegion wall = new NamedRegion("wall", new LngLat[]{
+                new LngLat(distance * 9, distance * 10),
+                new LngLat(distance * 11, distance * 10),
+                new LngLat(distance * 11, -distance * 10),
+                new LngLat(distance * 9, -distance * 10)
+        });
+
+        PathGenerator pathGenerator = new PathGenerator();
+        ArrayList<Double> angles = pathGenerator.createFlightAngles(start, end, new NamedRegion[]{wall}, centralRegion);
+        assertFalse(angles.isEmpty());
+
+        LngLat position = start;
+        for (double angle : angles) {
+            position = handler.nextPosition(position, angle);
+            assertFalse(handler.isInRegion(position, wall));
+        }
+        assertTrue(handler.isCloseTo(position, end));
+
+        SearchStats stats = pathGenerator.getLastSearchStats();
+        assertTrue(stats.nodesGenerated() >= stats.nodesExpanded());
+        assertTrue(stats.peakOpenSetSize() > 0);
+    }
+
+    /**
+     * Tests that a path does not fly through a zone thinner than a move, even though every position
+     * along the straight path would be outside it.
+     */
+    public void testPathDoesNotClipThinZone() {
+        LngLatHandler handler = new LngLatHandler();
+        LngLat start = new LngLat(0, 0);
+        LngLat end = new LngLat(distance * 5, 0);
+        NamedRegion sliver = new NamedRegion("sliver", new LngLat[]{
+                new LngLat(distance * 2.4, distance * 0.5),
+                new LngLat(distance * 2.6, distance * 0.5),
+                new LngLat(distance * 2.6, -distance * 0.5),
+                new LngLat(distance * 2.4, -distance * 0.5)
+        });
+        RegionIndex regions = RegionIndex.compile(new NamedRegion[]{sliver}, centralRegion);
+
+        ArrayList<Double> angles = new PathGenerator().createFlightAngles(start, end, new NamedRegion[]{sliver},
+                centralRegion);
+        assertFalse(angles.stream().allMatch(angle -> angle == 0));
+
+        LngLat position = start;
+        for (double angle : angles) {
+            LngLat next = handler.nextPosition(position, angle);
+            assertFalse(regions.crossesNoFlyZone(position.lng(), position.lat(), next.lng(), next.lat()));
+            position = next;
+        }
+        assertTrue(handler.isCloseTo(position, end));
+    }
+
+    /**
+     * Tests that a bidirectional search into a pocket of a no-fly zone that opens away from the start finds a legal
+     * path that ends close to the end position, expanding fewer nodes than A* which floods the back of the pocket.
+     */
+    public void testBidirectionalIntoPocket() {
+        LngLat start = new LngLat(distance * 20, 0);
+        LngLat end = new LngLat(0, 0);
+        RegionIndex regions = RegionIndex.compile(new NamedRegion[]{pocket()}, centralRegion);
+
+        PathGenerator aStar = new PathGenerator();
+        assertTrue(aStar.createFlightDirections(start, end, regions).length > 0);
+        PathGenerator bidirectional = new PathGenerator(SearchStrategy.BIDIRECTIONAL);
+        byte[] directions = bidirectional.createFlightDirections(start, end, regions);
+        assertTrue(bidirectional.getLastSearchStats().nodesExpanded() < aStar.getLastSearchStats().nodesExpanded());
+        assertLegalPath(start, end, directions, regions);
+    }
+
+    /**
+     * Tests that the visibility graph planner flies around a pocket of a no-fly zone with legal moves that end close
+     * to the end position, in about as many moves as A* after settling only a few corners.
+     */
+    public void testVisibilityGraphIntoPocket() {
+        LngLat start = new LngLat(distance * 20, 0);
+        LngLat end = new LngLat(0, 0);
+        RegionIndex regions = RegionIndex.compile(new NamedRegion[]{pocket()}, centralRegion);
+
+        int aStarMoves = new PathGenerator().createFlightDirections(start, end, regions).length;
+        PathGenerator planner = new PathGenerator(SearchStrategy.VISIBILITY_GRAPH);
+        byte[] directions = planner.createFlightDirections(start, end, regions);
+        assertLegalPath(start, end, directions, regions);
+        assertTrue(directions.length <= aStarMoves + 5);
+        assertTrue(planner.getLastSearchStats().nodesExpanded() < 20);
+    }
+
+    /**
+     * Tests that the visibility graph planner reports a route through a slit narrower than a move can't be flown,
+     * and A* is used instead.
+     */
+    public void testVisibilityGraphFallsBackToAStar() {
+        LngLat start = new LngLat(0, 0);
+        LngLat end = new LngLat(distance * 20, distance * 3);
+        double slit = distance * 0.05;
+        NamedRegion above = new NamedRegion("above", new LngLat[]{
+                new LngLat(distance * 9, distance * 1.35 + slit),
+                new LngLat(distance * 11, distance * 1.65 + slit),
+                new LngLat(distance * 11, distance * 10),
+                new LngLat(distance * 9, distance * 10)
+        });
+        NamedRegion below = new NamedRegion("below", new LngLat[]{
+                new LngLat(distance * 9, distance * 1.35 - slit),
+                new LngLat(distance * 11, distance * 1.65 - slit),
+                new LngLat(distance * 11, -distance * 10),
+                new LngLat(distance * 9, -distance * 10)
+        });
+        RegionIndex regions = RegionIndex.compile(new NamedRegion[]{above, below}, centralRegion);
+        Counter fallbacks = MetricsRegistry.global().counter("pizzadronz_path_search_fallbacks_total",
+                "strategy", "visibility_graph");
+
+        long fallbacksBefore = fallbacks.get();
+        byte[] directions = new PathGenerator(SearchStrategy.VISIBILITY_GRAPH).createFlightDirections(start, end,
+                regions);
+        assertEquals(fallbacksBefore + 1, fallbacks.get());
+        assertTrue(Arrays.equals(new PathGenerator().createFlightDirections(start, end, regions), directions));
+    }
+
+    /**
+     * Creates a no-fly zone with a pocket that opens towards negative longitudes, around the origin.
+     */
+    private NamedRegion pocket() {
+        return new NamedRegion("pocket", new LngLat[]{
+                new LngLat(-distance * 5, distance * 8),
+                new LngLat(distance * 8, distance * 8),
+                new LngLat(distance * 8, -distance * 8),
+                new LngLat(-distance * 5, -distance * 8),
+                new LngLat(-distance * 5, -distance * 6),
+                new LngLat(distance * 6, -distance * 6),
+                new LngLat(distance * 6, distance * 6),
+                new LngLat(-distance * 5, distance * 6)
+        });
+    }
+
+    /**
+     * Asserts that every move of a path is legal, and that it ends close to the end position.
+     */
+    private void assertLegalPath(LngLat start, LngLat end, byte[] directions, RegionIndex regions) {
+        LngLatHandler handler = new LngLatHandler();
+        assertTrue(directions.length > 0);
+
+        LngLat position = start;
+        for (double angle : FlightPlan.anglesOf(directions)) {
+            LngLat next = handler.nextPosition(position, angle);
+            assertFalse(regions.crossesNoFlyZone(position.lng(), position.lat(), next.lng(), next.lat()));
+            assertFalse(regions.isInNoFlyZone(next.lng(), next.lat()));
+            position = next;
+        }
+        assertTrue(handler.isCloseTo(position, end));
+    }
+}
@@ -0,0 +1,131 @@
+package uk.ac.ed.inf.Flight;
+
+import junit.framework.TestCase;
+import uk.ac.ed.inf.LngLatHandler;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.Random;
+
+public class RegionIndexTest extends TestCase {
+    private final LngLatHandler handler = new LngLatHandler();
+    private final NamedRegion centralRegion = new NamedRegion("central", new LngLat[]{
+            new LngLat(-1, 1), new LngLat(-1, -1), new LngLat(1, -1), new LngLat(1, 1)
+    });
+    private final NamedRegion[] noFlyZones = new NamedRegion[]{
+            new NamedRegion("square", new LngLat[]{
+                    new LngLat(0, 0), new LngLat(0.5, 0), new LngLat(0.5, 0.5), new LngLat(0, 0.5)
+            }),
+            new NamedRegion("concave", new LngLat[]{
+                    new LngLat(-0.8, -0.8), new LngLat(-0.2, -0.8), new LngLat(-0.5, -0.5),
+                    new LngLat(-0.2, -0.2), new LngLat(-0.8, -0.2)
+            }),
+            new NamedRegion("triangle", new LngLat[]{
+                    new LngLat(0.6, -0.9), new LngLat(0.9, -0.1), new LngLat(0.3, -0.4)
+            })
+    };
+
+    /**
+     * Checks a point against both the index and the LngLatHandler.
+     *
+     * @param index The compiled regions.
+     * @param point The point to check.
+     */
+    private void assertSameContainment(RegionIndex index, LngLat point) {
+        boolean inNoFlyZone = false;
+        for (NamedRegion noFlyZone : noFlyZones) {
+            inNoFlyZone |= handler.isInRegion(point, noFlyZone);
+        }
+        assertEquals(point.toString(), inNoFlyZone, index.isInNoFlyZone(point.lng(), point.lat()));
+        assertEquals(point.toString(), handler.isInRegion(point, centralRegion),
+                index.isInCentralRegion(point.lng(), point.lat()));
+    }
+
+    /**
+     * Tests that the index agrees with the LngLatHandler for random points inside and around the regions.
+     */
+    public void testMatchesLngLatHandler() {
+        RegionIndex index = RegionIndex.compile(noFlyZones, centralRegion);
+        Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            assertSameContainment(index, new LngLat(random.nextDouble() * 3 - 1.5, random.nextDouble() * 3 - 1.5));
+        }
+    }
+
+    /**
+     * Tests that the index agrees with the LngLatHandler for every vertex and the middle of every side.
+     */
+    public void testMatchesLngLatHandlerOnBoundaries() {
+        RegionIndex index = RegionIndex.compile(noFlyZones, centralRegion);
+        for (NamedRegion noFlyZone : noFlyZones) {
+            LngLat[] vertices = noFlyZone.vertices();
+            for (int i = 0; i < vertices.length; i++) {
+                LngLat next = vertices[(i + 1) % vertices.length];
+                assertSameContainment(index, vertices[i]);
+                assertSameContainment(index, new LngLat((vertices[i].lng() + next.lng()) / 2,
+                        (vertices[i].lat() + next.lat()) / 2));
+            }
+        }
+    }
+
+    /**
+     * Tests moves that clip the corner of a no-fly zone, without either end being in it.
+     */
+    public void testCrossesNoFlyZone() {
+        RegionIndex index = RegionIndex.compile(noFlyZones, centralRegion);
+
+        // Clips the top left corner of the square.
+        assertFalse(index.isInNoFlyZone(-0.1, 0.35));
+        assertFalse(index.isInNoFlyZone(0.1, 0.55));
+        assertTrue(index.crossesNoFlyZone(-0.1, 0.35, 0.1, 0.55));
+        assertTrue(index.crossesNoFlyZone(0.1, 0.55, -0.1, 0.35));
+
+        // Passes just outside the same corner.
+        assertFalse(index.crossesNoFlyZone(-0.1, 0.45, 0.1, 0.65));
+
+        // Passes through the notch of the concave zone without touching it.
+        assertFalse(index.crossesNoFlyZone(-0.45, -0.5, -0.1, -0.5));
+
+        // Touches a vertex of the triangle.
+        assertTrue(index.crossesNoFlyZone(0.9, -0.1, 1.0, 0.0));
+
+        // Far outside the grid.
+        assertFalse(index.crossesNoFlyZone(5, 5, 6, 6));
+    }
+
+    /**
+     * Tests that a random move crosses a no-fly zone whenever a point along it is in one.
+     */
+    public void testCrossesNoFlyZoneWhenAnyPointIsInside() {
+        RegionIndex index = RegionIndex.compile(noFlyZones, centralRegion);
+        Random random = new Random(0);
+        for (int i = 0; i < 20_000; i++) {
+            double lng1 = random.nextDouble() * 3 - 1.5;
+            double lat1 = random.nextDouble() * 3 - 1.5;
+            double lng2 = lng1 + random.nextDouble() * 0.4 - 0.2;
+            double lat2 = lat1 + random.nextDouble() * 0.4 - 0.2;
+            if (index.isInNoFlyZone(lng1, lat1) || index.isInNoFlyZone(lng2, lat2)) {
+                continue;
+            }
+
+            boolean anyPointInside = false;
+            for (int step = 1; step < 100; step++) {
+                double t = step / 100.0;
+                anyPointInside |= index.isInNoFlyZone(lng1 + t * (lng2 - lng1), lat1 + t * (lat2 - lat1));
+            }
+            if (anyPointInside) {
+                assertTrue(index.crossesNoFlyZone(lng1, lat1, lng2, lat2));
+            }
+        }
+    }
+
+    /**
+     * Tests that an index with no no-fly zones never contains a point.
+     */
+    public void testNoNoFlyZones() {
+        RegionIndex index = RegionIndex.compile(new NamedRegion[0], centralRegion);
+        assertFalse(index.isInNoFlyZone(0, 0));
+        assertFalse(index.crossesNoFlyZone(-1, -1, 1, 1));
+        assertTrue(index.isInCentralRegion(0, 0));
+    }
+}
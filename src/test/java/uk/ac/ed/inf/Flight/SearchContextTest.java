@@ -0,0 +1,129 @@
+package uk.ac.ed.inf.Flight;
+
+import junit.framework.TestCase;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+public class SearchContextTest extends TestCase {
+
+    /**
+     * Tests that the heap takes nodes off in the same order as the PriorityQueue it replaced, including nodes whose
+     * scores tie, with pushes and pops interleaved as in a search.
+     */
+    public void testHeapMatchesPriorityQueue() {
+        SearchContext context = SearchContext.current();
+        context.reset();
+        Random random = new Random(0);
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Comparator.comparingDouble(context::fScore)
+                .thenComparing(Comparator.comparingDouble(context::gScore).reversed()));
+
+        for (int i = 0; i < 20_000; i++) {
+            if (queue.isEmpty() || random.nextInt(3) > 0) {
+                // Few distinct scores, so most nodes tie with another.
+                int node = context.addNode(0, 0, i, -1, FlightPlan.HOVER, random.nextInt(4), random.nextInt(8));
+                context.push(node);
+                queue.add(node);
+            } else {
+                assertEquals(queue.poll().intValue(), context.pop());
+            }
+        }
+        while (!queue.isEmpty()) {
+            assertEquals(queue.poll().intValue(), context.pop());
+        }
+        assertTrue(context.isHeapEmpty());
+    }
+
+    /**
+     * Tests that key states survive the table growing, and are all forgotten on reset.
+     */
+    public void testKeyStates() {
+        SearchContext context = SearchContext.current();
+        context.reset();
+        for (long key = -50_000; key < 50_000; key++) {
+            context.setState(key * 31, key % 2 == 0 ? SearchContext.CLOSED : (int) (key & 0xFFFF));
+        }
+        for (long key = -50_000; key < 50_000; key++) {
+            assertEquals(key % 2 == 0 ? SearchContext.CLOSED : (int) (key & 0xFFFF), context.state(key * 31));
+        }
+        assertEquals(SearchContext.ABSENT, context.state(1));
+
+        context.reset();
+        for (long key = -50_000; key < 50_000; key++) {
+            assertEquals(SearchContext.ABSENT, context.state(key * 31));
+        }
+    }
+
+    /**
+     * Tests that arrays grown by a long search are dropped on reset, while those of a short search are kept.
+     */
+    public void testResetShrinksLargeArrays() {
+        SearchContext context = SearchContext.current();
+        context.reset();
+        for (int i = 0; i < 300_000; i++) {
+            context.push(context.addNode(0, 0, i, -1, FlightPlan.HOVER, 0, 0));
+            context.setState(i, i);
+        }
+        context.reset();
+        int initialNodes = context.nodeCapacity();
+        int initialKeys = context.keyCapacity();
+        assertTrue(initialNodes < 300_000);
+        assertTrue(initialKeys < 300_000);
+        assertEquals(SearchContext.ABSENT, context.state(5));
+        assertTrue(context.isHeapEmpty());
+
+        for (int i = 0; i < 4 * initialNodes; i++) {
+            context.push(context.addNode(0, 0, i, -1, FlightPlan.HOVER, 0, 0));
+            context.setState(i, i);
+        }
+        int grownNodes = context.nodeCapacity();
+        assertTrue(grownNodes > initialNodes);
+        context.reset();
+        assertEquals(grownNodes, context.nodeCapacity());
+    }
+
+    /**
+     * Tests that the path to a node follows its parents back to the start.
+     */
+    public void testPathTo() {
+        SearchContext context = SearchContext.current();
+        context.reset();
+        int start = context.addNode(0, 0, 0, -1, FlightPlan.HOVER, 0, 0);
+        int first = context.addNode(0, 0, 1, start, (byte) 3, 0, 0);
+        context.addNode(0, 0, 2, start, (byte) 5, 0, 0);
+        int second = context.addNode(0, 0, 3, first, (byte) 12, 0, 0);
+
+        assertEquals(0, context.pathTo(start).length);
+        byte[] path = context.pathTo(second);
+        assertEquals(2, path.length);
+        assertEquals(3, path[0]);
+        assertEquals(12, path[1]);
+    }
+
+    /**
+     * Tests that a search gives the same path and statistics when the thread's context is reused after a larger one.
+     */
+    public void testReuseGivesSamePath() {
+        LngLat start = new LngLat(-3.186874, 55.944494);
+        LngLat end = new LngLat(-3.1912869215011597, 55.945535152517735);
+        LngLat far = new LngLat(-3.2025, 55.9433);
+        NamedRegion central = new NamedRegion("central", new LngLat[]{
+                new LngLat(-3.192473, 55.946233), new LngLat(-3.192473, 55.942617),
+                new LngLat(-3.184319, 55.942617), new LngLat(-3.184319, 55.946233)
+        });
+        NamedRegion[] noFlyZones = new NamedRegion[0];
+
+        PathGenerator generator = new PathGenerator();
+        assertEquals(generator.createFlightAngles(start, end, noFlyZones, central),
+                generator.createFlightAngles(start, end, noFlyZones, central));
+        SearchStats first = generator.getLastSearchStats();
+
+        generator.createFlightAngles(start, far, noFlyZones, central);
+        assertEquals(new PathGenerator().createFlightAngles(start, end, noFlyZones, central),
+                generator.createFlightAngles(start, end, noFlyZones, central));
+        assertEquals(first, generator.getLastSearchStats());
+    }
+}
@@ -0,0 +1,164 @@
+package uk.ac.ed.inf.IO;
+
+import junit.framework.TestCase;
+import uk.ac.ed.inf.Flight.FlightPlan;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class FlightArchiveTest extends TestCase {
+    private static final LngLat APPLETON_TOWER = new LngLat(-3.186874, 55.944494);
+
+    /**
+     * Creates a temporary file that is deleted when the tests finish.
+     *
+     * @return The file.
+     */
+    private File tempFile() throws IOException {
+        File file = File.createTempFile("flightpath", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Creates a flight plan of random moves.
+     *
+     * @param random The source of the moves.
+     * @param moves  The number of moves.
+     * @return The flight plan.
+     */
+    private FlightPlan randomPlan(Random random, int moves) {
+        byte[] directions = new byte[moves];
+        for (int i = 0; i < moves; i++) {
+            directions[i] = (byte) random.nextInt(FlightPlan.HOVER + 1);
+        }
+        return new FlightPlan(APPLETON_TOWER, directions);
+    }
+
+    /**
+     * Writes plans to an archive and checks every one is read back the same by its order number, including
+     * a plan larger than the writer's buffer.
+     *
+     * @param coordinates Whether the archive stores the position after each move.
+     */
+    private void assertRoundTrip(boolean coordinates) throws IOException {
+        File file = tempFile();
+        Random random = new Random(0);
+        List<String> orderNumbers = new ArrayList<>();
+        List<FlightPlan> plans = new ArrayList<>();
+        try (FlightArchiveWriter writer = new FlightArchiveWriter(file, coordinates)) {
+            for (int i = 0; i < 50; i++) {
+                String orderNo = Integer.toHexString(0x19514FE0 + i * 7).toUpperCase();
+                FlightPlan plan = randomPlan(random, i == 25 ? 10_000 : random.nextInt(200));
+                writer.write(orderNo, plan);
+                orderNumbers.add(orderNo);
+                plans.add(plan);
+            }
+            writer.finish();
+        }
+
+        FlightArchive archive = FlightArchive.open(file);
+        assertEquals(coordinates, archive.hasCoordinates());
+        assertEquals(orderNumbers, archive.getOrderNumbers());
+
+        // Reads the orders back to front, so none is found by reading the ones before it.
+        for (int i = orderNumbers.size() - 1; i >= 0; i--) {
+            FlightPlan expected = plans.get(i);
+            FlightPlan actual = archive.getFlightPlan(orderNumbers.get(i));
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.getStartPosition(), actual.getStartPosition());
+            assertEquals(expected.toLngLats(), actual.toLngLats());
+
+            List<LngLat> positions = archive.getStoredPositions(orderNumbers.get(i));
+            if (!coordinates) {
+                assertNull(positions);
+                continue;
+            }
+            assertEquals(expected.size(), positions.size());
+            for (int move = 0; move < expected.size(); move++) {
+                LngLat position = expected.getPosition(move + 1);
+                assertEquals((float) position.lng(), (float) positions.get(move).lng());
+                assertEquals((float) position.lat(), (float) positions.get(move).lat());
+            }
+        }
+    }
+
+    /**
+     * Tests that plans are read back the same from an archive with the position after each move.
+     */
+    public void testRoundTripWithCoordinates() throws IOException {
+        assertRoundTrip(true);
+    }
+
+    /**
+     * Tests that plans are read back the same from an archive of only the directions of each move.
+     */
+    public void testRoundTripWithoutCoordinates() throws IOException {
+        assertRoundTrip(false);
+    }
+
+    /**
+     * Tests that an order that wasn't written, or a day without orders, has no flight plan.
+     */
+    public void testMissingOrder() throws IOException {
+        File file = tempFile();
+        try (FlightArchiveWriter writer = new FlightArchiveWriter(file, true)) {
+            writer.write("1", FlightPlan.empty(APPLETON_TOWER));
+            writer.finish();
+        }
+        FlightArchive archive = FlightArchive.open(file);
+        assertEquals(0, archive.getFlightPlan("1").size());
+        assertNull(archive.getFlightPlan("2"));
+        assertNull(archive.getStoredPositions("2"));
+
+        try (FlightArchiveWriter writer = new FlightArchiveWriter(file, true)) {
+            // Replaces the archive with an empty one.
+            writer.finish();
+        }
+        assertTrue(FlightArchive.open(file).getOrderNumbers().isEmpty());
+    }
+
+    /**
+     * Tests that an order can't be written twice, and that an unfinished archive can't be opened.
+     */
+    public void testRejectsInvalidArchives() throws IOException {
+        File file = tempFile();
+        FlightArchiveWriter writer = new FlightArchiveWriter(file, true);
+        writer.write("1", randomPlan(new Random(0), 10));
+        try {
+            writer.write("1", randomPlan(new Random(1), 10));
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+
+        try {
+            FlightArchive.open(file);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        writer.finish();
+        writer.close();
+        assertEquals(List.of("1"), FlightArchive.open(file).getOrderNumbers());
+    }
+
+    /**
+     * Tests that an archive closed without being finished is discarded, leaving the previous archive as it was.
+     */
+    public void testUnfinishedArchiveDiscarded() throws IOException {
+        File file = tempFile();
+        try (FlightArchiveWriter writer = new FlightArchiveWriter(file, true)) {
+            writer.write("1", randomPlan(new Random(0), 10));
+            writer.finish();
+        }
+
+        try (FlightArchiveWriter writer = new FlightArchiveWriter(file, true)) {
+            writer.write("2", randomPlan(new Random(1), 10));
+        }
+        assertEquals(List.of("1"), FlightArchive.open(file).getOrderNumbers());
+        assertEquals(1, file.getParentFile().list((directory, name) -> name.startsWith(file.getName())).length);
+    }
+}
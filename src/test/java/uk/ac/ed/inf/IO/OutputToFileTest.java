@@ -0,0 +1,215 @@
+package uk.ac.ed.inf.IO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.TestCase;
+import uk.ac.ed.inf.OutputClasses.Delivery;
+import uk.ac.ed.inf.OutputClasses.Feature;
+import uk.ac.ed.inf.OutputClasses.FeatureCollection;
+import uk.ac.ed.inf.OutputClasses.FlightPath;
+import uk.ac.ed.inf.OutputClasses.Geometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.Order;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class OutputToFileTest extends TestCase {
+    private static final LocalDate DATE = LocalDate.of(2023, 11, 6);
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        // A directory that doesn't exist yet, inside a temporary one.
+        directory = Files.createTempDirectory("output").resolve("resultFiles");
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : new File[]{directory.toFile(), directory.getParent().toFile()}) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    assertTrue(child.delete());
+                }
+            }
+        }
+        assertTrue(directory.getParent().toFile().delete());
+    }
+
+    /**
+     * Tests that writing the three files of a date at once gives the same files as writing each with a new mapper,
+     * and that no temporary files are left behind.
+     */
+    public void testOutputDaySameAsMapper() throws IOException {
+        Order order = new Order();
+        order.setOrderNo("19514FE0");
+        List<Delivery> deliveries = List.of(new Delivery(order));
+
+        ArrayList<FlightPath> flightPaths = new ArrayList<>();
+        Geometry geometry = new Geometry();
+        LngLat from = new LngLat(-3.186874, 55.944494);
+        for (int i = 0; i < 1000; i++) {
+            LngLat to = new LngLat(from.lng() + 0.00015, from.lat());
+            flightPaths.add(new FlightPath("19514FE0", from, 0, to));
+            geometry.addCoordinates(new ArrayList<>(List.of(from.lng(), from.lat())));
+            from = to;
+        }
+        FeatureCollection featureCollection = new FeatureCollection();
+        featureCollection.addFeature(new Feature(geometry));
+
+        new OutputToFile(directory).outputDay(deliveries, flightPaths, featureCollection, DATE);
+
+        ObjectMapper mapper = new ObjectMapper();
+        assertFileEquals(mapper.writeValueAsBytes(deliveries), "deliveries-2023-11-06.json");
+        assertFileEquals(mapper.writeValueAsBytes(flightPaths), "flightpath-2023-11-06.json");
+        assertFileEquals(mapper.writeValueAsBytes(featureCollection), "drone-2023-11-06.geojson");
+        assertEquals(3, directory.toFile().list().length);
+    }
+
+    /**
+     * Tests that a file that isn't committed leaves the old file as it was.
+     */
+    public void testUncommittedFileIsDiscarded() throws IOException {
+        Path target = directory.resolve("deliveries-2023-11-06.json");
+        try (AtomicFile file = new AtomicFile(target)) {
+            file.stream().write("[]".getBytes(StandardCharsets.UTF_8));
+            file.commit();
+        }
+
+        try (AtomicFile file = new AtomicFile(target)) {
+            file.stream().write("[{\"orderNo\"".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("[]", Files.readString(target));
+        assertEquals(1, directory.toFile().list().length);
+    }
+
+    /**
+     * Creates deliveries that fail to be written part of the way through.
+     */
+    private List<Delivery> failingDeliveries() {
+        Order order = new Order();
+        order.setOrderNo("19514FE1");
+        return new AbstractList<>() {
+            @Override
+            public Delivery get(int index) {
+                if (index > 0) {
+                    throw new IllegalStateException("Delivery " + index + " is unavailable");
+                }
+                return new Delivery(order);
+            }
+
+            @Override
+            public int size() {
+                return 2;
+            }
+        };
+    }
+
+    /**
+     * Writes a day of files to replace, and reads them back.
+     *
+     * @return The contents of each file by its name.
+     */
+    private Map<String, byte[]> writeOldDay() throws IOException {
+        Order order = new Order();
+        order.setOrderNo("19514FE0");
+        LngLat from = new LngLat(-3.186874, 55.944494);
+        ArrayList<FlightPath> flightPaths = new ArrayList<>(List.of(new FlightPath("19514FE0", from, 0, from)));
+        new OutputToFile(directory).outputDay(List.of(new Delivery(order)), flightPaths, new FeatureCollection(),
+                DATE);
+        return readFiles();
+    }
+
+    /**
+     * Reads every file in the output directory.
+     *
+     * @return The contents of each file by its name.
+     */
+    private Map<String, byte[]> readFiles() throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        for (File file : directory.toFile().listFiles()) {
+            files.put(file.getName(), Files.readAllBytes(file.toPath()));
+        }
+        return files;
+    }
+
+    /**
+     * Checks that the output directory holds the same files with the same contents as before.
+     */
+    private void assertFilesUnchanged(Map<String, byte[]> expected) throws IOException {
+        Map<String, byte[]> actual = readFiles();
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String name : expected.keySet()) {
+            assertTrue(name, Arrays.equals(expected.get(name), actual.get(name)));
+        }
+    }
+
+    /**
+     * Tests that when one of the three files of a date fails to be written, none of them replace the old files,
+     * even though the other two were written.
+     */
+    public void testOutputDayFailureKeepsOldFiles() throws IOException {
+        Map<String, byte[]> old = writeOldDay();
+        assertEquals(3, old.size());
+
+        ArrayList<FlightPath> flightPaths = new ArrayList<>();
+        LngLat from = new LngLat(-3.186874, 55.944494);
+        flightPaths.add(new FlightPath("19514FE1", from, 90, new LngLat(from.lng(), from.lat() + 0.00015)));
+        try {
+            new OutputToFile(directory).outputDay(failingDeliveries(), flightPaths, new FeatureCollection(), DATE);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+        assertFilesUnchanged(old);
+    }
+
+    /**
+     * Tests that when the deliveries of a streamed date fail to be written, the streamed flight path and GEO JSON
+     * files don't replace the old files either.
+     */
+    public void testFinishDayFailureKeepsOldFiles() throws IOException {
+        Map<String, byte[]> old = writeOldDay();
+
+        OutputToFile output = new OutputToFile(directory);
+        LngLat from = new LngLat(-3.186874, 55.944494);
+        LngLat to = new LngLat(from.lng(), from.lat() + 0.00015);
+        try (StreamingFlightOutput flightOutput = output.openFlightOutput(DATE)) {
+            flightOutput.write(List.of(new FlightPath("19514FE1", from, 90, to)), List.of(from, to));
+            try {
+                output.finishDay(flightOutput, failingDeliveries(), DATE);
+                fail("Expected IOException");
+            } catch (IOException expected) {
+            }
+        }
+        assertFilesUnchanged(old);
+
+        // A day that is written in full replaces all three files.
+        try (StreamingFlightOutput flightOutput = output.openFlightOutput(DATE)) {
+            flightOutput.write(List.of(new FlightPath("19514FE1", from, 90, to)), List.of(from, to));
+            output.finishDay(flightOutput, List.of(), DATE);
+        }
+        Map<String, byte[]> replaced = readFiles();
+        assertEquals(old.keySet(), replaced.keySet());
+        for (String name : old.keySet()) {
+            assertFalse(name, Arrays.equals(old.get(name), replaced.get(name)));
+        }
+    }
+
+    /**
+     * Checks that an output file has the expected contents.
+     */
+    private void assertFileEquals(byte[] expected, String file) throws IOException {
+        assertTrue(Arrays.equals(expected, Files.readAllBytes(directory.resolve(file))));
+    }
+}
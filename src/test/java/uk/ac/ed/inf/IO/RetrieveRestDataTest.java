@@ -0,0 +1,308 @@
+package uk.ac.ed.inf.IO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import uk.ac.ed.inf.ilp.data.NamedRegion;
+import uk.ac.ed.inf.ilp.data.Order;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RetrieveRestDataTest extends TestCase {
+    private static final String ORDERS = "[{\"orderNo\":\"1\",\"orderDate\":\"2023-11-01\",\"orderStatus\":\"UNDEFINED\","
+            + "\"orderValidationCode\":\"UNDEFINED\",\"priceTotalInPence\":1100,"
+            + "\"pizzasInOrder\":[{\"name\":\"Pizza\",\"priceInPence\":1000}],\"creditCardInformation\":"
+            + "{\"creditCardNumber\":\"1234567812345678\",\"creditCardExpiry\":\"01/30\",\"cvv\":\"123\"}}]";
+    private static final String RESTAURANTS = "[{\"name\":\"R\",\"location\":{\"lng\":-3.19,\"lat\":55.94},"
+            + "\"openingDays\":[\"MONDAY\"],\"menu\":[{\"name\":\"Pizza\",\"priceInPence\":1000}]}]";
+    private static final String CENTRAL_AREA = "{\"name\":\"central\",\"vertices\":[{\"lng\":-3.19,\"lat\":55.94},"
+            + "{\"lng\":-3.18,\"lat\":55.94},{\"lng\":-3.18,\"lat\":55.95}]}";
+
+    private final RetrieveRestData retrieve = new RetrieveRestData(Duration.ofSeconds(5), 3, Duration.ofMillis(10));
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String url;
+    private File snapshotDirectory;
+
+    @Override
+    protected void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        snapshotDirectory = Files.createTempDirectory("snapshots").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+
+        File[] snapshots = snapshotDirectory.listFiles();
+        for (File snapshot : snapshots == null ? new File[0] : snapshots) {
+            assertTrue(snapshot.delete());
+        }
+        assertTrue(snapshotDirectory.delete());
+    }
+
+    /**
+     * Sends a response to a request.
+     *
+     * @param exchange The request.
+     * @param status   The HTTP status code of the response.
+     * @param body     The body of the response.
+     */
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    /**
+     * Tests that all four data sets are requested at the same time, each request only responds once
+     * every request has arrived.
+     */
+    public void testRetrievesAllDataConcurrently() throws IOException {
+        CountDownLatch allArrived = new CountDownLatch(4);
+        String[][] endpoints = {{"orders/2023-11-01", ORDERS}, {"restaurants", RESTAURANTS},
+                {"noFlyZones", "[" + CENTRAL_AREA + "]"}, {"centralArea", CENTRAL_AREA}};
+        for (String[] endpoint : endpoints) {
+            server.createContext("/" + endpoint[0], exchange -> {
+                allArrived.countDown();
+                try {
+                    if (!allArrived.await(5, TimeUnit.SECONDS)) {
+                        respond(exchange, 400, "requests were not concurrent");
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, endpoint[1]);
+            });
+        }
+
+        CompletableFuture<Order[]> orders = retrieve.retrieveOrdersAsync(url + "orders/2023-11-01");
+        CompletableFuture<Restaurant[]> restaurants = retrieve.retrieveRestaurantsAsync(url + "restaurants");
+        CompletableFuture<NamedRegion[]> noFlyZones = retrieve.retrieveNoFlyZonesAsync(url + "noFlyZones");
+        CompletableFuture<NamedRegion> centralArea = retrieve.retrieveCentralAreaAsync(url + "centralArea");
+
+        assertEquals("1", RetrieveRestData.await(orders)[0].getOrderNo());
+        assertEquals("R", RetrieveRestData.await(restaurants)[0].name());
+        assertEquals(1, RetrieveRestData.await(noFlyZones).length);
+        assertEquals(3, RetrieveRestData.await(centralArea).vertices().length);
+    }
+
+    /**
+     * Tests that a request is retried after a server error.
+     */
+    public void testRetriesServerError() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/restaurants", exchange -> {
+            if (requests.incrementAndGet() < 3) {
+                respond(exchange, 503, "");
+            } else {
+                respond(exchange, 200, RESTAURANTS);
+            }
+        });
+
+        assertEquals(1, retrieve.retrieveRestaurants(url + "restaurants").length);
+        assertEquals(3, requests.get());
+    }
+
+    /**
+     * Tests that requests that will never succeed are not retried.
+     */
+    public void testDoesNotRetryClientErrorOrBadData() {
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/missing", exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 404, "");
+        });
+        server.createContext("/broken", exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 200, "{not json");
+        });
+
+        for (String endpoint : new String[]{"missing", "broken"}) {
+            try {
+                retrieve.retrieveOrders(url + endpoint);
+                fail("Expected " + endpoint + " to fail");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("RetrieveRestData: Failed to obtain orders"));
+            }
+        }
+        assertEquals(2, requests.get());
+    }
+
+    /**
+     * Tests that streamed orders can be read before the rest of the response has been sent, the second order
+     * is only sent once the first has been read, and that connecting is retried.
+     */
+    public void testStreamOrdersAsTheyArrive() throws IOException {
+        String order = ORDERS.substring(1, ORDERS.length() - 1);
+        CountDownLatch firstRead = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/orders", exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                respond(exchange, 503, "");
+                return;
+            }
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            body.write(("[" + order).getBytes(StandardCharsets.UTF_8));
+            body.flush();
+            try {
+                // If the first order is never read, the response ends without the second order.
+                if (firstRead.await(5, TimeUnit.SECONDS)) {
+                    body.write(("," + order.replace("\"orderNo\":\"1\"", "\"orderNo\":\"2\""))
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            body.write("]".getBytes(StandardCharsets.UTF_8));
+            exchange.close();
+        });
+
+        try (OrderStream orders = retrieve.streamOrders(url + "orders")) {
+            assertEquals("1", orders.next().getOrderNo());
+            firstRead.countDown();
+            assertTrue(orders.hasNext());
+            assertEquals("2", orders.next().getOrderNo());
+            assertFalse(orders.hasNext());
+        }
+        assertEquals(2, requests.get());
+    }
+
+    /**
+     * Tests that a streamed order that cannot be read fails once it is reached, after the orders before it.
+     */
+    public void testStreamOrdersBadData() throws IOException {
+        server.createContext("/orders", exchange -> respond(exchange, 200,
+                ORDERS.substring(0, ORDERS.length() - 1) + ",{not json]"));
+
+        try (OrderStream orders = retrieve.streamOrders(url + "orders")) {
+            assertEquals("1", orders.next().getOrderNo());
+            orders.hasNext();
+            fail("Expected the second order to fail");
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause().getMessage().startsWith("OrderStream - hasNext: Failed to obtain orders"));
+        }
+
+        server.createContext("/missing", exchange -> respond(exchange, 404, ""));
+        try {
+            retrieve.streamOrders(url + "missing").close();
+            fail("Expected missing orders to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("RetrieveRestData: Failed to obtain orders"));
+        }
+    }
+
+    /**
+     * Tests that a request that takes too long fails after every attempt has timed out.
+     */
+    public void testTimeout() {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext("/centralArea", exchange -> {
+            requests.incrementAndGet();
+            try {
+                finished.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, CENTRAL_AREA);
+        });
+
+        RetrieveRestData impatient = new RetrieveRestData(Duration.ofMillis(200), 2, Duration.ofMillis(10));
+        try {
+            impatient.retrieveCentralArea(url + "centralArea");
+            fail("Expected the request to time out");
+        } catch (IOException e) {
+            assertEquals(2, requests.get());
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Tests that an unchanged data set is not downloaded again, even by a later run, and that a changed one is.
+     */
+    public void testConditionalRequest() throws IOException {
+        AtomicInteger downloads = new AtomicInteger();
+        AtomicInteger version = new AtomicInteger(1);
+        server.createContext("/restaurants", exchange -> {
+            String etag = "\"v" + version.get() + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            downloads.incrementAndGet();
+            respond(exchange, 200, RESTAURANTS.replace("\"R\"", "\"R" + version.get() + "\""));
+        });
+
+        SnapshotStore snapshots = new SnapshotStore(snapshotDirectory);
+        RetrieveRestData cached = new RetrieveRestData(Duration.ofSeconds(5), 1, Duration.ofMillis(10), snapshots);
+        assertEquals("R1", cached.retrieveRestaurants(url + "restaurants")[0].name());
+        assertEquals("R1", cached.retrieveRestaurants(url + "restaurants")[0].name());
+        assertEquals(1, downloads.get());
+        assertEquals(1, snapshots.getMisses());
+        assertEquals(1, snapshots.getHits());
+
+        // A later run loads the snapshot from disk.
+        SnapshotStore reloaded = new SnapshotStore(snapshotDirectory);
+        RetrieveRestData laterRun = new RetrieveRestData(Duration.ofSeconds(5), 1, Duration.ofMillis(10), reloaded);
+        assertEquals("R1", laterRun.retrieveRestaurants(url + "restaurants")[0].name());
+        assertEquals(1, downloads.get());
+        assertEquals(1, reloaded.getHits());
+
+        version.set(2);
+        assertEquals("R2", laterRun.retrieveRestaurants(url + "restaurants")[0].name());
+        assertEquals(2, downloads.get());
+        assertEquals(1, reloaded.getMisses());
+
+        // The new snapshot replaced the old one through a temporary file, which isn't left behind.
+        assertEquals(1, snapshotDirectory.list().length);
+    }
+
+    /**
+     * Tests that the last known-good snapshot is used when the server cannot be reached.
+     */
+    public void testFallbackWhenUnreachable() throws IOException {
+        server.createContext("/centralArea", exchange -> respond(exchange, 200, CENTRAL_AREA));
+
+        SnapshotStore snapshots = new SnapshotStore(snapshotDirectory);
+        RetrieveRestData cached = new RetrieveRestData(Duration.ofSeconds(5), 2, Duration.ofMillis(10), snapshots);
+        assertEquals(3, cached.retrieveCentralArea(url + "centralArea").vertices().length);
+
+        server.stop(0);
+        assertEquals(3, cached.retrieveCentralArea(url + "centralArea").vertices().length);
+        assertEquals(1, snapshots.getFallbacks());
+
+        // Without a snapshot the failure is still reported.
+        try {
+            cached.retrieveCentralArea(url + "missing");
+            fail("Expected the request to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("RetrieveRestData: Failed to obtain REST data for central area"));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package uk.ac.ed.inf.IO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.TestCase;
+import uk.ac.ed.inf.OutputClasses.Feature;
+import uk.ac.ed.inf.OutputClasses.FeatureCollection;
+import uk.ac.ed.inf.OutputClasses.FlightPath;
+import uk.ac.ed.inf.OutputClasses.Geometry;
+import uk.ac.ed.inf.ilp.data.LngLat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StreamingFlightOutputTest extends TestCase {
+
+    /**
+     * Creates a temporary file that is deleted when the tests finish.
+     *
+     * @param suffix The suffix of the file name.
+     * @return The file.
+     */
+    private File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("output", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Writes the orders both one at a time and all at once, and checks that the files are identical.
+     *
+     * @param orders The positions the drone visits for each order.
+     */
+    private void assertSameAsMapper(List<List<LngLat>> orders) throws IOException {
+        File flightPathFile = tempFile(".json");
+        File geoJsonFile = tempFile(".geojson");
+
+        ArrayList<FlightPath> allFlightPaths = new ArrayList<>();
+        Geometry geometry = new Geometry();
+        try (StreamingFlightOutput output = new StreamingFlightOutput(flightPathFile, geoJsonFile)) {
+            for (int i = 0; i < orders.size(); i++) {
+                List<LngLat> lngLats = orders.get(i);
+                List<FlightPath> flightPaths = new ArrayList<>();
+                for (int j = 1; j < lngLats.size(); j++) {
+                    flightPaths.add(new FlightPath("ORDER" + i, lngLats.get(j - 1), 22.5 * j, lngLats.get(j)));
+                }
+                output.write(flightPaths, lngLats);
+
+                allFlightPaths.addAll(flightPaths);
+                for (LngLat lngLat : lngLats) {
+                    geometry.addCoordinates(new ArrayList<>(List.of(lngLat.lng(), lngLat.lat())));
+                }
+            }
+            output.finish();
+        }
+        FeatureCollection featureCollection = new FeatureCollection();
+        featureCollection.addFeature(new Feature(geometry));
+
+        ObjectMapper mapper = new ObjectMapper();
+        assertTrue(Arrays.equals(mapper.writeValueAsBytes(allFlightPaths), Files.readAllBytes(flightPathFile.toPath())));
+        assertTrue(Arrays.equals(mapper.writeValueAsBytes(featureCollection), Files.readAllBytes(geoJsonFile.toPath())));
+    }
+
+    /**
+     * Tests that streaming several orders writes the same files as the ObjectMapper.
+     */
+    public void testSameAsMapper() throws IOException {
+        assertSameAsMapper(List.of(
+                List.of(new LngLat(-3.186874, 55.944494), new LngLat(-3.1870125819298765, 55.944551402514854),
+                        new LngLat(-3.1870125819298765, 55.944551402514854)),
+                List.of(),
+                List.of(new LngLat(0, 0), new LngLat(1e-10, -1.5e-4), new LngLat(123.456, -78.9))
+        ));
+    }
+
+    /**
+     * Tests that a day with no orders writes the same empty files as the ObjectMapper.
+     */
+    public void testNoOrders() throws IOException {
+        assertSameAsMapper(List.of());
+    }
+
+    /**
+     * Tests that an output closed without being finished leaves the previous files as they were.
+     */
+    public void testUnfinishedOutputDiscarded() throws IOException {
+        File flightPathFile = tempFile(".json");
+        File geoJsonFile = tempFile(".geojson");
+        Files.writeString(flightPathFile.toPath(), "[]");
+        Files.writeString(geoJsonFile.toPath(), "{}");
+
+        try (StreamingFlightOutput output = new StreamingFlightOutput(flightPathFile, geoJsonFile)) {
+            LngLat start = new LngLat(-3.186874, 55.944494);
+            output.write(List.of(new FlightPath("ORDER", start, 0, start)), List.of(start, start));
+        }
+        assertEquals("[]", Files.readString(flightPathFile.toPath()));
+        assertEquals("{}", Files.readString(geoJsonFile.toPath()));
+        assertEquals(0, flightPathFile.getParentFile().list((directory, name) -> name.endsWith(".tmp")
+                && (name.startsWith(flightPathFile.getName()) || name.startsWith(geoJsonFile.getName()))).length);
+    }
+}
@@ -40,6 +40,31 @@ public class LngLatHandlerTest extends TestCase {
         assertFalse(handler.isCloseTo(appletonTower, closePoint));
     }
 
+    /**
+     * Tests that the primitive distance and squared distance agree with the rounded distance.
+     */
+    public void testPrimitiveDistance() {
+        LngLatHandler handler = new LngLatHandler();
+        double distance = handler.distanceTo(-3.188787017635369, 55.94364525819063, -4.250172395304061, 55.861165602825174);
+        double squaredDistance = handler.squaredDistanceTo(-3.188787017635369, 55.94364525819063, -4.250172395304061, 55.861165602825174);
+        assertEquals(1.06459, distance, 1e-5);
+        assertEquals(distance * distance, squaredDistance, 1e-12);
+    }
+
+    /**
+     * Tests that the primitive close check agrees with the rounded distance around the tolerance.
+     */
+    public void testPrimitiveIsCloseToMatchesRoundedDistance() {
+        LngLatHandler handler = new LngLatHandler();
+        LngLat appletonTower = new LngLat(-3.186874, 55.944494);
+        for (double offset = 1.40e-4; offset <= 1.60e-4; offset += 1e-7) {
+            LngLat point = new LngLat(appletonTower.lng() + offset, appletonTower.lat());
+            boolean roundedClose = handler.distanceTo(appletonTower, point) < SystemConstants.DRONE_IS_CLOSE_DISTANCE;
+            assertEquals(roundedClose, handler.isCloseTo(appletonTower, point));
+            assertEquals(roundedClose, handler.isCloseTo(appletonTower.lng(), appletonTower.lat(), point.lng(), point.lat()));
+        }
+    }
+
     /**
      * Tests if a point within a region, is in region.
      */
@@ -90,4 +115,45 @@ public class LngLatHandlerTest extends TestCase {
         LngLat expectedPosition = new LngLat(startPosition.lng() + SystemConstants.DRONE_MOVE_DISTANCE, startPosition.lat());
         assertEquals(expectedPosition, handler.nextPosition(startPosition, moveEast));
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that the precomputed compass steps give exactly the position the trigonometry does, for every compass
+     * direction and from positions all over the map, and that any other angle still moves the drone.
+     */
+    public void testCompassStepsMatchTrigonometry() {
+        LngLatHandler handler = new LngLatHandler();
+        double[] lngs = new double[16];
+        double[] lats = new double[16];
+        for (LngLat position : new LngLat[]{new LngLat(-3.186874, 55.944494), new LngLat(0, 0),
+                new LngLat(179.9999, -89.9999), new LngLat(-3.1924, 55.9432)}) {
+            handler.compassNeighbours(position.lng(), position.lat(), lngs, lats);
+            for (int direction = 0; direction < 16; direction++) {
+                double angle = Math.toRadians(direction * 22.5);
+                LngLat expected = new LngLat(position.lng() + SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(angle),
+                        position.lat() + SystemConstants.DRONE_MOVE_DISTANCE * Math.sin(angle));
+                assertEquals(expected, handler.nextPosition(position, direction * 22.5));
+                assertEquals(expected, new LngLat(lngs[direction], lats[direction]));
+            }
+        }
+
+        LngLat start = new LngLat(-3.186874, 55.944494);
+        LngLat next = handler.nextPosition(start, 10);
+        assertEquals(start.lng() + SystemConstants.DRONE_MOVE_DISTANCE * Math.cos(Math.toRadians(10)), next.lng());
+        assertEquals(start.lat() + SystemConstants.DRONE_MOVE_DISTANCE * Math.sin(Math.toRadians(10)), next.lat());
+    }
+
+    /**
+     * Tests that a position out of range is rejected, and one on the edge of the range is not.
+     */
+    public void testValidatePosition() {
+        LngLatHandler handler = new LngLatHandler();
+        handler.validatePosition(new LngLat(-180, 90));
+        for (LngLat position : new LngLat[]{new LngLat(180.1, 0), new LngLat(0, -90.1)}) {
+            try {
+                handler.validatePosition(position);
+                fail("Expected IllegalStateException for " + position);
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+}
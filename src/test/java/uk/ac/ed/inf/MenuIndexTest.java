@@ -0,0 +1,57 @@
+package uk.ac.ed.inf;
+
+import junit.framework.TestCase;
+import uk.ac.ed.inf.ilp.data.LngLat;
+import uk.ac.ed.inf.ilp.data.Pizza;
+import uk.ac.ed.inf.ilp.data.Restaurant;
+
+import java.time.DayOfWeek;
+import java.util.List;
+
+public class MenuIndexTest extends TestCase {
+    private final Pizza shared = new Pizza("shared", 1000);
+    private final Pizza onlyFirst = new Pizza("first", 1100);
+    private final Restaurant first = new Restaurant("first", new LngLat(1.0, 1.0),
+            new DayOfWeek[]{DayOfWeek.MONDAY, DayOfWeek.FRIDAY}, new Pizza[]{onlyFirst, shared});
+    private final Restaurant second = new Restaurant("second", new LngLat(2.0, 2.0),
+            new DayOfWeek[]{DayOfWeek.TUESDAY}, new Pizza[]{shared});
+    private final Restaurant[] restaurants = new Restaurant[]{first, second};
+
+    /**
+     * Tests finding the restaurants that sell a pizza, in the order the restaurants were given.
+     */
+    public void testRestaurantsOfPizza() {
+        MenuIndex index = MenuIndex.build(restaurants);
+
+        assertTrue(index.isDefined(shared));
+        assertEquals(List.of(first, second), index.getRestaurants(shared));
+        assertEquals(first, index.getRestaurant(shared));
+        assertEquals(List.of(first), index.getRestaurants(new Pizza("first", 1100)));
+
+        // A pizza with the same name but a different price is not on the menu.
+        Pizza undefined = new Pizza("first", 1200);
+        assertFalse(index.isDefined(undefined));
+        assertTrue(index.getRestaurants(undefined).isEmpty());
+        assertNull(index.getRestaurant(undefined));
+
+        assertTrue(index.isBuiltFrom(restaurants));
+        assertFalse(index.isBuiltFrom(restaurants.clone()));
+    }
+
+    /**
+     * Tests the opening days, a restaurant with no opening days or menu is never open and sells nothing.
+     */
+    public void testOpeningDays() {
+        Restaurant empty = new Restaurant("empty", new LngLat(3.0, 3.0), null, null);
+        MenuIndex index = MenuIndex.build(new Restaurant[]{first, second, empty});
+
+        assertTrue(index.isOpen(first, DayOfWeek.MONDAY));
+        assertTrue(index.isOpen(first, DayOfWeek.FRIDAY));
+        assertFalse(index.isOpen(first, DayOfWeek.TUESDAY));
+        assertTrue(index.isOpen(second, DayOfWeek.TUESDAY));
+        for (DayOfWeek day : DayOfWeek.values()) {
+            assertFalse(index.isOpen(empty, day));
+        }
+        assertEquals(List.of(first, second), index.getRestaurants(shared));
+    }
+}
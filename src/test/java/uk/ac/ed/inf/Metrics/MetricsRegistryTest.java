@@ -0,0 +1,103 @@
+package uk.ac.ed.inf.Metrics;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsRegistryTest extends TestCase {
+
+    /**
+     * Tests that every value is counted in a bucket whose range contains it, and that the buckets are in order.
+     */
+    public void testBuckets() {
+        Random random = new Random(17);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(value <= Histogram.upperBoundOf(bucket));
+            assertTrue(bucket == 0 || value > Histogram.upperBoundOf(bucket - 1));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.upperBoundOf(Histogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Tests that percentiles are never below the true value and at most 12.5% above it.
+     */
+    public void testPercentiles() {
+        Histogram histogram = new MetricsRegistry().histogram("values");
+        assertEquals(0, histogram.getPercentile(50));
+
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean());
+        for (int percentile : new int[]{1, 50, 90, 99}) {
+            long value = histogram.getPercentile(percentile);
+            assertTrue(value >= percentile * 10);
+            assertTrue(value <= percentile * 10 * 1.125);
+        }
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    /**
+     * Tests that counters and histograms count every value recorded at once on many threads.
+     */
+    public void testConcurrentRecording() throws InterruptedException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    metrics.counter("orders_total", "code", "NO_ERROR").increment();
+                    metrics.histogram("iterations").record(i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(80_000, metrics.counter("orders_total", "code", "NO_ERROR").get());
+        assertEquals(80_000, metrics.histogram("iterations").getCount());
+        assertEquals(9_999, metrics.histogram("iterations").getMax());
+    }
+
+    /**
+     * Tests the report and the Prometheus text, metrics with the same name are grouped under one type.
+     */
+    public void testReports() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("orders_total", "code", "NO_ERROR").add(3);
+        metrics.counter("orders_total", "code", "CVV_INVALID").increment();
+        metrics.gauge("snapshots", () -> 2, "result", "hit");
+        metrics.timer("fetch_seconds", "data", "orders").recordNanos(2_000_000);
+
+        Map<String, Object> report = metrics.toReport();
+        assertEquals(Map.of("orders_total{code=\"CVV_INVALID\"}", 1L, "orders_total{code=\"NO_ERROR\"}", 3L),
+                report.get("counters"));
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> timers = (Map<String, Map<String, Object>>) report.get("timersMillis");
+        assertEquals(1L, timers.get("fetch_seconds{data=\"orders\"}").get("count"));
+        assertEquals(2.0, timers.get("fetch_seconds{data=\"orders\"}").get("max"));
+
+        assertEquals("""
+                # TYPE orders_total counter
+                orders_total{code="CVV_INVALID"} 1
+                orders_total{code="NO_ERROR"} 3
+                # TYPE snapshots gauge
+                snapshots{result="hit"} 2
+                # TYPE fetch_seconds summary
+                fetch_seconds{data="orders",quantile="0.5"} 0.002
+                fetch_seconds{data="orders",quantile="0.9"} 0.002
+                fetch_seconds{data="orders",quantile="0.99"} 0.002
+                fetch_seconds_sum{data="orders"} 0.002
+                fetch_seconds_count{data="orders"} 1
+                """, metrics.toPrometheus());
+    }
+}
@@ -7,6 +7,7 @@ import uk.ac.ed.inf.ilp.data.*;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.Arrays;
 
 public class OrderValidatorTest extends TestCase {
 
@@ -365,4 +366,130 @@ public class OrderValidatorTest extends TestCase {
         assertEquals(validatedOrder.getOrderValidationCode(), OrderValidationCode.EXPIRY_DATE_INVALID);
         assertEquals(validatedOrder.getOrderStatus(), OrderStatus.INVALID);
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests the forms of expiry date that have always been accepted or rejected, and that a card is valid
+     * until the end of its expiry month.
+     */
+    public void testExpiryForms() {
+        OrderValidator validator = new OrderValidator();
+        Restaurant[] restaurants = new Restaurant[]{sampleRestaurant};
+        String[] valid = {"12/99", "1/99", "+1/99", "12/99/", "01/2099", "\u0661\u0662/\u0669\u0669"};
+        String[] invalid = {"00/99", "13/99", "12//99", "/99", "12/", "12-99", "12/9a", ""};
+
+        for (String expiry : valid) {
+            Order order = order(300, samplePizza, sampleCCNo, expiry, sampleCCSecurityCode);
+            assertEquals(expiry, OrderValidationCode.NO_ERROR, validator.validateOrder(order, restaurants).getOrderValidationCode());
+        }
+        for (String expiry : invalid) {
+            Order order = order(300, samplePizza, sampleCCNo, expiry, sampleCCSecurityCode);
+            assertEquals(expiry, OrderValidationCode.EXPIRY_DATE_INVALID, validator.validateOrder(order, restaurants).getOrderValidationCode());
+        }
+
+        CreditCardInformation cc = new CreditCardInformation(sampleCCNo, "02/24", sampleCCSecurityCode);
+        Order lastDay = new Order("0", LocalDate.of(2024, 2, 29), OrderStatus.UNDEFINED,
+                OrderValidationCode.UNDEFINED, 300, samplePizza, cc);
+        assertEquals(OrderValidationCode.NO_ERROR, validator.validateOrder(lastDay, restaurants).getOrderValidationCode());
+        Order dayAfter = new Order("0", LocalDate.of(2024, 3, 1), OrderStatus.UNDEFINED,
+                OrderValidationCode.UNDEFINED, 300, samplePizza, cc);
+        assertEquals(OrderValidationCode.EXPIRY_DATE_INVALID, validator.validateOrder(dayAfter, restaurants).getOrderValidationCode());
+    }
+
+    /**
+     * Creates an order that only differs from the sample order in the given parts.
+     */
+    private Order order(int price, Pizza[] pizzas, String ccNo, String expiry, String cvv) {
+        return new Order("0", LocalDate.now(), OrderStatus.UNDEFINED, OrderValidationCode.UNDEFINED, price, pizzas,
+                ccNo == null ? null : new CreditCardInformation(ccNo, expiry, cvv));
+    }
+
+    /**
+     * Tests that validating a batch of orders, on one thread or in parallel, gives the same results as
+     * validating each order by itself, without changing the orders.
+     */
+    public void testValidateOrdersMatchesValidateOrder() {
+        Restaurant other = new Restaurant("other", new LngLat(2.0, 2.0), sampleDays, new Pizza[]{new Pizza("c", 100)});
+        Restaurant[] restaurants = new Restaurant[]{sampleRestaurant, other};
+        Order[] kinds = new Order[]{
+                order(300, samplePizza, sampleCCNo, sampleCCExpiry, sampleCCSecurityCode),
+                order(600, new Pizza[]{pizza1, pizza1, pizza1, pizza1, pizza1}, sampleCCNo, sampleCCExpiry, sampleCCSecurityCode),
+                order(100, new Pizza[0], sampleCCNo, sampleCCExpiry, sampleCCSecurityCode),
+                order(200, new Pizza[]{new Pizza("z", 100)}, sampleCCNo, sampleCCExpiry, sampleCCSecurityCode),
+                order(301, samplePizza, sampleCCNo, sampleCCExpiry, sampleCCSecurityCode),
+                order(300, new Pizza[]{pizza1, new Pizza("c", 100)}, sampleCCNo, sampleCCExpiry, sampleCCSecurityCode),
+                order(300, samplePizza, "000000000000000a", sampleCCExpiry, sampleCCSecurityCode),
+                order(300, samplePizza, sampleCCNo, sampleCCExpiry, "0a0"),
+                order(300, samplePizza, sampleCCNo, "13/99", sampleCCSecurityCode),
+                order(300, samplePizza, sampleCCNo, "01/00", sampleCCSecurityCode),
+                order(300, samplePizza, null, null, null),
+                null
+        };
+
+        OrderValidator validator = new OrderValidator();
+        for (int size : new int[]{kinds.length, 3000}) {
+            Order[] orders = new Order[size];
+            for (int i = 0; i < size; i++) {
+                orders[i] = kinds[i % kinds.length];
+            }
+
+            ValidationResults results = validator.validateOrders(orders, restaurants);
+            assertEquals(size, results.size());
+            int total = 0;
+            for (OrderValidationCode code : OrderValidationCode.values()) {
+                total += results.getCount(code);
+            }
+            assertEquals(size, total);
+
+            for (int i = 0; i < size; i++) {
+                Order expected = kinds[i % kinds.length];
+                if (expected == null) {
+                    assertEquals(OrderValidationCode.UNDEFINED, results.getCode(i));
+                    assertEquals(OrderStatus.UNDEFINED, results.getStatus(i));
+                    continue;
+                }
+                // The batch never changes the orders themselves.
+                assertEquals(OrderStatus.UNDEFINED, expected.getOrderStatus());
+
+                Order copy = new Order(expected.getOrderNo(), expected.getOrderDate(), expected.getOrderStatus(),
+                        expected.getOrderValidationCode(), expected.getPriceTotalInPence(),
+                        expected.getPizzasInOrder(), expected.getCreditCardInformation());
+                try {
+                    validator.validateOrder(copy, restaurants);
+                } catch (NullPointerException e) {
+                    // Left unchanged by validateOrder, as it is by the batch.
+                }
+                assertEquals(copy.getOrderValidationCode(), results.getCode(i));
+                assertEquals(copy.getOrderStatus(), results.getStatus(i));
+            }
+        }
+
+        ValidationResults results = validator.validateOrders(Arrays.stream(kinds), MenuIndex.build(restaurants));
+        assertEquals(OrderStatus.VALID_BUT_NOT_DELIVERED, results.getStatus(0));
+        assertEquals(Integer.valueOf(2), results.getHistogram().get(OrderValidationCode.EXPIRY_DATE_INVALID));
+        assertEquals(Integer.valueOf(3), results.getHistogram().get(OrderValidationCode.UNDEFINED));
+        assertFalse(results.getHistogram().containsKey(OrderValidationCode.RESTAURANT_CLOSED));
+    }
+
+    /**
+     * Tests that an order that cannot be validated, and has no code or status of its own, is undefined in a batch
+     * of orders, on one thread or in parallel, rather than failing the whole batch.
+     */
+    public void testValidateOrdersWithoutCode() {
+        Order order = new Order("0", LocalDate.now(), null, null, 300, null, sampleCC);
+        OrderValidator validator = new OrderValidator();
+        for (int size : new int[]{2, 3000}) {
+            Order[] orders = new Order[size];
+            Arrays.fill(orders, order);
+            orders[0] = order(300, samplePizza, sampleCCNo, sampleCCExpiry, sampleCCSecurityCode);
+
+            ValidationResults results = validator.validateOrders(orders, new Restaurant[]{sampleRestaurant});
+            assertEquals(size, results.size());
+            for (int i = 1; i < size; i++) {
+                assertEquals(OrderValidationCode.UNDEFINED, results.getCode(i));
+                assertEquals(OrderStatus.UNDEFINED, results.getStatus(i));
+            }
+            assertEquals(size - 1, results.getCount(OrderValidationCode.UNDEFINED));
+            assertNull(order.getOrderValidationCode());
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package uk.ac.ed.inf;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import uk.ac.ed.inf.Flight.FlightDataHandler;
+import uk.ac.ed.inf.Flight.FlightPathCache;
+import uk.ac.ed.inf.IO.OutputToFile;
+import uk.ac.ed.inf.IO.RetrieveRestData;
+import uk.ac.ed.inf.OutputClasses.DeliverySummary;
+import uk.ac.ed.inf.ilp.constant.OrderStatus;
+import uk.ac.ed.inf.ilp.constant.OrderValidationCode;
+import uk.ac.ed.inf.ilp.data.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class ProcessDateTest extends TestCase {
+    private static final LocalDate DATE = LocalDate.of(2023, 11, 6);
+
+    private final Pizza[][] menus = {
+            {new Pizza("Margarita", 1000), new Pizza("Calzone", 1400)},
+            {new Pizza("Meat Lover", 1400), new Pizza("Vegan Delight", 1100)},
+            {new Pizza("Super Cheese", 1400), new Pizza("All Shrooms", 900)}
+    };
+    private final Restaurant[] restaurants = {
+            new Restaurant("Civerinos Slice", new LngLat(-3.1912869215011597, 55.945535152517735),
+                    DayOfWeek.values(), menus[0]),
+            new Restaurant("Sora Lella Vegan Restaurant", new LngLat(-3.202541470527649, 55.943284737579376),
+                    DayOfWeek.values(), menus[1]),
+            new Restaurant("Domino's Pizza - Edinburgh - Southside",
+                    new LngLat(-3.1838572025299072, 55.94449876875712), DayOfWeek.values(), menus[2])
+    };
+    private final NamedRegion[] noFlyZones = {
+            new NamedRegion("George Square Area", new LngLat[]{
+                    new LngLat(-3.190578818321228, 55.94402412577528),
+                    new LngLat(-3.1899887323379517, 55.94284650540911),
+                    new LngLat(-3.187097311019897, 55.94328811724263),
+                    new LngLat(-3.187682032585144, 55.944477740393744),
+                    new LngLat(-3.190578818321228, 55.94402412577528)})
+    };
+    private final NamedRegion centralArea = new NamedRegion("central", new LngLat[]{
+            new LngLat(-3.192473, 55.946233),
+            new LngLat(-3.192473, 55.942617),
+            new LngLat(-3.184319, 55.942617),
+            new LngLat(-3.184319, 55.946233)});
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("processDate");
+    }
+
+    @Override
+    protected void tearDown() {
+        deleteRecursively(directory.toFile());
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it.
+     */
+    private void deleteRecursively(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteRecursively(child);
+            }
+        }
+        assertTrue(file.delete());
+    }
+
+    /**
+     * Creates a processor of the test restaurants, with a cache of its own so no run reuses another's paths.
+     */
+    private OrderProcessor processor() {
+        return new OrderProcessor(new OrderValidator(), new FlightDataHandler(new FlightPathCache()), restaurants,
+                noFlyZones, centralArea, App.APPLETON_TOWER);
+    }
+
+    /**
+     * Creates a day of orders from every restaurant, where every fifth order has an invalid security code.
+     *
+     * @param count The number of orders.
+     * @param date  The date the orders were made on.
+     * @return The orders.
+     */
+    private List<Order> orders(int count, LocalDate date) {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Pizza pizza = menus[i % menus.length][i % 2];
+            CreditCardInformation card = new CreditCardInformation("0000000000000000", "12/99",
+                    i % 5 == 4 ? "00" : "000");
+            orders.add(new Order(Integer.toHexString(0x19514FE0 + i).toUpperCase(), date, OrderStatus.UNDEFINED,
+                    OrderValidationCode.UNDEFINED, pizza.priceInPence() + 100, new Pizza[]{pizza}, card));
+        }
+        return orders;
+    }
+
+    /**
+     * Writes orders as the JSON the REST API responds with.
+     */
+    private static String toJson(List<Order> orders) {
+        StringBuilder json = new StringBuilder("[");
+        for (Order order : orders) {
+            Pizza pizza = order.getPizzasInOrder()[0];
+            CreditCardInformation card = order.getCreditCardInformation();
+            if (json.length() > 1) {
+                json.append(",");
+            }
+            json.append(String.format("{\"orderNo\":\"%s\",\"orderDate\":\"%s\",\"orderStatus\":\"UNDEFINED\","
+                            + "\"orderValidationCode\":\"UNDEFINED\",\"priceTotalInPence\":%d,"
+                            + "\"pizzasInOrder\":[{\"name\":\"%s\",\"priceInPence\":%d}],\"creditCardInformation\":"
+                            + "{\"creditCardNumber\":\"%s\",\"creditCardExpiry\":\"%s\",\"cvv\":\"%s\"}}",
+                    order.getOrderNo(), order.getOrderDate(), order.getPriceTotalInPence(), pizza.name(),
+                    pizza.priceInPence(), card.getCreditCardNumber(), card.getCreditCardExpiry(), card.getCvv()));
+        }
+        return json.append("]").toString();
+    }
+
+    /**
+     * Sends a response to a request of the stub API.
+     */
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    /**
+     * Reads every file in the output directory.
+     *
+     * @return The contents of each file by its name.
+     */
+    private Map<String, byte[]> readFiles() throws IOException {
+        return readFiles(directory);
+    }
+
+    /**
+     * Reads every file in a directory.
+     *
+     * @param directory The directory.
+     * @return The contents of each file by its name.
+     */
+    private Map<String, byte[]> readFiles(Path directory) throws IOException {
+        Map<String, byte[]> files = new TreeMap<>();
+        for (File file : directory.toFile().listFiles()) {
+            files.put(file.getName(), Files.readAllBytes(file.toPath()));
+        }
+        return files;
+    }
+
+    /**
+     * Checks that the output directory holds the same files with the same contents as before.
+     */
+    private void assertFilesEqual(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String name : expected.keySet()) {
+            assertTrue(name, Arrays.equals(expected.get(name), actual.get(name)));
+        }
+    }
+
+    /**
+     * Checks that a date whose orders stop being read part of the way through fails, and leaves every file of
+     * the date from the run before it as it was, with no temporary files left behind.
+     *
+     * @param stream Whether the date is processed as a stream.
+     */
+    private void assertFailedDateKeepsFiles(boolean stream) throws IOException {
+        App app = new App();
+        OutputToFile output = new OutputToFile(directory);
+        app.processDate(processor(), output, orders(10, DATE).iterator(), DATE, 2, stream);
+        Map<String, byte[]> before = readFiles();
+        assertEquals(List.of("deliveries-2023-11-06.json", "drone-2023-11-06.geojson", "flightpath-2023-11-06.bin",
+                "flightpath-2023-11-06.json"), new ArrayList<>(before.keySet()));
+
+        // Fails to read the fourth order, after the first orders were processed and written.
+        Iterator<Order> orders = orders(3, DATE).iterator();
+        Iterator<Order> failing = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Order next() {
+                if (orders.hasNext()) {
+                    return orders.next();
+                }
+                throw new UncheckedIOException(new IOException("Connection reset"));
+            }
+        };
+        try {
+            app.processDate(processor(), output, failing, DATE, 2, stream);
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertEquals("Connection reset", expected.getMessage());
+        }
+        assertFilesEqual(before, readFiles());
+    }
+
+    /**
+     * Tests that a date that fails part of the way through a stream keeps the files of the last run.
+     */
+    public void testFailedStreamKeepsFiles() throws IOException {
+        assertFailedDateKeepsFiles(true);
+    }
+
+    /**
+     * Tests that a date that fails part of the way through a batch keeps the files of the last run.
+     */
+    public void testFailedBatchKeepsFiles() throws IOException {
+        assertFailedDateKeepsFiles(false);
+    }
+
+    /**
+     * Checks that a date whose orders cannot be retrieved is reported as failed, which makes the run exit with an
+     * error, while the dates before and after it are still processed.
+     *
+     * @param stream Whether the dates are processed as a stream.
+     */
+    private void assertFailedDateSkipped(boolean stream) throws IOException {
+        LocalDate failedDate = DATE.plusDays(1);
+        LocalDate lastDate = DATE.plusDays(2);
+        HttpServer api = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        api.createContext("/orders/" + DATE, exchange -> respond(exchange, toJson(orders(10, DATE))));
+        api.createContext("/orders/" + lastDate, exchange -> respond(exchange, toJson(orders(5, lastDate))));
+        api.createContext("/orders/" + failedDate, exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        api.start();
+        try {
+            String apiUrl = "http://127.0.0.1:" + api.getAddress().getPort() + "/";
+            RetrieveRestData retrieveData = new RetrieveRestData(Duration.ofSeconds(5), 1, Duration.ZERO);
+            List<LocalDate> failedDates = new App().processDates(retrieveData, apiUrl, processor(),
+                    new OutputToFile(directory), List.of(DATE, failedDate, lastDate),
+                    stream ? null : retrieveData.retrieveOrdersAsync(apiUrl + "orders/" + DATE), 2, stream);
+            assertEquals(List.of(failedDate), failedDates);
+        } finally {
+            api.stop(0);
+        }
+
+        for (LocalDate date : List.of(DATE, lastDate)) {
+            assertTrue(directory.resolve("deliveries-" + date + ".json").toFile().isFile());
+            assertTrue(directory.resolve("flightpath-" + date + ".json").toFile().isFile());
+            assertTrue(directory.resolve("drone-" + date + ".geojson").toFile().isFile());
+            assertTrue(directory.resolve("flightpath-" + date + ".bin").toFile().isFile());
+        }
+        assertEquals(8, directory.toFile().list().length);
+    }
+
+    /**
+     * Tests that a date that fails doesn't stop the dates after it, when the dates are processed as a batch.
+     */
+    public void testFailedDateSkippedInBatch() throws IOException {
+        assertFailedDateSkipped(false);
+    }
+
+    /**
+     * Tests that a date that fails doesn't stop the dates after it, when the dates are processed as a stream.
+     */
+    public void testFailedDateSkippedInStream() throws IOException {
+        assertFailedDateSkipped(true);
+    }
+
+    /**
+     * Checks that processing a date on many workers outputs exactly the same files as on one, with the
+     * deliveries and flight paths in the same order as the orders.
+     *
+     * @param stream Whether the date is processed as a stream.
+     */
+    private void assertWorkersGiveSameOutput(boolean stream) throws IOException {
+        List<Order> orders = orders(40, DATE);
+        Path sequential = directory.resolve("sequential");
+        Path parallel = directory.resolve("parallel");
+        DeliverySummary sequentialSummary = new App().processDate(processor(), new OutputToFile(sequential),
+                orders(40, DATE).iterator(), DATE, 1, stream);
+        DeliverySummary parallelSummary = new App().processDate(processor(), new OutputToFile(parallel),
+                orders(40, DATE).iterator(), DATE, 4, stream);
+
+        // Every order but those with an invalid security code is delivered.
+        assertEquals(32, sequentialSummary.getDelivered());
+        assertEquals(sequentialSummary.getDelivered(), parallelSummary.getDelivered());
+
+        Map<String, byte[]> expected = readFiles(sequential);
+        assertEquals(4, expected.size());
+        assertFilesEqual(expected, readFiles(parallel));
+
+        // The deliveries are in the order of the orders, not the order they finished in.
+        String deliveries = new String(expected.get("deliveries-2023-11-06.json"), StandardCharsets.UTF_8);
+        int previous = -1;
+        for (Order order : orders) {
+            int index = deliveries.indexOf("\"" + order.getOrderNo() + "\"");
+            assertTrue(order.getOrderNo(), index > previous);
+            previous = index;
+        }
+    }
+
+    /**
+     * Tests that a batch processed on four workers outputs the same files as on one.
+     */
+    public void testWorkersGiveSameBatch() throws IOException {
+        assertWorkersGiveSameOutput(false);
+    }
+
+    /**
+     * Tests that a stream processed on four workers outputs the same files as on one.
+     */
+    public void testWorkersGiveSameStream() throws IOException {
+        assertWorkersGiveSameOutput(true);
+    }
+
+    /**
+     * Checks that a date whose flight plans can't be archived, because two delivered orders share an order
+     * number, still outputs its JSON files, and discards the archive rather than leaving part of it behind.
+     *
+     * @param stream Whether the date is processed as a stream.
+     */
+    private void assertFailedArchiveKeepsJson(boolean stream) throws IOException {
+        List<Order> orders = orders(4, DATE);
+        orders.get(2).setOrderNo(orders.get(0).getOrderNo());
+        DeliverySummary summary = new App().processDate(processor(), new OutputToFile(directory), orders.iterator(),
+                DATE, 2, stream);
+        assertEquals(4, summary.getDelivered());
+
+        Map<String, byte[]> files = readFiles();
+        assertEquals(List.of("deliveries-2023-11-06.json", "drone-2023-11-06.geojson", "flightpath-2023-11-06.json"),
+                new ArrayList<>(files.keySet()));
+        String deliveries = new String(files.get("deliveries-2023-11-06.json"), StandardCharsets.UTF_8);
+        assertEquals(2, deliveries.split("\"" + orders.get(0).getOrderNo() + "\"", -1).length - 1);
+    }
+
+    /**
+     * Tests that a batch whose archive fails still outputs its JSON files.
+     */
+    public void testFailedArchiveKeepsBatch() throws IOException {
+        assertFailedArchiveKeepsJson(false);
+    }
+
+    /**
+     * Tests that a stream whose archive fails still outputs its JSON files.
+     */
+    public void testFailedArchiveKeepsStream() throws IOException {
+        assertFailedArchiveKeepsJson(true);
+    }
+}